@@ -0,0 +1,60 @@
+package customerservice.benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import customerservice.domain.Address;
+import customerservice.domain.Customer;
+import customerservice.domain.enums.PhoneType;
+
+/**
+ * Construction of customers and addresses with their builders, and the
+ * defensive copies made by {@code Customer.from()} and
+ * {@code Customer.getPhones()}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class BuilderBenchmark {
+
+	private Customer customer;
+
+	@Setup
+	public void setUp() {
+		customer = Customers.customer();
+	}
+
+	@Benchmark
+	public Address buildAddress() {
+		return Customers.address();
+	}
+
+	@Benchmark
+	public Customer buildCustomer() {
+		return Customers.customer();
+	}
+
+	@Benchmark
+	public Customer copyCustomer() {
+		return Customer.from(customer).withFirstName("Ryu").build();
+	}
+
+	@Benchmark
+	public Map<PhoneType, String> getPhones() {
+		return customer.getPhones();
+	}
+}
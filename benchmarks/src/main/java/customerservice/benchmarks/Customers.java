@@ -0,0 +1,92 @@
+package customerservice.benchmarks;
+
+import java.time.LocalDate;
+import java.time.Month;
+
+import org.bson.types.ObjectId;
+
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.PropertyNamingStrategy;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import customerservice.domain.Address;
+import customerservice.domain.Customer;
+import customerservice.domain.enums.CustomerType;
+import customerservice.domain.enums.Gender;
+import customerservice.domain.enums.MaritalStatus;
+import customerservice.domain.enums.PhoneType;
+
+/**
+ * Fixtures shared by the benchmarks.
+ */
+final class Customers {
+
+	private Customers() {
+	}
+
+	static Address address() {
+		return Address.ofCountry("Shadaloo")
+				.withStreetNumber(110)
+				.withStreetName("Bison street")
+				.withCity("Shadaloo City")
+				.withZipcode("123456")
+				.withStateOrProvince("Shadaloo State")
+				.build();
+	}
+
+	/**
+	 * @return A customer with all its fields set
+	 */
+	static Customer customer() {
+		return Customer.ofType(CustomerType.PERSON)
+				.withId(ObjectId.get())
+				.withFirstName("Ken")
+				.withLastName("Masters")
+				.withGender(Gender.MALE)
+				.withBirthDate(LocalDate.of(1990, Month.MARCH, 16))
+				.withMaritalStatus(MaritalStatus.SINGLE)
+				.withAddress(address())
+				.withPhone(PhoneType.HOME, "+1 (111) 111-1111")
+				.withPhone(PhoneType.CELLULAR, "+1 (222) 222-2222")
+				.withPhone(PhoneType.OFFICE, "+1 (333) 333-3333")
+				.withEmail("ken.masters@shadaloo.com")
+				.withVersion(3L)
+				.build();
+	}
+
+	/**
+	 * @param format
+	 *            json, pretty-json, smile or cbor
+	 * @return A mapper configured like the one of the service, see
+	 *         application.properties and CustomerService
+	 */
+	static ObjectMapper mapper(String format) {
+
+		final JsonFactory factory;
+		switch (format) {
+		case "smile":
+			factory = new SmileFactory();
+			break;
+		case "cbor":
+			factory = new CBORFactory();
+			break;
+		default:
+			factory = new JsonFactory();
+		}
+
+		return new ObjectMapper(factory)
+				.setPropertyNamingStrategy(PropertyNamingStrategy.SNAKE_CASE)
+				.setSerializationInclusion(Include.NON_NULL)
+				.registerModule(new JavaTimeModule())
+				.registerModule(new SimpleModule().addSerializer(ObjectId.class, new ToStringSerializer()))
+				.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+				.configure(SerializationFeature.INDENT_OUTPUT, "pretty-json".equals(format));
+	}
+}
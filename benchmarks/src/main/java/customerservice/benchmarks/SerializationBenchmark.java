@@ -0,0 +1,63 @@
+package customerservice.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import customerservice.domain.Customer;
+
+/**
+ * Jackson read and write of a fully populated customer in each of the wire
+ * formats of the service: compact JSON, indented JSON, Smile and CBOR.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SerializationBenchmark {
+
+	@Param({ "json", "pretty-json", "smile", "cbor" })
+	private String format;
+
+	private ObjectWriter writer;
+	private ObjectReader reader;
+
+	private Customer customer;
+	private byte[] body;
+
+	@Setup
+	public void setUp() throws IOException {
+		final ObjectMapper mapper = Customers.mapper(format);
+		writer = mapper.writerFor(Customer.class);
+		reader = mapper.readerFor(Customer.class);
+		customer = Customers.customer();
+		body = writer.writeValueAsBytes(customer);
+	}
+
+	@Benchmark
+	public byte[] write() throws IOException {
+		return writer.writeValueAsBytes(customer);
+	}
+
+	@Benchmark
+	public Customer read() throws IOException {
+		return reader.readValue(body);
+	}
+}
@@ -0,0 +1,127 @@
+package customerservice.loadtests;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import customerservice.domain.Address;
+import customerservice.domain.Customer;
+import customerservice.domain.enums.CustomerType;
+import customerservice.domain.enums.Gender;
+import customerservice.domain.enums.MaritalStatus;
+import customerservice.domain.enums.PhoneType;
+
+/**
+ * Synthetic customers, generated from their index and a seed.
+ * <p>
+ * The id of a customer is its index, so the scenarios pick existing customers
+ * without reading them first, and two runs with the same size and seed work
+ * on the same customers, even against a service seeded by another run.
+ */
+final class Dataset {
+
+	private static final int CHUNK_SIZE = 1000;
+
+	private static final String[] FIRST_NAMES = { "Ken", "Ryu", "Chun-Li", "Guile", "Cammy", "Sagat", "Juri", "Akuma",
+			"Sakura", "Dan", "Karin", "Rose" };
+	private static final String[] LAST_NAMES = { "Masters", "Hoshi", "Xiang", "Le Fiel", "White", "Bison", "Han",
+			"Kasugano", "Hibiki", "Kanzuki", "Sheng", "Rainbow" };
+	private static final String[] CITIES = { "Shadaloo City", "Metro City", "Tokyo", "London", "Hong Kong", "Bangkok",
+			"Paris", "New York" };
+
+	private final long size;
+
+	private final long seed;
+
+	Dataset(long size, long seed) {
+		this.size = size;
+		this.seed = seed;
+	}
+
+	/**
+	 * @param name
+	 *            10k, 1m or 10m
+	 */
+	static long size(String name) {
+		switch (name.toLowerCase()) {
+		case "10k":
+			return 10_000L;
+		case "1m":
+			return 1_000_000L;
+		case "10m":
+			return 10_000_000L;
+		default:
+			throw new IllegalArgumentException("Unknown dataset " + name + ", expected 10k, 1m or 10m");
+		}
+	}
+
+	long size() {
+		return size;
+	}
+
+	/* Never 0, the all zero id is suspicious */
+	static ObjectId id(long index) {
+		return new ObjectId(String.format("%024x", index + 1));
+	}
+
+	/**
+	 * @param index
+	 *            Index of the customer, from 0 to size - 1
+	 * @param revision
+	 *            0 for the seeded customer, the updates change its phones
+	 * @return The customer without id and version
+	 */
+	Customer customer(long index, long revision) {
+
+		final Random random = new Random(seed * 31 + index);
+		final Address address = Address.ofCountry("Shadaloo")
+				.withStreetNumber(1 + random.nextInt(999))
+				.withStreetName("Bison street")
+				.withCity(CITIES[random.nextInt(CITIES.length)])
+				.withZipcode(String.format("%06d", random.nextInt(1_000_000)))
+				.build();
+
+		return Customer.ofType(random.nextInt(10) == 0 ? CustomerType.COMPANY : CustomerType.PERSON)
+				.withFirstName(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)])
+				.withLastName(LAST_NAMES[random.nextInt(LAST_NAMES.length)])
+				.withGender(random.nextBoolean() ? Gender.MALE : Gender.FEMALE)
+				.withBirthDate(LocalDate.ofEpochDay(-10_000 + random.nextInt(20_000)))
+				.withMaritalStatus(MaritalStatus.values()[random.nextInt(MaritalStatus.values().length)])
+				.withAddress(address)
+				.withPhone(PhoneType.HOME, String.format("+1 (%03d) %03d-%04d", random.nextInt(1000), index % 1000,
+						revision % 10_000))
+				.withEmail(String.format("customer%d@example.com", index))
+				.build();
+	}
+
+	/**
+	 * Seeds the customers unless they are all there already, with bulk
+	 * inserts.
+	 * 
+	 * @return true if the customers were seeded
+	 */
+	boolean seed(MongoTemplate mongoTemplate) {
+
+		if (mongoTemplate.count(new Query(), Customer.class) == size) {
+			return false;
+		}
+
+		mongoTemplate.remove(new Query(), Customer.class);
+
+		final List<Customer> chunk = new ArrayList<>(CHUNK_SIZE);
+		for (long index = 0; index < size; index++) {
+			chunk.add(Customer.from(customer(index, 0)).withId(id(index)).build());
+			if (chunk.size() == CHUNK_SIZE || index == size - 1) {
+				mongoTemplate.insert(chunk, Customer.class);
+				chunk.clear();
+			}
+		}
+
+		return true;
+	}
+}
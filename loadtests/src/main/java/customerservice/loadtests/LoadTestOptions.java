@@ -0,0 +1,60 @@
+package customerservice.loadtests;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * The options of {@code loadtest.properties}, overridden by the
+ * {@code --key=value} arguments of the command line.
+ */
+final class LoadTestOptions {
+
+	private static final String DEFAULTS = "/loadtest.properties";
+
+	private final Properties properties;
+
+	private LoadTestOptions(Properties properties) {
+		this.properties = properties;
+	}
+
+	static LoadTestOptions parse(String[] args) throws IOException {
+
+		final Properties properties = new Properties();
+		try (InputStream defaults = LoadTestOptions.class.getResourceAsStream(DEFAULTS)) {
+			properties.load(defaults);
+		}
+
+		for (String arg : args) {
+			final int equals = arg.indexOf('=');
+			if (!arg.startsWith("--") || equals < 0) {
+				throw new IllegalArgumentException("Expected --key=value, got " + arg);
+			}
+			properties.setProperty(arg.substring(2, equals), arg.substring(equals + 1));
+		}
+
+		return new LoadTestOptions(properties);
+	}
+
+	String string(String key) {
+		final String value = properties.getProperty(key);
+		if (value == null) {
+			throw new IllegalArgumentException("Missing option " + key);
+		}
+		return value.trim();
+	}
+
+	long longValue(String key) {
+		return Long.parseLong(string(key));
+	}
+
+	double doubleValue(String key) {
+		return Double.parseDouble(string(key));
+	}
+
+	/* The SLO of the scenario if there is one, the SLO of all the scenarios otherwise */
+	double slo(String name, Scenario scenario) {
+		final String key = "slo." + name;
+		return doubleValue(properties.containsKey(key + "." + scenario.key()) ? key + "." + scenario.key() : key);
+	}
+}
@@ -0,0 +1,244 @@
+package customerservice.loadtests;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.conn.ssl.TrustSelfSignedStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.ssl.SSLContextBuilder;
+import org.apache.http.util.EntityUtils;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.PropertyNamingStrategy;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientURI;
+
+import customerservice.CustomerService;
+
+/**
+ * Seeds the customers, gets a token with the client credentials grant then
+ * runs the scenarios with the configured mix, see
+ * {@code loadtest.properties} for the options.
+ * <p>
+ * The throughput and latency percentiles of each scenario are printed and
+ * written as JSON to {@code loadtest-result.json}, the exit status is 1 if an
+ * SLO is not met.
+ * <p>
+ * Example: {@code java -jar target/loadtests.jar --dataset=1m --users=64 --slo.p99-ms.read=20}
+ */
+public final class LoadTestRunner {
+
+	private LoadTestRunner() {
+	}
+
+	public static void main(String[] args) throws Exception {
+
+		final LoadTestOptions options = LoadTestOptions.parse(args);
+		final Dataset dataset = new Dataset(Dataset.size(options.string("dataset")), options.longValue("seed"));
+
+		ConfigurableApplicationContext service = null;
+		String target = options.string("target");
+		if (target.isEmpty()) {
+			// The embedded MongoDB is started by Spring Boot along with the service
+			service = new SpringApplicationBuilder(CustomerService.class)
+					.properties("server.port=0", "management.server.port=0",
+							"logging.level.org.springframework.security=INFO")
+					.run();
+			target = "https://localhost:" + service.getEnvironment().getProperty("local.server.port");
+			seed(dataset, service.getBean(MongoTemplate.class));
+		} else if (!options.string("mongo-uri").isEmpty()) {
+			final MongoClientURI uri = new MongoClientURI(options.string("mongo-uri"));
+			final MongoClient client = new MongoClient(uri);
+			try {
+				seed(dataset, new MongoTemplate(client, uri.getDatabase()));
+			} finally {
+				client.close();
+			}
+		}
+
+		final List<String> violations;
+		try (CloseableHttpClient http = httpClient((int) options.longValue("users"))) {
+			final List<ScenarioResults> results = run(options, dataset, target, http);
+			violations = report(options, results);
+		} finally {
+			if (service != null) {
+				service.close();
+			}
+		}
+
+		System.exit(violations.isEmpty() ? 0 : 1);
+	}
+
+	private static void seed(Dataset dataset, MongoTemplate mongoTemplate) {
+		final long start = System.nanoTime();
+		if (dataset.seed(mongoTemplate)) {
+			System.out.printf("Seeded %d customers in %d s%n", dataset.size(),
+					TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start));
+		}
+	}
+
+	private static List<ScenarioResults> run(LoadTestOptions options, Dataset dataset, String target,
+			CloseableHttpClient http) throws Exception {
+
+		final ObjectMapper mapper = mapper();
+		final String token = token(options, target, http, mapper);
+
+		final Map<Scenario, ScenarioResults> results = new EnumMap<>(Scenario.class);
+		final List<Scenario> mix = new ArrayList<>();
+		for (Scenario scenario : Scenario.values()) {
+			results.put(scenario, new ScenarioResults(scenario));
+			mix.addAll(Collections.nCopies((int) options.longValue("mix." + scenario.key()), scenario));
+		}
+
+		final int users = (int) options.longValue("users");
+		final int listSize = (int) options.longValue("list.size");
+		final double rate = options.doubleValue("rate");
+		/* Between two requests of a user, 0 sends the next request when the previous one completes */
+		final long interval = rate > 0 ? (long) (users * TimeUnit.SECONDS.toNanos(1) / rate) : 0;
+
+		final long start = System.nanoTime();
+		final long measured = start + TimeUnit.SECONDS.toNanos(options.longValue("warmup-seconds"));
+		final long end = measured + TimeUnit.SECONDS.toNanos(options.longValue("duration-seconds"));
+
+		final ExecutorService executor = Executors.newFixedThreadPool(users);
+		for (int user = 0; user < users; user++) {
+			final long first = start + interval * user / users;
+			executor.execute(() -> {
+				for (long intended = first; intended < end; intended = interval > 0 ? intended + interval
+						: System.nanoTime()) {
+
+					// Late requests are sent right away and their latency includes the delay
+					LockSupport.parkNanos(intended - System.nanoTime());
+
+					final Scenario scenario = mix.get(ThreadLocalRandom.current().nextInt(mix.size()));
+					boolean success;
+					try {
+						success = http.execute(scenario.authorized(
+								scenario.request(target, dataset, mapper, listSize), token), response -> {
+									EntityUtils.consume(response.getEntity());
+									return response.getStatusLine().getStatusCode() / 100 == 2;
+								});
+					} catch (IOException e) {
+						success = false;
+					}
+
+					if (intended >= measured) {
+						results.get(scenario).record(System.nanoTime() - intended, success);
+					}
+				}
+			});
+		}
+
+		executor.shutdown();
+		executor.awaitTermination(end - start + TimeUnit.MINUTES.toNanos(1), TimeUnit.NANOSECONDS);
+
+		return new ArrayList<>(results.values());
+	}
+
+	/* Prints and writes the results, returns the SLOs not met */
+	private static List<String> report(LoadTestOptions options, List<ScenarioResults> results) throws IOException {
+
+		final long seconds = options.longValue("duration-seconds");
+		final List<Map<String, Object>> summaries = new ArrayList<>();
+		final List<String> violations = new ArrayList<>();
+
+		System.out.printf("%-6s %10s %10s %10s %10s %10s %10s %10s%n", "", "requests", "errors", "req/s", "p50 ms",
+				"p95 ms", "p99 ms", "max ms");
+		for (ScenarioResults result : results) {
+			if (result.count() == 0) {
+				continue;
+			}
+
+			final Map<String, Object> summary = result.summary(seconds);
+			summaries.add(summary);
+			System.out.printf("%-6s %10d %10d %10.1f %10.2f %10.2f %10.2f %10.2f%n", summary.get("scenario"),
+					summary.get("count"), summary.get("errors"), summary.get("throughput"), summary.get("p50_ms"),
+					summary.get("p95_ms"), summary.get("p99_ms"), summary.get("max_ms"));
+
+			final Scenario scenario = result.scenario();
+			check(violations, scenario, "p99-ms", result.percentileMillis(99) <= options.slo("p99-ms", scenario));
+			check(violations, scenario, "max-error-rate",
+					result.errorRate() <= options.slo("max-error-rate", scenario));
+			check(violations, scenario, "min-throughput",
+					result.throughput(seconds) >= options.slo("min-throughput", scenario));
+		}
+		violations.forEach(violation -> System.out.println("SLO not met: " + violation));
+
+		final Map<String, Object> file = new LinkedHashMap<>();
+		file.put("dataset", options.string("dataset"));
+		file.put("users", options.longValue("users"));
+		file.put("rate", options.doubleValue("rate"));
+		file.put("duration_seconds", seconds);
+		file.put("scenarios", summaries);
+		file.put("slo_violations", violations);
+		mapper().writerWithDefaultPrettyPrinter().writeValue(new File(options.string("result")), file);
+
+		return violations;
+	}
+
+	private static void check(List<String> violations, Scenario scenario, String slo, boolean met) {
+		if (!met) {
+			violations.add(scenario.key() + " " + slo);
+		}
+	}
+
+	private static String token(LoadTestOptions options, String target, CloseableHttpClient http,
+			ObjectMapper mapper) throws IOException {
+
+		final HttpPost post = new HttpPost(target + "/oauth/token");
+		post.setHeader(HttpHeaders.AUTHORIZATION, "Basic " + Base64.getEncoder().encodeToString(
+				(options.string("client-id") + ":" + options.string("client-secret")).getBytes(UTF_8)));
+		post.setEntity(new UrlEncodedFormEntity(
+				Collections.singletonList(new BasicNameValuePair("grant_type", "client_credentials"))));
+
+		return http.execute(post, response -> {
+			if (response.getStatusLine().getStatusCode() != 200) {
+				throw new IllegalStateException("No token: " + response.getStatusLine());
+			}
+			return mapper.readTree(response.getEntity().getContent()).get("access_token").asText();
+		});
+	}
+
+	/* One connection per user, the certificate of the service is self signed */
+	private static CloseableHttpClient httpClient(int users) throws Exception {
+		return HttpClients.custom()
+				.setSSLContext(SSLContextBuilder.create().loadTrustMaterial(new TrustSelfSignedStrategy()).build())
+				.setMaxConnTotal(users)
+				.setMaxConnPerRoute(users)
+				.build();
+	}
+
+	/* Configured like the mapper of the service, see application.properties */
+	private static ObjectMapper mapper() {
+		return new ObjectMapper()
+				.setPropertyNamingStrategy(PropertyNamingStrategy.SNAKE_CASE)
+				.setSerializationInclusion(Include.NON_NULL)
+				.registerModule(new JavaTimeModule())
+				.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+	}
+}
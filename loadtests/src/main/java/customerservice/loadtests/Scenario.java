@@ -0,0 +1,72 @@
+package customerservice.loadtests;
+
+import java.util.Base64;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * The requests sent by the users, each on a customer of the dataset picked at
+ * random.
+ */
+enum Scenario {
+
+	/* GET /customers/{id} */
+	READ {
+		@Override
+		HttpUriRequest request(String target, Dataset dataset, ObjectMapper mapper, int listSize) {
+			return new HttpGet(target + "/customers/" + Dataset.id(pick(dataset)));
+		}
+	},
+
+	/* PUT /customers/{id}, without If-Match so that concurrent updates don't fail */
+	WRITE {
+		@Override
+		HttpUriRequest request(String target, Dataset dataset, ObjectMapper mapper, int listSize)
+				throws JsonProcessingException {
+			final long index = pick(dataset);
+			final HttpPut put = new HttpPut(target + "/customers/" + Dataset.id(index));
+			put.setEntity(new ByteArrayEntity(mapper.writeValueAsBytes(
+					dataset.customer(index, ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE))),
+					ContentType.APPLICATION_JSON));
+			return put;
+		}
+	},
+
+	/* GET /customers, the page that follows a customer picked at random */
+	LIST {
+		@Override
+		HttpUriRequest request(String target, Dataset dataset, ObjectMapper mapper, int listSize) {
+			// Same encoding as PageCursor, the cursors of real clients come from the previous page
+			final String after = Base64.getUrlEncoder().withoutPadding()
+					.encodeToString(Dataset.id(pick(dataset)).toByteArray());
+			return new HttpGet(target + "/customers?size=" + listSize + "&after=" + after);
+		}
+	};
+
+	abstract HttpUriRequest request(String target, Dataset dataset, ObjectMapper mapper, int listSize)
+			throws JsonProcessingException;
+
+	/* The name used by the options and the results */
+	String key() {
+		return name().toLowerCase();
+	}
+
+	HttpUriRequest authorized(HttpUriRequest request, String token) {
+		request.setHeader(HttpHeaders.AUTHORIZATION, "Bearer " + token);
+		request.setHeader(HttpHeaders.ACCEPT, ContentType.APPLICATION_JSON.getMimeType());
+		return request;
+	}
+
+	private static long pick(Dataset dataset) {
+		return ThreadLocalRandom.current().nextLong(dataset.size());
+	}
+}
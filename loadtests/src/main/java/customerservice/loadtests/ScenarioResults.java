@@ -0,0 +1,68 @@
+package customerservice.loadtests;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Latencies and errors of one scenario, recorded by all the users.
+ */
+final class ScenarioResults {
+
+	private final Scenario scenario;
+
+	/* Microseconds, resized as needed */
+	private final Histogram latencies = new ConcurrentHistogram(3);
+
+	private final LongAdder errors = new LongAdder();
+
+	ScenarioResults(Scenario scenario) {
+		this.scenario = scenario;
+	}
+
+	void record(long latencyNanos, boolean success) {
+		latencies.recordValue(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+		if (!success) {
+			errors.increment();
+		}
+	}
+
+	Scenario scenario() {
+		return scenario;
+	}
+
+	long count() {
+		return latencies.getTotalCount();
+	}
+
+	double errorRate() {
+		return count() == 0 ? 0 : (double) errors.sum() / count();
+	}
+
+	double throughput(long seconds) {
+		return (double) count() / seconds;
+	}
+
+	double percentileMillis(double percentile) {
+		return latencies.getValueAtPercentile(percentile) / 1000.0;
+	}
+
+	/* As written to the result file */
+	Map<String, Object> summary(long seconds) {
+		final Map<String, Object> summary = new LinkedHashMap<>();
+		summary.put("scenario", scenario.key());
+		summary.put("count", count());
+		summary.put("errors", errors.sum());
+		summary.put("throughput", throughput(seconds));
+		summary.put("p50_ms", percentileMillis(50));
+		summary.put("p95_ms", percentileMillis(95));
+		summary.put("p99_ms", percentileMillis(99));
+		summary.put("p999_ms", percentileMillis(99.9));
+		summary.put("max_ms", latencies.getMaxValue() / 1000.0);
+		return summary;
+	}
+}
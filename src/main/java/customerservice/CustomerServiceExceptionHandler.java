@@ -5,6 +5,7 @@ import static org.springframework.http.HttpStatus.FORBIDDEN;
 
 import javax.servlet.http.HttpServletRequest;
 
+import org.springframework.context.annotation.Profile;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -16,6 +17,7 @@ import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExcep
  * Handles exceptions that are not already handled in ResponseEntityExceptionHandler class
  * 
  */
+@Profile("!reactive")
 @RestControllerAdvice
 public class CustomerServiceExceptionHandler extends ResponseEntityExceptionHandler {
 
@@ -0,0 +1,36 @@
+package customerservice;
+
+import static org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * WebFlux counterpart of {@link CustomerServiceExceptionHandler}, active with
+ * the {@code reactive} profile.
+ *
+ */
+@Profile("reactive")
+@RestControllerAdvice
+public class ReactiveCustomerServiceExceptionHandler {
+
+	@ExceptionHandler(CustomerServiceException.class)
+	public ResponseEntity<?> handleCustomerServiceException(CustomerServiceException ex) {
+		return new ResponseEntity<>(ex.getMessage(), ex.getHttpStatus());
+	}
+
+	/* Invalid bodies, parameters and media types */
+	@ExceptionHandler(ResponseStatusException.class)
+	public ResponseEntity<?> handleResponseStatusException(ResponseStatusException ex) {
+		return new ResponseEntity<>(ex.getReason(), ex.getStatus());
+	}
+
+	@ExceptionHandler(Exception.class)
+	ResponseEntity<?> handleException(Exception ex) {
+		return new ResponseEntity<>(ex.getMessage(), INTERNAL_SERVER_ERROR);
+	}
+
+}
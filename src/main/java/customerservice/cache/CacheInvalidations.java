@@ -0,0 +1,90 @@
+package customerservice.cache;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import customerservice.domain.CustomerChange;
+import customerservice.repository.mongodb.CustomerChanges;
+
+/**
+ * Invalidates the customers written by the other instances, read from the
+ * change feed every {@code customers.cache.invalidation-poll-ms}.
+ * <p>
+ * An instance invalidates the customers it writes itself right away. The
+ * writes of the other instances are seen once the change is readable, after
+ * {@code customers.changes.settle-ms}: a cached customer, and its strong
+ * ETag, is stale at most {@code settle-ms + invalidation-poll-ms} after a
+ * write elsewhere. When the feed can not be followed, MongoDB unavailable for
+ * longer than the retention, the whole cache is cleared.
+ */
+@Profile("!reactive")
+@Component
+public class CacheInvalidations {
+
+	private static final int BATCH_SIZE = 1000;
+
+	private final CustomerChanges changes;
+
+	private final CustomerCache cache;
+
+	private final ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		final Thread thread = new Thread(runnable, "cache-invalidations");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/* The token of the last change applied, null until the first poll succeeds */
+	private Long since;
+
+	public CacheInvalidations(CustomerChanges changes, CustomerCache cache,
+			@Value("${customers.cache.invalidation-poll-ms:1000}") long pollMillis) {
+		this.changes = changes;
+		this.cache = cache;
+		if (pollMillis > 0) {
+			poller.scheduleWithFixedDelay(this::poll, 0, pollMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@PreDestroy
+	public void stop() {
+		poller.shutdownNow();
+	}
+
+	/* Only run by the poller thread */
+	void poll() {
+
+		try {
+			if (since == null) {
+				// Nothing cached can be older than the start
+				since = changes.latest();
+				return;
+			}
+
+			if (changes.expired(since)) {
+				since = changes.latest();
+				cache.clear();
+				return;
+			}
+
+			List<CustomerChange> found;
+			do {
+				found = changes.after(since, BATCH_SIZE);
+				if (!found.isEmpty()) {
+					cache.invalidateAll(found.stream().map(CustomerChange::getCustomerId).collect(Collectors.toList()));
+					since = found.get(found.size() - 1).getToken();
+				}
+			} while (found.size() == BATCH_SIZE);
+		} catch (RuntimeException e) {
+			// MongoDB unavailable, the next poll catches up
+		}
+	}
+}
@@ -0,0 +1,32 @@
+package customerservice.cache;
+
+import customerservice.domain.Customer;
+
+/**
+ * A serialized customer ready to be written as a response body, with the
+ * customer it was serialized from.
+ */
+public final class CachedBody {
+
+	private final Customer customer;
+	private final byte[] bytes;
+
+	CachedBody(Customer customer, byte[] bytes) {
+		this.customer = customer;
+		this.bytes = bytes;
+	}
+
+	public Customer getCustomer() {
+		return customer;
+	}
+
+	/**
+	 * Returns the serialized customer, the array is shared and must not be
+	 * modified.
+	 * 
+	 * @return The serialized customer
+	 */
+	public byte[] getBytes() {
+		return bytes;
+	}
+}
@@ -0,0 +1,176 @@
+package customerservice.cache;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import customerservice.domain.Customer;
+
+/**
+ * Bounded in-process cache of customers by id.
+ * <p>
+ * Entries are evicted by size (W-TinyLFU) and expire a fixed time after they
+ * were loaded. Customers are immutable so cached instances are shared between
+ * threads as they are.
+ * <p>
+ * The cache holds the loads in progress as futures: a miss registers the
+ * future of its load and waits for it outside of the cache, no lock of the
+ * cache is held while a customer is read.
+ * <p>
+ * The serialized forms of a customer, one per content type, are cached along
+ * with it and invalidated with it.
+ * <p>
+ * Hit, miss and eviction counts are exposed through JMX.
+ */
+@Component
+@ManagedResource(objectName = "customerservice:type=Cache,name=customers", description = "Customers by id")
+public class CustomerCache {
+
+	private final AsyncCache<ObjectId, Entry> customers;
+
+	public CustomerCache(@Value("${customers.cache.maximum-size:100000}") long maximumSize,
+			@Value("${customers.cache.expire-after-write-seconds:300}") long expireAfterWriteSeconds) {
+
+		this.customers = Caffeine.newBuilder()
+				.maximumSize(maximumSize)
+				.expireAfterWrite(expireAfterWriteSeconds, TimeUnit.SECONDS)
+				.recordStats()
+				.buildAsync();
+	}
+
+	/**
+	 * Returns the cached customer or loads it on a miss.
+	 * <p>
+	 * Absent customers are not cached. An invalidation that happens while the
+	 * customer is being loaded removes the load: the callers already waiting
+	 * for it get the customer read, the next ones read it again, so a stale
+	 * customer can not be cached after a write.
+	 *
+	 * @param id
+	 *            The id of the customer
+	 * @param loader
+	 *            Starts the load of the customer on a miss, it must not wait
+	 *            for it
+	 * @return The customer or empty if it does not exist
+	 */
+	public Optional<Customer> get(ObjectId id, Function<ObjectId, CompletableFuture<Optional<Customer>>> loader) {
+		return entry(id, loader).map(entry -> entry.customer);
+	}
+
+	/**
+	 * Returns the cached serialized form of a customer, the customer is loaded
+	 * on a miss then serialized once per content type.
+	 *
+	 * @param id
+	 *            The id of the customer
+	 * @param contentType
+	 *            The content type of the serialized form
+	 * @param loader
+	 *            Starts the load of the customer on a miss, it must not wait
+	 *            for it
+	 * @param serializer
+	 *            Serializes the customer to the given content type
+	 * @return The serialized customer or empty if it does not exist
+	 */
+	public Optional<CachedBody> getBody(ObjectId id, String contentType,
+			Function<ObjectId, CompletableFuture<Optional<Customer>>> loader, Function<Customer, byte[]> serializer) {
+		return entry(id, loader).map(entry -> entry.bodies.computeIfAbsent(contentType,
+				type -> new CachedBody(entry.customer, serializer.apply(entry.customer))));
+	}
+
+	/**
+	 * Returns the cached customers among the given ones, nothing is loaded.
+	 * <p>
+	 * The customers being loaded are not returned. The callers load the
+	 * missing customers themselves, in bulk. They are not cached: unlike
+	 * {@link #get(ObjectId, Function)} an invalidation could not remove such a
+	 * load and a stale customer could be cached.
+	 *
+	 * @param ids
+	 *            The ids of the customers
+	 * @return The cached customers by id
+	 */
+	public Map<ObjectId, Customer> getAllPresent(Collection<ObjectId> ids) {
+		final Map<ObjectId, Customer> present = new HashMap<>();
+		customers.synchronous().getAllPresent(ids).forEach((id, entry) -> present.put(id, entry.customer));
+		return present;
+	}
+
+	public void invalidate(ObjectId id) {
+		customers.synchronous().invalidate(id);
+	}
+
+	public void invalidateAll(Collection<ObjectId> ids) {
+		customers.synchronous().invalidateAll(ids);
+	}
+
+	@ManagedOperation(description = "Removes all the customers from the cache")
+	public void clear() {
+		customers.synchronous().invalidateAll();
+	}
+
+	@ManagedAttribute(description = "Approximate number of cached customers")
+	public long getSize() {
+		return customers.synchronous().estimatedSize();
+	}
+
+	@ManagedAttribute(description = "Number of lookups that found a cached customer")
+	public long getHitCount() {
+		return customers.synchronous().stats().hitCount();
+	}
+
+	@ManagedAttribute(description = "Number of lookups that loaded the customer from MongoDB")
+	public long getMissCount() {
+		return customers.synchronous().stats().missCount();
+	}
+
+	@ManagedAttribute(description = "Ratio of lookups that found a cached customer")
+	public double getHitRate() {
+		return customers.synchronous().stats().hitRate();
+	}
+
+	@ManagedAttribute(description = "Number of customers evicted because of size or expiration")
+	public long getEvictionCount() {
+		return customers.synchronous().stats().evictionCount();
+	}
+
+	private Optional<Entry> entry(ObjectId id, Function<ObjectId, CompletableFuture<Optional<Customer>>> loader) {
+
+		// An absent customer completes with null, Caffeine removes the entry
+		final CompletableFuture<Entry> entry = customers.get(id,
+				(key, executor) -> loader.apply(key).thenApply(customer -> customer.map(Entry::new).orElse(null)));
+
+		try {
+			return Optional.ofNullable(entry.join());
+		} catch (CompletionException e) {
+			throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+		}
+	}
+
+	private static final class Entry {
+
+		private final Customer customer;
+		private final ConcurrentMap<String, CachedBody> bodies = new ConcurrentHashMap<>(2);
+
+		Entry(Customer customer) {
+			this.customer = customer;
+		}
+	}
+}
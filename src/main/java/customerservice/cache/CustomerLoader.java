@@ -0,0 +1,151 @@
+package customerservice.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.PreDestroy;
+
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import customerservice.domain.Customer;
+import customerservice.repository.mongodb.CustomerRepository;
+
+/**
+ * Loads the customers missing from the {@link CustomerCache}.
+ * <p>
+ * A load returns a future right away, the customer is read by the loader
+ * threads: the cache registers the future and the caller waits for it
+ * outside of the cache. Concurrent misses of the same customer already share
+ * one load, the cache hands the same future to all of them.
+ * <p>
+ * When a batch window is configured the misses of distinct customers are
+ * also merged: the first miss opens a batch, the batch is read when the
+ * window elapses or as soon as it is full, all the customers requested
+ * meanwhile with a single {@code $in} query. Each future gets its own
+ * customer.
+ */
+@Profile("!reactive")
+@Component
+public class CustomerLoader {
+
+	private final CustomerRepository repo;
+	private final long batchWindowMillis;
+	private final int batchMaxSize;
+
+	/* Reads the customers, one task per customer or per batch */
+	private final ExecutorService loads = Executors.newCachedThreadPool(daemon("customer-loader"));
+
+	/* Closes the batches whose window elapsed */
+	private final ScheduledExecutorService windows = Executors
+			.newSingleThreadScheduledExecutor(daemon("customer-loader-window"));
+
+	/* Not a monitor, a waiting virtual thread does not pin its carrier */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/* The batch accepting ids, null when none is open, guarded by the lock */
+	private Batch current;
+
+	public CustomerLoader(CustomerRepository repo,
+			@Value("${customers.cache.batch-window-ms:0}") long batchWindowMillis,
+			@Value("${customers.cache.batch-max-size:100}") int batchMaxSize) {
+		this.repo = repo;
+		this.batchWindowMillis = batchWindowMillis;
+		this.batchMaxSize = batchMaxSize;
+	}
+
+	@PreDestroy
+	public void stop() {
+		windows.shutdownNow();
+		loads.shutdownNow();
+	}
+
+	/**
+	 * Starts reading the customer from MongoDB, alone or in a batch, without
+	 * waiting for it.
+	 *
+	 * @param id
+	 *            The id of the customer
+	 * @return The customer or empty if it does not exist, once read
+	 */
+	public CompletableFuture<Optional<Customer>> load(ObjectId id) {
+
+		if (batchWindowMillis <= 0) {
+			return CompletableFuture.supplyAsync(() -> repo.findById(id), loads);
+		}
+
+		final Batch full;
+		final CompletableFuture<Optional<Customer>> customer;
+		lock.lock();
+		try {
+			if (current == null) {
+				final Batch opened = new Batch();
+				current = opened;
+				windows.schedule(() -> close(opened), batchWindowMillis, TimeUnit.MILLISECONDS);
+			}
+			customer = current.customers.computeIfAbsent(id, key -> new CompletableFuture<>());
+			full = current.customers.size() >= batchMaxSize ? current : null;
+			if (full != null) {
+				current = null;
+			}
+		} finally {
+			lock.unlock();
+		}
+
+		if (full != null) {
+			loads.execute(() -> full.load(repo));
+		}
+
+		return customer;
+	}
+
+	/* The window elapsed, the batch is read unless it was read when full */
+	private void close(Batch batch) {
+
+		lock.lock();
+		try {
+			if (current != batch) {
+				return;
+			}
+			current = null;
+		} finally {
+			lock.unlock();
+		}
+
+		loads.execute(() -> batch.load(repo));
+	}
+
+	private static ThreadFactory daemon(String name) {
+		return runnable -> {
+			final Thread thread = new Thread(runnable, name);
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	/* The customers requested within one window, no longer changed once closed */
+	private static final class Batch {
+
+		private final Map<ObjectId, CompletableFuture<Optional<Customer>>> customers = new LinkedHashMap<>();
+
+		void load(CustomerRepository repo) {
+			try {
+				final Map<ObjectId, Customer> found = new LinkedHashMap<>();
+				repo.findAllById(customers.keySet()).forEach(customer -> found.put(customer.getId(), customer));
+				customers.forEach((id, customer) -> customer.complete(Optional.ofNullable(found.get(id))));
+			} catch (RuntimeException e) {
+				customers.values().forEach(customer -> customer.completeExceptionally(e));
+			}
+		}
+	}
+}
@@ -7,8 +7,14 @@ import java.util.Map;
 import javax.validation.constraints.NotNull;
 
 import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.http.HttpStatus;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
 import customerservice.CustomerServiceException;
@@ -29,9 +35,23 @@ import customerservice.domain.enums.PhoneType;
  * {@code Customer myCustomer = Customer.ofType(CustomerType.PERSON).withFirstName("Ken").build();}<br>
  * {@code Customer myCustomer = Customer.from(myCustomer).withFirstName("Bison").build(); // First name changed}
  */
+@Document
+/* The searches are paged in id order, the id ends the indexes so that the pages are read in index order */
+@CompoundIndexes({
+		@CompoundIndex(name = "lastName_firstName_id", def = "{'lastName': 1, 'firstName': 1, '_id': 1}"),
+		@CompoundIndex(name = "address_country_city_id", def = "{'address.country': 1, 'address.city': 1, '_id': 1}"),
+		@CompoundIndex(name = "customerType_id", def = "{'customerType': 1, '_id': 1}"),
+		@CompoundIndex(name = "birthDate_id", def = "{'birthDate': 1, '_id': 1}"),
+		/* The trigrams of the names, written with the document by the repositories */
+		@CompoundIndex(name = "nameGrams", def = "{'nameGrams': 1}"),
+		/* The change marks of the change feed, written with the document by the repositories */
+		@CompoundIndex(name = "changedAt", def = "{'changedAt': 1}") })
 @JsonIgnoreProperties(ignoreUnknown = true)
 public final class Customer {
 
+	/** Name of the unique index of the emails, the one a duplicate email violates */
+	public static final String EMAIL_INDEX = "email";
+
 	private ObjectId id;
 	private String firstName;
 	private String lastName;
@@ -40,16 +60,20 @@ public final class Customer {
 	private MaritalStatus maritalStatus;
 	private Address address;
 	private Map<PhoneType, String> phones;
+	/* Sparse, customers without email don't conflict */
+	@Indexed(name = EMAIL_INDEX, unique = true, sparse = true)
 	private String email;
 	@NotNull
 	private CustomerType customerType;
+	@Version
+	private Long version;
 
 	private Customer() {
 	}
 
 	private Customer(ObjectId id, String firstName, String lastName, Gender gender, LocalDate birthDate,
 			MaritalStatus maritalStatus, Address address, Map<PhoneType, String> phones, String email,
-			CustomerType customerType) {
+			CustomerType customerType, Long version) {
 		this.id = id;
 		this.firstName = firstName;
 		this.lastName = lastName;
@@ -60,6 +84,7 @@ public final class Customer {
 		this.phones = phones;
 		this.email = email;
 		this.customerType = customerType;
+		this.version = version;
 	}
 
 	public ObjectId getId() {
@@ -97,16 +122,31 @@ public final class Customer {
 	/**
 	 * Returns a copy of the phones list, we don't want the reference to escape.
 	 * 
-	 * @return A copy of the phones list
+	 * @return A copy of the phones list, null if the phones were not read
+	 *         from the database
 	 */
 	public Map<PhoneType, String> getPhones() {
-		return new HashMap<>(phones);
+		return phones == null ? null : new HashMap<>(phones);
 	}
 
 	public String getEmail() {
 		return email;
 	}
 
+	/**
+	 * Returns the version of the customer, incremented each time the customer
+	 * is saved.
+	 * <p>
+	 * The version is not part of the JSON representation, it is sent in the
+	 * ETag header instead.
+	 * 
+	 * @return The version or null if the customer was never saved
+	 */
+	@JsonIgnore
+	public Long getVersion() {
+		return version;
+	}
+
 	/**
 	 * Builds a customer object of the provided type.
 	 * <p>
@@ -143,8 +183,11 @@ public final class Customer {
 		builder.address = customer.address;
 		builder.birthDate = customer.birthDate;
 		builder.email = customer.email;
-		builder.phones = customer.getPhones(); // we need a copy of the map hence
-												// the getter
+		builder.version = customer.version;
+		if (customer.phones != null) {
+			builder.phones = customer.getPhones(); // we need a copy of the map hence
+													// the getter
+		}
 		return builder;
 	}
 
@@ -160,6 +203,7 @@ public final class Customer {
 		private Map<PhoneType, String> phones = new HashMap<>();
 		private String email;
 		private CustomerType customerType;
+		private Long version;
 
 		public Builder(CustomerType customerType) {
 			if (customerType == null) {
@@ -227,9 +271,14 @@ public final class Customer {
 			return this;
 		}
 
+		public Builder withVersion(Long version) {
+			this.version = version;
+			return this;
+		}
+
 		public Customer build() {
 			return new Customer(id, firstName, lastName, gender, birthDate, maritalStatus, address, phones, email,
-					customerType);
+					customerType, version);
 		}
 	}
 }
@@ -0,0 +1,67 @@
+package customerservice.domain;
+
+import java.time.Instant;
+
+import org.bson.types.ObjectId;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+
+/**
+ * {@code CustomerChange} is an immutable object, one entry of the change feed
+ * of the customers.
+ * <p>
+ * A change tells which customer was created, updated or deleted, not what
+ * changed: consumers read the customers they need with
+ * {@code GET /customers?ids=}.
+ * <p>
+ * The tokens of the changes follow the order of the writes, they are the
+ * resume tokens of the feed. They are sent as strings, JavaScript numbers
+ * can't hold them.
+ */
+public final class CustomerChange {
+
+	public enum Type {
+		CREATED, UPDATED, DELETED
+	}
+
+	private final long token;
+	private final ObjectId customerId;
+	private final Type type;
+	/* Null for the deletions */
+	private final Long version;
+	private final Instant at;
+
+	private CustomerChange(long token, ObjectId customerId, Type type, Long version, Instant at) {
+		this.token = token;
+		this.customerId = customerId;
+		this.type = type;
+		this.version = version;
+		this.at = at;
+	}
+
+	public static CustomerChange of(long token, ObjectId customerId, Type type, Long version, Instant at) {
+		return new CustomerChange(token, customerId, type, version, at);
+	}
+
+	@JsonSerialize(using = ToStringSerializer.class)
+	public long getToken() {
+		return token;
+	}
+
+	public ObjectId getCustomerId() {
+		return customerId;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public Long getVersion() {
+		return version;
+	}
+
+	public Instant getAt() {
+		return at;
+	}
+}
@@ -0,0 +1,77 @@
+package customerservice.metrics;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+import customerservice.repository.mongodb.CustomerRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Times every call to the {@link CustomerRepository}, one
+ * {@code customers.repository} timer per method with a percentile
+ * histogram.
+ * <p>
+ * The timers are registered when the repository is created, a call only
+ * looks up the timer of its method and records its duration.
+ */
+@Component
+public class RepositoryTimers implements BeanPostProcessor {
+
+	static final String TIMER = "customers.repository";
+
+	private final ObjectProvider<MeterRegistry> registry;
+
+	public RepositoryTimers(ObjectProvider<MeterRegistry> registry) {
+		this.registry = registry;
+	}
+
+	@Override
+	public Object postProcessAfterInitialization(Object bean, String beanName) {
+
+		if (!(bean instanceof CustomerRepository)) {
+			return bean;
+		}
+
+		return timed((CustomerRepository) bean, registry.getObject());
+	}
+
+	static CustomerRepository timed(CustomerRepository repo, MeterRegistry registry) {
+
+		final Map<Method, Timer> timers = new HashMap<>();
+		for (Method method : CustomerRepository.class.getMethods()) {
+			timers.put(method, Timer.builder(TIMER)
+					.tag("method", method.getName())
+					.publishPercentileHistogram()
+					.register(registry));
+		}
+
+		final ProxyFactory proxy = new ProxyFactory();
+		proxy.setTarget(repo);
+		proxy.addInterface(CustomerRepository.class);
+		proxy.addAdvice((MethodInterceptor) invocation -> {
+
+			final Timer timer = timers.get(invocation.getMethod());
+			if (timer == null) {
+				return invocation.proceed();
+			}
+
+			final long start = System.nanoTime();
+			try {
+				return invocation.proceed();
+			} finally {
+				timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+			}
+		});
+
+		return (CustomerRepository) proxy.getProxy();
+	}
+}
@@ -0,0 +1,241 @@
+package customerservice.oauth2;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.Binary;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.security.oauth2.common.ExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.common.util.SerializationUtils;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.AuthenticationKeyGenerator;
+import org.springframework.security.oauth2.provider.token.DefaultAuthenticationKeyGenerator;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.UpdateOptions;
+
+/**
+ * Access and refresh tokens stored in MongoDB, shared by all the instances,
+ * enabled with {@code oauth2.token-store=mongodb}.
+ * <p>
+ * A token is stored under the MD5 of its value, with the authentication it
+ * was issued for, both Java serialized. MongoDB removes the expired tokens
+ * itself, through TTL indexes on their expiration date.
+ * <p>
+ * The tokens read are kept in a small near-cache, so a token is read from
+ * MongoDB once per instance and per {@code near-cache-seconds}, with one
+ * lookup by id that brings both the token and its authentication. A token
+ * removed by an instance is still accepted by the others until it leaves
+ * their near-cache.
+ */
+@Profile("!reactive")
+@Component
+@ConditionalOnProperty(name = "oauth2.token-store", havingValue = "mongodb")
+public class MongoTokenStore implements TokenStore {
+
+	static final String ACCESS_TOKENS = "oauth2_access_tokens";
+	static final String REFRESH_TOKENS = "oauth2_refresh_tokens";
+
+	private static final String ID = "_id";
+	private static final String TOKEN = "token";
+	private static final String AUTHENTICATION = "authentication";
+	private static final String AUTHENTICATION_KEY = "authenticationKey";
+	private static final String CLIENT_ID = "clientId";
+	private static final String USER_NAME = "userName";
+	private static final String REFRESH_TOKEN = "refreshToken";
+	private static final String EXPIRES_AT = "expiresAt";
+
+	private final MongoCollection<Document> accessTokens;
+
+	private final MongoCollection<Document> refreshTokens;
+
+	private final AuthenticationKeyGenerator authenticationKeys = new DefaultAuthenticationKeyGenerator();
+
+	private final Cache<String, StoredToken> nearCache;
+
+	public MongoTokenStore(MongoTemplate mongoTemplate,
+			@Value("${oauth2.token-store.near-cache-seconds:10}") long nearCacheSeconds,
+			@Value("${oauth2.token-store.near-cache-size:10000}") long nearCacheSize) {
+
+		this.accessTokens = mongoTemplate.getCollection(ACCESS_TOKENS);
+		this.refreshTokens = mongoTemplate.getCollection(REFRESH_TOKENS);
+		this.nearCache = Caffeine.newBuilder()
+				.maximumSize(nearCacheSize)
+				.expireAfterWrite(nearCacheSeconds, TimeUnit.SECONDS)
+				.build();
+
+		final IndexOptions expiry = new IndexOptions().expireAfter(0L, TimeUnit.SECONDS);
+		accessTokens.createIndex(Indexes.ascending(EXPIRES_AT), expiry);
+		accessTokens.createIndex(Indexes.ascending(AUTHENTICATION_KEY));
+		accessTokens.createIndex(Indexes.ascending(CLIENT_ID, USER_NAME));
+		accessTokens.createIndex(Indexes.ascending(REFRESH_TOKEN));
+		refreshTokens.createIndex(Indexes.ascending(EXPIRES_AT), expiry);
+	}
+
+	@Override
+	public OAuth2Authentication readAuthentication(OAuth2AccessToken token) {
+		return readAuthentication(token.getValue());
+	}
+
+	@Override
+	public OAuth2Authentication readAuthentication(String token) {
+		final StoredToken stored = read(token);
+		return stored == null ? null : stored.authentication;
+	}
+
+	@Override
+	public OAuth2AccessToken readAccessToken(String tokenValue) {
+		final StoredToken stored = read(tokenValue);
+		return stored == null ? null : stored.token;
+	}
+
+	@Override
+	public void storeAccessToken(OAuth2AccessToken token, OAuth2Authentication authentication) {
+
+		final Document document = new Document(ID, key(token.getValue()))
+				.append(TOKEN, new Binary(SerializationUtils.serialize(token)))
+				.append(AUTHENTICATION, new Binary(SerializationUtils.serialize(authentication)))
+				.append(AUTHENTICATION_KEY, authenticationKeys.extractKey(authentication))
+				.append(CLIENT_ID, authentication.getOAuth2Request().getClientId())
+				.append(USER_NAME, authentication.isClientOnly() ? null : authentication.getName());
+		if (token.getRefreshToken() != null) {
+			document.append(REFRESH_TOKEN, key(token.getRefreshToken().getValue()));
+		}
+		if (token.getExpiration() != null) {
+			document.append(EXPIRES_AT, token.getExpiration());
+		}
+
+		accessTokens.replaceOne(Filters.eq(ID, document.get(ID)), document, new UpdateOptions().upsert(true));
+		nearCache.invalidate(token.getValue());
+	}
+
+	@Override
+	public void removeAccessToken(OAuth2AccessToken token) {
+		accessTokens.deleteOne(Filters.eq(ID, key(token.getValue())));
+		nearCache.invalidate(token.getValue());
+	}
+
+	@Override
+	public void storeRefreshToken(OAuth2RefreshToken refreshToken, OAuth2Authentication authentication) {
+
+		final Document document = new Document(ID, key(refreshToken.getValue()))
+				.append(TOKEN, new Binary(SerializationUtils.serialize(refreshToken)))
+				.append(AUTHENTICATION, new Binary(SerializationUtils.serialize(authentication)));
+		if (refreshToken instanceof ExpiringOAuth2RefreshToken) {
+			final Date expiration = ((ExpiringOAuth2RefreshToken) refreshToken).getExpiration();
+			if (expiration != null) {
+				document.append(EXPIRES_AT, expiration);
+			}
+		}
+
+		refreshTokens.replaceOne(Filters.eq(ID, document.get(ID)), document, new UpdateOptions().upsert(true));
+	}
+
+	@Override
+	public OAuth2RefreshToken readRefreshToken(String tokenValue) {
+		final Document document = refreshTokens.find(Filters.eq(ID, key(tokenValue)))
+				.projection(Projections.include(TOKEN))
+				.first();
+		return document == null ? null : deserialize(document, TOKEN);
+	}
+
+	@Override
+	public OAuth2Authentication readAuthenticationForRefreshToken(OAuth2RefreshToken token) {
+		final Document document = refreshTokens.find(Filters.eq(ID, key(token.getValue())))
+				.projection(Projections.include(AUTHENTICATION))
+				.first();
+		return document == null ? null : deserialize(document, AUTHENTICATION);
+	}
+
+	@Override
+	public void removeRefreshToken(OAuth2RefreshToken token) {
+		refreshTokens.deleteOne(Filters.eq(ID, key(token.getValue())));
+	}
+
+	@Override
+	public void removeAccessTokenUsingRefreshToken(OAuth2RefreshToken refreshToken) {
+		final Bson usingRefreshToken = Filters.eq(REFRESH_TOKEN, key(refreshToken.getValue()));
+		find(usingRefreshToken).forEach(token -> nearCache.invalidate(token.getValue()));
+		accessTokens.deleteMany(usingRefreshToken);
+	}
+
+	@Override
+	public OAuth2AccessToken getAccessToken(OAuth2Authentication authentication) {
+		final Document document = accessTokens.find(Filters.eq(AUTHENTICATION_KEY,
+				authenticationKeys.extractKey(authentication)))
+				.projection(Projections.include(TOKEN))
+				.first();
+		return document == null ? null : deserialize(document, TOKEN);
+	}
+
+	@Override
+	public Collection<OAuth2AccessToken> findTokensByClientIdAndUserName(String clientId, String userName) {
+		return find(Filters.and(Filters.eq(CLIENT_ID, clientId), Filters.eq(USER_NAME, userName)));
+	}
+
+	@Override
+	public Collection<OAuth2AccessToken> findTokensByClientId(String clientId) {
+		return find(Filters.eq(CLIENT_ID, clientId));
+	}
+
+	/* The token and its authentication, from the near-cache or MongoDB, null if unknown */
+	private StoredToken read(String tokenValue) {
+		return nearCache.get(tokenValue, value -> {
+			final Document document = accessTokens.find(Filters.eq(ID, key(value)))
+					.projection(Projections.include(TOKEN, AUTHENTICATION))
+					.first();
+			return document == null ? null
+					: new StoredToken(deserialize(document, TOKEN), deserialize(document, AUTHENTICATION));
+		});
+	}
+
+	private List<OAuth2AccessToken> find(Bson filter) {
+		final List<OAuth2AccessToken> tokens = new ArrayList<>();
+		for (Document document : accessTokens.find(filter).projection(Projections.include(TOKEN))) {
+			tokens.add(deserialize(document, TOKEN));
+		}
+		return tokens;
+	}
+
+	/* The id of a token, the values of the JWTs are too long to be indexed as they are */
+	private static String key(String tokenValue) {
+		return DigestUtils.md5DigestAsHex(tokenValue.getBytes(UTF_8));
+	}
+
+	private static <T> T deserialize(Document document, String field) {
+		return SerializationUtils.deserialize(document.get(field, Binary.class).getData());
+	}
+
+	private static final class StoredToken {
+
+		private final OAuth2AccessToken token;
+
+		private final OAuth2Authentication authentication;
+
+		private StoredToken(OAuth2AccessToken token, OAuth2Authentication authentication) {
+			this.token = token;
+			this.authentication = authentication;
+		}
+	}
+}
@@ -2,11 +2,16 @@ package customerservice.oauth2;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
 import org.springframework.security.oauth2.config.annotation.configurers.ClientDetailsServiceConfigurer;
+import org.springframework.security.oauth2.config.annotation.web.configurers.AuthorizationServerEndpointsConfigurer;
 import org.springframework.security.oauth2.config.annotation.web.configuration.AuthorizationServerConfigurerAdapter;
 import org.springframework.security.oauth2.config.annotation.web.configuration.EnableAuthorizationServer;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
 
 @EnableAuthorizationServer
+@Profile("!reactive")
 @Configuration
 public class OAuth2AuthorizationServerConfigurer extends AuthorizationServerConfigurerAdapter {
 
@@ -19,10 +24,25 @@ public class OAuth2AuthorizationServerConfigurer extends AuthorizationServerConf
 	@Value("${oauth2.scopes}")
 	private String[] scopes;
 
+	private final TokenStore tokenStore;
+
+	private final JwtAccessTokenConverter accessTokenConverter;
+
+	public OAuth2AuthorizationServerConfigurer(TokenStore tokenStore, JwtAccessTokenConverter accessTokenConverter) {
+		this.tokenStore = tokenStore;
+		this.accessTokenConverter = accessTokenConverter;
+	}
+
 	/* OAuth2 in memory credentials */
 	@Override
 	public void configure(ClientDetailsServiceConfigurer clients) throws Exception {
 		clients.inMemory().withClient(clientId).secret(secret).scopes(scopes).and().build();
 	}
 
+	/* Issue signed JWTs, see OAuth2JwtConfiguration */
+	@Override
+	public void configure(AuthorizationServerEndpointsConfigurer endpoints) throws Exception {
+		endpoints.tokenStore(tokenStore).accessTokenConverter(accessTokenConverter);
+	}
+
 }
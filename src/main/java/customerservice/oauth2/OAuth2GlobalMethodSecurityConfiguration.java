@@ -1,15 +1,32 @@
 package customerservice.oauth2;
 
+import java.util.Collection;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.security.access.AccessDecisionManager;
+import org.springframework.security.access.ConfigAttribute;
 import org.springframework.security.access.expression.method.MethodSecurityExpressionHandler;
 import org.springframework.security.config.annotation.method.configuration.EnableGlobalMethodSecurity;
 import org.springframework.security.config.annotation.method.configuration.GlobalMethodSecurityConfiguration;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.oauth2.provider.expression.OAuth2MethodSecurityExpressionHandler;
 
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Scope;
+
+@Profile("!reactive")
 @Configuration
 @EnableGlobalMethodSecurity(prePostEnabled = true)
 public class OAuth2GlobalMethodSecurityConfiguration extends GlobalMethodSecurityConfiguration {
 
+	@Autowired
+	private Tracer tracer;
+
 	/**
 	 * Customize the MethodSecurityExpressionHandler so we can use the SPEL
 	 * variable 'oauth2' with security annotations like @PreAuthorize
@@ -18,4 +35,47 @@ public class OAuth2GlobalMethodSecurityConfiguration extends GlobalMethodSecurit
 	protected MethodSecurityExpressionHandler createExpressionHandler() {
 		return new OAuth2MethodSecurityExpressionHandler();
 	}
+
+	/**
+	 * Trace the access decisions, the evaluation of the @PreAuthorize
+	 * expressions, in a 'security.pre-authorize' span. The scope checks are
+	 * granted without SpEL, see {@link ScopeAccessDecisionManager}
+	 */
+	@Override
+	protected AccessDecisionManager accessDecisionManager() {
+
+		final AccessDecisionManager decisions = new ScopeAccessDecisionManager(super.accessDecisionManager());
+
+		return new AccessDecisionManager() {
+
+			@Override
+			public void decide(Authentication authentication, Object object,
+					Collection<ConfigAttribute> configAttributes) {
+
+				final Span span = tracer.spanBuilder("security.pre-authorize").startSpan();
+				if (object instanceof MethodInvocation) {
+					span.setAttribute("code.function", ((MethodInvocation) object).getMethod().getName());
+				}
+
+				try (Scope scope = span.makeCurrent()) {
+					decisions.decide(authentication, object, configAttributes);
+				} catch (RuntimeException e) {
+					span.setStatus(StatusCode.ERROR, e.getClass().getSimpleName());
+					throw e;
+				} finally {
+					span.end();
+				}
+			}
+
+			@Override
+			public boolean supports(ConfigAttribute attribute) {
+				return decisions.supports(attribute);
+			}
+
+			@Override
+			public boolean supports(Class<?> clazz) {
+				return decisions.supports(clazz);
+			}
+		};
+	}
 }
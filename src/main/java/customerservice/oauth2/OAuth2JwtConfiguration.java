@@ -0,0 +1,51 @@
+package customerservice.oauth2;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.Resource;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.store.JwtTokenStore;
+import org.springframework.security.oauth2.provider.token.store.KeyStoreKeyFactory;
+
+/**
+ * Access tokens are JWTs signed with the RSA key pair of the
+ * {@code oauth2.jwt.*} keystore, dedicated to the tokens: the SSL key is
+ * never used, so one can be rotated without the other.
+ * <p>
+ * Nothing is stored: the authorization server signs the tokens and the
+ * resource servers, servlet and reactive, verify them with the public key,
+ * read once at startup. A token issued by any instance is accepted by all the
+ * others, as long as they share the key pair. Tokens can not be revoked, they
+ * are valid until they expire.
+ * <p>
+ * With {@code oauth2.token-store=mongodb} the JWTs are stored in MongoDB
+ * instead, so they can be revoked, see {@link MongoTokenStore}. Instances
+ * running the reactive profile still verify them with the public key only.
+ */
+@Configuration
+public class OAuth2JwtConfiguration {
+
+	@Bean
+	public JwtAccessTokenConverter accessTokenConverter(
+			@Value("${oauth2.jwt.key-store}") Resource keyStore,
+			@Value("${oauth2.jwt.key-store-password}") String keyStorePassword,
+			@Value("${oauth2.jwt.key-alias}") String keyAlias,
+			@Value("${oauth2.jwt.key-password}") String keyPassword) {
+
+		final JwtAccessTokenConverter converter = new JwtAccessTokenConverter();
+		converter.setKeyPair(new KeyStoreKeyFactory(keyStore, keyStorePassword.toCharArray())
+				.getKeyPair(keyAlias, keyPassword.toCharArray()));
+		return converter;
+	}
+
+	@Bean
+	@Profile("!reactive")
+	@ConditionalOnProperty(name = "oauth2.token-store", havingValue = "jwt", matchIfMissing = true)
+	public TokenStore tokenStore(JwtAccessTokenConverter accessTokenConverter) {
+		return new JwtTokenStore(accessTokenConverter);
+	}
+}
@@ -0,0 +1,97 @@
+package customerservice.oauth2;
+
+import static org.springframework.http.HttpHeaders.AUTHORIZATION;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpMethod;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.ReactiveAuthorizationManager;
+import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
+import org.springframework.security.config.web.server.SecurityWebFiltersOrder;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.DefaultTokenServices;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.store.JwtTokenStore;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationToken;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.security.web.server.authentication.AuthenticationWebFilter;
+import org.springframework.security.web.server.authorization.AuthorizationContext;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * OAuth2 resource server of the {@code reactive} profile.
+ * <p>
+ * Bearer tokens are JWTs verified with the public key of
+ * {@link OAuth2JwtConfiguration}, on the event loop: the check is CPU only,
+ * no request leaves the instance. Spring Security OAuth2 only supports
+ * servlets so the scopes are enforced per route, with the same rules as the
+ * {@code @PreAuthorize} annotations of the servlet controller.
+ */
+@Profile("reactive")
+@Configuration
+@EnableWebFluxSecurity
+public class OAuth2ReactiveResourceServerConfiguration {
+
+	private static final String BEARER = "Bearer ";
+
+	@Bean
+	public SecurityWebFilterChain securityWebFilterChain(ServerHttpSecurity http,
+			JwtAccessTokenConverter accessTokenConverter) {
+
+		final AuthenticationWebFilter bearerTokens = new AuthenticationWebFilter(
+				authenticationManager(accessTokenConverter));
+		bearerTokens.setAuthenticationConverter(exchange -> {
+			final String header = exchange.getRequest().getHeaders().getFirst(AUTHORIZATION);
+			return header == null || !header.startsWith(BEARER) ? Mono.empty()
+					: Mono.just(new PreAuthenticatedAuthenticationToken(header.substring(BEARER.length()), ""));
+		});
+
+		return http
+				.csrf().disable()
+				.httpBasic().disable()
+				.formLogin().disable()
+				.addFilterAt(bearerTokens, SecurityWebFiltersOrder.AUTHENTICATION)
+				.authorizeExchange()
+					.pathMatchers("/actuator/health", "/actuator/prometheus").permitAll()
+					.pathMatchers(HttpMethod.GET, "/customers/**").access(hasAnyScope("read", "write", "read-write"))
+					.pathMatchers(HttpMethod.HEAD, "/customers/**").access(hasAnyScope("read", "write", "read-write"))
+					.pathMatchers("/customers/**").access(hasAnyScope("write", "read-write"))
+					.anyExchange().denyAll()
+				.and()
+				.build();
+	}
+
+	/* Verifies the signature and the expiration of the tokens, built once */
+	static ReactiveAuthenticationManager authenticationManager(JwtAccessTokenConverter accessTokenConverter) {
+
+		final DefaultTokenServices tokenServices = new DefaultTokenServices();
+		tokenServices.setTokenStore(new JwtTokenStore(accessTokenConverter));
+
+		return authentication -> Mono
+				.fromCallable(() -> tokenServices.loadAuthentication((String) authentication.getPrincipal()))
+				.onErrorMap(e -> !(e instanceof AuthenticationException),
+						e -> new BadCredentialsException(e.getMessage(), e));
+	}
+
+	private static ReactiveAuthorizationManager<AuthorizationContext> hasAnyScope(String... scopes) {
+
+		final List<String> granted = Arrays.asList(scopes);
+
+		return (authentication, context) -> authentication
+				.filter(OAuth2Authentication.class::isInstance)
+				.map(OAuth2Authentication.class::cast)
+				.map(oauth2 -> new AuthorizationDecision(oauth2.isAuthenticated()
+						&& oauth2.getOAuth2Request().getScope().stream().anyMatch(granted::contains)))
+				.defaultIfEmpty(new AuthorizationDecision(false));
+	}
+}
@@ -1,11 +1,36 @@
 package customerservice.oauth2;
 
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.oauth2.config.annotation.web.configuration.EnableResourceServer;
 import org.springframework.security.oauth2.config.annotation.web.configuration.ResourceServerConfigurerAdapter;
+import org.springframework.security.oauth2.config.annotation.web.configurers.ResourceServerSecurityConfigurer;
+import org.springframework.security.oauth2.provider.token.TokenStore;
 
 @EnableResourceServer
+@Profile("!reactive")
 @Configuration
 public class OAuth2ResourceServerConfigurer extends ResourceServerConfigurerAdapter {
 
+	private final TokenStore tokenStore;
+
+	public OAuth2ResourceServerConfigurer(TokenStore tokenStore) {
+		this.tokenStore = tokenStore;
+	}
+
+	/* Tokens are verified with the public key, no lookup, see OAuth2JwtConfiguration */
+	@Override
+	public void configure(ResourceServerSecurityConfigurer resources) throws Exception {
+		resources.tokenStore(tokenStore);
+	}
+
+	/* The actuator endpoints are served on the management port, scraped without token */
+	@Override
+	public void configure(HttpSecurity http) throws Exception {
+		http
+			.authorizeRequests()
+				.antMatchers("/actuator/health", "/actuator/prometheus").permitAll()
+				.anyRequest().authenticated();
+	}
 }
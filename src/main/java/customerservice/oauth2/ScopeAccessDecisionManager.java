@@ -0,0 +1,133 @@
+package customerservice.oauth2;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.security.access.AccessDecisionManager;
+import org.springframework.security.access.ConfigAttribute;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+/**
+ * Grants the {@code @PreAuthorize("#oauth2.hasAnyScope(...)")} checks
+ * without evaluating SpEL.
+ * <p>
+ * The scopes required by a method are read from its annotation once, as a
+ * bit mask, the scopes of a token are turned into a mask too and the check
+ * is a bitwise and. Other expressions, other authentications and all the
+ * denials go through the given decision manager so the errors sent to the
+ * clients do not change.
+ */
+class ScopeAccessDecisionManager implements AccessDecisionManager {
+
+	private static final Pattern HAS_ANY_SCOPE = Pattern
+			.compile("#oauth2\\.has(?:Any)?Scope\\(\\s*('[^']*'(?:\\s*,\\s*'[^']*')*)\\s*\\)");
+	private static final Pattern SCOPE = Pattern.compile("'([^']*)'");
+
+	/* No fast path for the method */
+	private static final long EVALUATE = 0L;
+
+	private final AccessDecisionManager decisions;
+
+	/* The bit of each scope required by a method, 64 scopes at most */
+	private final ConcurrentMap<String, Long> bits = new ConcurrentHashMap<>();
+
+	private final ConcurrentMap<Method, Long> requiredScopes = new ConcurrentHashMap<>();
+
+	ScopeAccessDecisionManager(AccessDecisionManager decisions) {
+		this.decisions = decisions;
+	}
+
+	@Override
+	public void decide(Authentication authentication, Object object, Collection<ConfigAttribute> configAttributes) {
+
+		if (object instanceof MethodInvocation && authentication instanceof OAuth2Authentication) {
+			final long required = requiredScopes.computeIfAbsent(method((MethodInvocation) object), this::compile);
+			if (required != EVALUATE && (granted((OAuth2Authentication) authentication) & required) != 0) {
+				return;
+			}
+		}
+
+		decisions.decide(authentication, object, configAttributes);
+	}
+
+	@Override
+	public boolean supports(ConfigAttribute attribute) {
+		return decisions.supports(attribute);
+	}
+
+	@Override
+	public boolean supports(Class<?> clazz) {
+		return decisions.supports(clazz);
+	}
+
+	/* The mask of the scopes granted to the token, the scopes no method requires are left out */
+	private long granted(OAuth2Authentication authentication) {
+
+		long granted = 0L;
+		for (String scope : authentication.getOAuth2Request().getScope()) {
+			final Long bit = bits.get(scope);
+			if (bit != null) {
+				granted |= bit;
+			}
+		}
+
+		return granted;
+	}
+
+	/* The mask of the scopes listed by the @PreAuthorize of the method */
+	private long compile(Method method) {
+
+		PreAuthorize preAuthorize = AnnotatedElementUtils.findMergedAnnotation(method, PreAuthorize.class);
+		if (preAuthorize == null) {
+			preAuthorize = AnnotatedElementUtils.findMergedAnnotation(method.getDeclaringClass(), PreAuthorize.class);
+		}
+
+		if (preAuthorize == null) {
+			return EVALUATE;
+		}
+
+		final Matcher matcher = HAS_ANY_SCOPE.matcher(preAuthorize.value().trim());
+		if (!matcher.matches()) {
+			return EVALUATE;
+		}
+
+		long required = 0L;
+		final Matcher scopes = SCOPE.matcher(matcher.group(1));
+		while (scopes.find()) {
+			final Long bit = bit(scopes.group(1));
+			if (bit == null) {
+				return EVALUATE;
+			}
+			required |= bit;
+		}
+
+		return required;
+	}
+
+	private synchronized Long bit(String scope) {
+
+		final Long bit = bits.get(scope);
+		if (bit != null || bits.size() == Long.SIZE) {
+			return bit;
+		}
+
+		final Long added = 1L << bits.size();
+		bits.put(scope, added);
+		return added;
+	}
+
+	/* The method of the target class, where the annotations are */
+	private static Method method(MethodInvocation invocation) {
+		return invocation.getThis() == null ? invocation.getMethod()
+				: AopUtils.getMostSpecificMethod(invocation.getMethod(), AopUtils.getTargetClass(invocation.getThis()));
+	}
+}
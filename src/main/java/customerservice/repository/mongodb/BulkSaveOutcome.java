@@ -0,0 +1,39 @@
+package customerservice.repository.mongodb;
+
+import org.bson.types.ObjectId;
+
+/**
+ * The outcome of saving one customer with
+ * {@link CustomerRepositoryCustom#bulkSave(java.util.List)}.
+ */
+public final class BulkSaveOutcome {
+
+	public enum Status {
+		CREATED, UPDATED, DUPLICATE, FAILED
+	}
+
+	private final ObjectId id;
+	private final Status status;
+	private final String error;
+
+	public BulkSaveOutcome(ObjectId id, Status status, String error) {
+		this.id = id;
+		this.status = status;
+		this.error = error;
+	}
+
+	public ObjectId getId() {
+		return id;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return The error reported by MongoDB, null unless the save failed
+	 */
+	public String getError() {
+		return error;
+	}
+}
@@ -0,0 +1,22 @@
+package customerservice.repository.mongodb;
+
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.BeforeSaveEvent;
+import org.springframework.stereotype.Component;
+
+import customerservice.domain.Customer;
+
+/**
+ * Marks the customers inserted by the templates, blocking and reactive, so
+ * that they show in the change feed, see {@link CustomerChangeDocuments}.
+ */
+@Component
+class ChangeMarks extends AbstractMongoEventListener<Customer> {
+
+	@Override
+	public void onBeforeSave(BeforeSaveEvent<Customer> event) {
+		if (event.getDocument() != null) {
+			CustomerChangeDocuments.mark(event.getDocument());
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package customerservice.repository.mongodb;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.BsonTimestamp;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+
+import customerservice.domain.CustomerChange;
+import customerservice.domain.CustomerChange.Type;
+
+/**
+ * Builds the change marks of the customers and reads the changes back, shared
+ * by the blocking and the reactive change feeds.
+ * <p>
+ * Every write of a customer sets its {@code changedAt} field in the same
+ * operation: an empty BSON timestamp that MongoDB replaces on insert, or
+ * {@code $currentDate} on update. The timestamps are drawn by MongoDB, unique
+ * and increasing, whatever the instance and its clock. A deletion first
+ * inserts a tombstone into the {@code customer_changes} collection, stamped
+ * the same way.
+ * <p>
+ * The feed is the customers and the tombstones in timestamp order. A
+ * customer written again moves to its new timestamp, consumers only see its
+ * last change. A timestamp is drawn before the write is visible, so the
+ * changes are only read once their second is older than {@code settle-ms} on
+ * the clock of MongoDB.
+ */
+final class CustomerChangeDocuments {
+
+	static final String CHANGED_AT = "changedAt";
+
+	static final String TOMBSTONES = "customer_changes";
+
+	/* The date of a tombstone, for the TTL index */
+	static final String AT = "at";
+
+	private static final String CUSTOMER_ID = "customerId";
+
+	private CustomerChangeDocuments() {
+	}
+
+	/**
+	 * Marks a document about to be inserted, MongoDB sets the timestamp.
+	 */
+	static void mark(Document document) {
+		document.put(CHANGED_AT, new BsonTimestamp());
+	}
+
+	/**
+	 * @return The update of the mark of a document being updated
+	 */
+	static Document touch() {
+		return new Document(CHANGED_AT, new Document("$type", "timestamp"));
+	}
+
+	/**
+	 * @return A tombstone of the customer, to insert before deleting it
+	 */
+	static Document tombstone(ObjectId customerId) {
+		final Document tombstone = new Document(CustomerDocuments.ID, ObjectId.get())
+				.append(CUSTOMER_ID, customerId)
+				.append(AT, new Date());
+		mark(tombstone);
+		return tombstone;
+	}
+
+	/**
+	 * @return The filter of the given tombstone, to withdraw it when there was
+	 *         nothing to delete
+	 */
+	static Bson filter(Document tombstone) {
+		return Filters.eq(CustomerDocuments.ID, tombstone.getObjectId(CustomerDocuments.ID));
+	}
+
+	/**
+	 * @return The filter of the changes following the given token, up to the
+	 *         settled ones
+	 */
+	static Bson after(long since, BsonTimestamp settled) {
+		return Filters.and(Filters.gt(CHANGED_AT, new BsonTimestamp(since)), Filters.lt(CHANGED_AT, settled));
+	}
+
+	static Bson ascending() {
+		return Sorts.ascending(CHANGED_AT);
+	}
+
+	static Bson customerProjection() {
+		return Projections.include(CHANGED_AT, CustomerDocuments.VERSION);
+	}
+
+	static Bson tombstoneProjection() {
+		return Projections.include(CHANGED_AT, CUSTOMER_ID);
+	}
+
+	/**
+	 * @param serverTime
+	 *            The time of MongoDB, as reported by {@code isMaster}
+	 * @return The lowest timestamp of the first second whose changes may still
+	 *         be written, the changes below it can be read. MongoDB never
+	 *         draws it, its increment is 0.
+	 */
+	static BsonTimestamp settled(Date serverTime, long settleMillis) {
+		return new BsonTimestamp((int) TimeUnit.MILLISECONDS.toSeconds(serverTime.getTime() - settleMillis), 0);
+	}
+
+	/**
+	 * A customer at version 0 was created, later versions are updates.
+	 */
+	static CustomerChange fromCustomer(Document customer) {
+		final BsonTimestamp changedAt = customer.get(CHANGED_AT, BsonTimestamp.class);
+		final Long version = customer.getLong(CustomerDocuments.VERSION);
+		final Type type = version != null && version == 0L ? Type.CREATED : Type.UPDATED;
+		return CustomerChange.of(changedAt.getValue(), customer.getObjectId(CustomerDocuments.ID), type, version,
+				Instant.ofEpochSecond(changedAt.getTime()));
+	}
+
+	static CustomerChange fromTombstone(Document tombstone) {
+		final BsonTimestamp changedAt = tombstone.get(CHANGED_AT, BsonTimestamp.class);
+		return CustomerChange.of(changedAt.getValue(), tombstone.getObjectId(CUSTOMER_ID), Type.DELETED, null,
+				Instant.ofEpochSecond(changedAt.getTime()));
+	}
+
+	/**
+	 * @return The first changes of both lists, each in token order, up to the
+	 *         limit
+	 */
+	static List<CustomerChange> merge(List<CustomerChange> updates, List<CustomerChange> deletions, int limit) {
+
+		final List<CustomerChange> merged = new ArrayList<>(Math.min(limit, updates.size() + deletions.size()));
+		int u = 0;
+		int d = 0;
+		while (merged.size() < limit && (u < updates.size() || d < deletions.size())) {
+			if (d == deletions.size()
+					|| u < updates.size() && updates.get(u).getToken() < deletions.get(d).getToken()) {
+				merged.add(updates.get(u++));
+			} else {
+				merged.add(deletions.get(d++));
+			}
+		}
+		return merged;
+	}
+}
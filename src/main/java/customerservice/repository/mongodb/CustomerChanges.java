@@ -0,0 +1,111 @@
+package customerservice.repository.mongodb;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.BsonTimestamp;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.stereotype.Component;
+
+import com.mongodb.client.MongoCollection;
+
+import customerservice.domain.Customer;
+import customerservice.domain.CustomerChange;
+
+/**
+ * The changes of the customers, read from the change marks written with the
+ * customers and from the tombstones of the deletions, see
+ * {@link CustomerChangeDocuments}.
+ * <p>
+ * MongoDB removes the tombstones older than {@code retention-hours} through a
+ * TTL index, the tokens older than the retention are expired.
+ */
+@Profile("!reactive")
+@Component
+public class CustomerChanges {
+
+	private final MongoTemplate mongoTemplate;
+
+	private final long retentionMillis;
+
+	private final long settleMillis;
+
+	public CustomerChanges(MongoTemplate mongoTemplate,
+			@Value("${customers.changes.retention-hours:72}") long retentionHours,
+			@Value("${customers.changes.settle-ms:2000}") long settleMillis) {
+		this.mongoTemplate = mongoTemplate;
+		this.retentionMillis = TimeUnit.HOURS.toMillis(retentionHours);
+		this.settleMillis = settleMillis;
+		mongoTemplate.indexOps(CustomerChangeDocuments.TOMBSTONES)
+				.ensureIndex(new Index().on(CustomerChangeDocuments.AT, Direction.ASC)
+						.expire(retentionHours, TimeUnit.HOURS));
+		mongoTemplate.indexOps(CustomerChangeDocuments.TOMBSTONES)
+				.ensureIndex(new Index().on(CustomerChangeDocuments.CHANGED_AT, Direction.ASC));
+	}
+
+	/**
+	 * @param since
+	 *            The token of the last change read
+	 * @return The following changes in token order, up to the ones that may
+	 *         still be preceded by a change being written
+	 */
+	public List<CustomerChange> after(long since, int limit) {
+
+		final Bson filter = CustomerChangeDocuments.after(since, settled());
+
+		final List<CustomerChange> updates = customers().find(filter)
+				.projection(CustomerChangeDocuments.customerProjection())
+				.sort(CustomerChangeDocuments.ascending())
+				.limit(limit)
+				.map(CustomerChangeDocuments::fromCustomer)
+				.into(new ArrayList<>());
+
+		final List<CustomerChange> deletions = tombstones().find(filter)
+				.projection(CustomerChangeDocuments.tombstoneProjection())
+				.sort(CustomerChangeDocuments.ascending())
+				.limit(limit)
+				.map(CustomerChangeDocuments::fromTombstone)
+				.into(new ArrayList<>());
+
+		return CustomerChangeDocuments.merge(updates, deletions, limit);
+	}
+
+	/**
+	 * @return True if changes following the given one may have been removed,
+	 *         it is older than the retention
+	 */
+	public boolean expired(long since) {
+		return TimeUnit.SECONDS.toMillis(new BsonTimestamp(since).getTime()) < System.currentTimeMillis()
+				- retentionMillis;
+	}
+
+	/**
+	 * @return A token following all the changes that can be read, to follow
+	 *         the changes from now
+	 */
+	public long latest() {
+		return settled().getValue();
+	}
+
+	/* Drawn from the clock of MongoDB, the one of the change marks */
+	private BsonTimestamp settled() {
+		final Date serverTime = mongoTemplate.executeCommand(new Document("isMaster", 1)).getDate("localTime");
+		return CustomerChangeDocuments.settled(serverTime, settleMillis);
+	}
+
+	private MongoCollection<Document> customers() {
+		return mongoTemplate.getCollection(mongoTemplate.getCollectionName(Customer.class));
+	}
+
+	private MongoCollection<Document> tombstones() {
+		return mongoTemplate.getCollection(CustomerChangeDocuments.TOMBSTONES);
+	}
+}
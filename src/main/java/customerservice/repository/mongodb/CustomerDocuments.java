@@ -0,0 +1,313 @@
+package customerservice.repository.mongodb;
+
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
+import static java.util.stream.Collectors.toSet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mapping.PropertyHandler;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+
+import customerservice.domain.Customer;
+import customerservice.repository.mongodb.BulkSaveOutcome.Status;
+
+/**
+ * Builds the MongoDB documents and updates of customers, shared by the
+ * blocking and the reactive repositories.
+ */
+final class CustomerDocuments {
+
+	static final String ID = "_id";
+	static final String VERSION = "version";
+
+	/* The number of name grams a customer shares with the searched name */
+	private static final String SCORE = "score";
+
+	/* The customers scored by a name search at most, in index order */
+	static final int NAME_SEARCH_CANDIDATES = 10_000;
+
+	private final MongoConverter converter;
+
+	/* The fields of a customer document, id and version excepted */
+	private final Set<String> fields = new LinkedHashSet<>();
+
+	CustomerDocuments(MongoConverter converter) {
+		this.converter = converter;
+		converter.getMappingContext().getRequiredPersistentEntity(Customer.class)
+				.doWithProperties((PropertyHandler<MongoPersistentProperty>) property -> {
+					if (!property.isIdProperty() && !property.isVersionProperty()) {
+						fields.add(property.getFieldName());
+					}
+				});
+	}
+
+	Document toDocument(Customer customer) {
+		final Document document = new Document();
+		converter.write(customer, document);
+		NameGrams.put(customer, document);
+		return document;
+	}
+
+	/**
+	 * A replacement can't be expressed as a plain document because the version
+	 * has to be incremented, so the fields of the customer are set and the
+	 * missing ones are removed. The change mark is updated with it.
+	 */
+	Bson toReplacement(Customer customer) {
+
+		final Document set = toDocument(customer);
+		set.remove(ID);
+		set.remove(VERSION);
+
+		final Document unset = new Document();
+		for (String field : fields) {
+			if (!set.containsKey(field)) {
+				unset.put(field, "");
+			}
+		}
+
+		final Document update = new Document("$set", set)
+				.append("$inc", new Document(VERSION, 1L))
+				.append("$currentDate", CustomerChangeDocuments.touch());
+		if (!unset.isEmpty()) {
+			update.append("$unset", unset);
+		}
+		return update;
+	}
+
+	/**
+	 * @return A filter on the id and, if not null, the expected version
+	 */
+	static Bson filter(ObjectId id, Long expectedVersion) {
+		return expectedVersion == null ? Filters.eq(ID, id)
+				: Filters.and(Filters.eq(ID, id), Filters.eq(VERSION, expectedVersion));
+	}
+
+	/**
+	 * The first of the two bulk writes of a bulk save: customers without id
+	 * are inserted, the others are inserted if there is none with their id.
+	 * Either way a new customer starts at version 0.
+	 * <p>
+	 * The customers found already stored, reported as updated by
+	 * {@link #outcomes}, are then replaced by the writes of
+	 * {@link #bulkReplacements}: a single upsert can't both start a version at
+	 * 0 and increment it, {@code $inc} on a missing field gives 1.
+	 *
+	 * @param ids
+	 *            Filled with the id of each customer, generated for the new
+	 *            ones so it can be reported back
+	 * @return The write of each customer, in the same order
+	 */
+	List<WriteModel<Document>> bulkWrites(List<Customer> customers, List<ObjectId> ids) {
+
+		final List<WriteModel<Document>> writes = new ArrayList<>(customers.size());
+
+		for (Customer customer : customers) {
+			final Document document = toDocument(customer);
+			document.put(VERSION, 0L);
+			if (customer.getId() == null) {
+				final ObjectId id = ObjectId.get();
+				document.put(ID, id);
+				CustomerChangeDocuments.mark(document);
+				ids.add(id);
+				writes.add(new InsertOneModel<>(document));
+			} else {
+				// The id comes from the filter, the mark of a stored customer is set again by its replacement
+				document.remove(ID);
+				final Document insert = new Document("$setOnInsert", document)
+						.append("$currentDate", CustomerChangeDocuments.touch());
+				ids.add(customer.getId());
+				writes.add(new UpdateOneModel<>(Filters.eq(ID, customer.getId()), insert,
+						new UpdateOptions().upsert(true)));
+			}
+		}
+
+		return writes;
+	}
+
+	/**
+	 * @return The indexes of the customers found stored by the first bulk
+	 *         write, to replace
+	 */
+	static List<Integer> stored(List<BulkSaveOutcome> outcomes) {
+		final List<Integer> stored = new ArrayList<>();
+		for (int i = 0; i < outcomes.size(); i++) {
+			if (outcomes.get(i).getStatus() == Status.UPDATED) {
+				stored.add(i);
+			}
+		}
+		return stored;
+	}
+
+	/**
+	 * @return The replacements of the given stored customers, in the same
+	 *         order. A customer deleted in the meantime is inserted again.
+	 */
+	List<WriteModel<Document>> bulkReplacements(List<Customer> customers, List<Integer> stored) {
+		final List<WriteModel<Document>> writes = new ArrayList<>(stored.size());
+		for (int i : stored) {
+			final Customer customer = customers.get(i);
+			writes.add(new UpdateOneModel<>(Filters.eq(ID, customer.getId()), toReplacement(customer),
+					new UpdateOptions().upsert(true)));
+		}
+		return writes;
+	}
+
+	/**
+	 * Reports the failed replacements in the outcomes of the bulk save.
+	 *
+	 * @return The outcomes, updated
+	 */
+	static List<BulkSaveOutcome> failedReplacements(List<BulkSaveOutcome> outcomes, List<Integer> stored,
+			List<BulkWriteError> errors) {
+		for (BulkWriteError error : errors) {
+			final int i = stored.get(error.getIndex());
+			outcomes.set(i, failure(outcomes.get(i).getId(), error));
+		}
+		return outcomes;
+	}
+
+	/**
+	 * @return The outcome of each write of the first unordered bulk write, see
+	 *         {@link #bulkWrites}
+	 */
+	static List<BulkSaveOutcome> outcomes(List<ObjectId> ids, List<WriteModel<Document>> writes,
+			BulkWriteResult result, List<BulkWriteError> errors) {
+
+		final Set<Integer> upserted = result.getUpserts().stream().map(BulkWriteUpsert::getIndex).collect(toSet());
+		final Map<Integer, BulkWriteError> failed = errors.stream()
+				.collect(toMap(BulkWriteError::getIndex, Function.identity()));
+
+		final List<BulkSaveOutcome> outcomes = new ArrayList<>(ids.size());
+		for (int i = 0; i < ids.size(); i++) {
+			final BulkWriteError error = failed.get(i);
+			if (error != null) {
+				outcomes.add(failure(ids.get(i), error));
+			} else if (writes.get(i) instanceof InsertOneModel || upserted.contains(i)) {
+				outcomes.add(new BulkSaveOutcome(ids.get(i), Status.CREATED, null));
+			} else {
+				outcomes.add(new BulkSaveOutcome(ids.get(i), Status.UPDATED, null));
+			}
+		}
+
+		return outcomes;
+	}
+
+	private static BulkSaveOutcome failure(ObjectId id, BulkWriteError error) {
+		final Status status = ErrorCategory.fromErrorCode(error.getCode()) == ErrorCategory.DUPLICATE_KEY
+				? Status.DUPLICATE : Status.FAILED;
+		return new BulkSaveOutcome(id, status, error.getMessage());
+	}
+
+	/**
+	 * @return The query of a customer, see
+	 *         {@link CustomerRepositoryCustom#findById(ObjectId, Collection)}
+	 */
+	static Query byIdQuery(ObjectId id, Collection<String> fields) {
+		return project(Query.query(Criteria.where("id").is(id)), fields);
+	}
+
+	/**
+	 * The customers sharing at least half of the grams of the name are
+	 * matched, the ones sharing the most first.
+	 * <p>
+	 * The candidates are read from the index by the grams without padding
+	 * only: a padded gram such as {@code "  k"} is shared by all the names
+	 * starting with the same letter. A name without such gram matches
+	 * nothing, and no more than {@link #NAME_SEARCH_CANDIDATES} are scored.
+	 *
+	 * @return The aggregation of a name search, see
+	 *         {@link CustomerRepositoryCustom#nameSearch(String, int)}
+	 */
+	static Aggregation nameSearchAggregation(String name, int limit) {
+
+		final List<String> grams = new ArrayList<>(NameGrams.of(name));
+		final List<String> selective = grams.stream().filter(gram -> !NameGrams.padded(gram))
+				.collect(toList());
+		final int minScore = (grams.size() + 1) / 2;
+
+		return Aggregation.newAggregation(
+				stage("$match", new Document(NameGrams.FIELD, new Document("$in", selective))),
+				stage("$limit", NAME_SEARCH_CANDIDATES),
+				stage("$addFields", new Document(SCORE,
+						new Document("$size", new Document("$setIntersection", asList("$" + NameGrams.FIELD, grams))))),
+				stage("$match", new Document(SCORE, new Document("$gte", minScore))),
+				stage("$sort", new Document(SCORE, -1).append(ID, 1)),
+				stage("$limit", limit));
+	}
+
+	/**
+	 * @return The query of a search, see
+	 *         {@link CustomerRepositoryCustom#search(CustomerSearch, Collection, ObjectId, int)}
+	 */
+	static Query searchQuery(CustomerSearch search, Collection<String> fields, ObjectId after, int limit) {
+
+		final Query query = new Query();
+		addIfSet(query, "email", search.getEmail());
+		addIfSet(query, "lastName", search.getLastName());
+		addIfSet(query, "customerType", search.getCustomerType());
+		addIfSet(query, "address.country", search.getCountry());
+		addIfSet(query, "address.city", search.getCity());
+
+		if (search.getBornAfter() != null || search.getBornBefore() != null) {
+			final Criteria birthDate = Criteria.where("birthDate");
+			if (search.getBornAfter() != null) {
+				birthDate.gte(search.getBornAfter());
+			}
+			if (search.getBornBefore() != null) {
+				birthDate.lte(search.getBornBefore());
+			}
+			query.addCriteria(birthDate);
+		}
+
+		if (after != null) {
+			query.addCriteria(Criteria.where("id").gt(after));
+		}
+
+		return project(query, fields).with(Sort.by("id")).limit(limit);
+	}
+
+	/* MongoDB always returns the id, the projected customers have no version */
+	private static Query project(Query query, Collection<String> fields) {
+		fields.forEach(query.fields()::include);
+		return query;
+	}
+
+	/* Spring Data has no $addFields, all the stages are written as they are sent */
+	private static AggregationOperation stage(String operator, Object value) {
+		return context -> new Document(operator, value);
+	}
+
+	private static void addIfSet(Query query, String key, Object value) {
+		if (value != null) {
+			query.addCriteria(Criteria.where(key).is(value));
+		}
+	}
+}
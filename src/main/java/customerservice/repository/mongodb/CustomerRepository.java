@@ -1,10 +1,53 @@
 package customerservice.repository.mongodb;
 
+import java.util.List;
+import java.util.Optional;
+
 import org.bson.types.ObjectId;
-import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.MongoRepository;
 
 import customerservice.domain.Customer;
+import customerservice.domain.enums.CustomerType;
+
+public interface CustomerRepository extends MongoRepository<Customer, ObjectId>, CustomerRepositoryCustom {
+
+	/**
+	 * Returns the first page of customers ordered by id.
+	 * <p>
+	 * Only the page offset of zero is meaningful, use
+	 * {@link #findByIdGreaterThanOrderByIdAsc(ObjectId, Pageable)} to fetch the
+	 * following pages.
+	 *
+	 * @param pageable
+	 *            The page size
+	 * @return The customers of the first page
+	 */
+	List<Customer> findAllByOrderByIdAsc(Pageable pageable);
+
+	/**
+	 * Returns the page of customers following the customer with the given id
+	 * (keyset pagination), the cost of the query does not depend on how deep
+	 * the page is.
+	 *
+	 * @param after
+	 *            The id of the last customer of the previous page
+	 * @param pageable
+	 *            The page size
+	 * @return The customers of the page
+	 */
+	List<Customer> findByIdGreaterThanOrderByIdAsc(ObjectId after, Pageable pageable);
+
+	/*
+	 * The queries below are backed by the indexes declared on Customer,
+	 * CustomerRepositoryTest checks that none of them scans the collection.
+	 */
+
+	Optional<Customer> findByEmail(String email);
+
+	List<Customer> findByLastNameAndFirstName(String lastName, String firstName);
 
-public interface CustomerRepository extends CrudRepository<Customer, ObjectId> {
+	List<Customer> findByAddressCountryAndAddressCity(String country, String city);
 
+	List<Customer> findByCustomerType(CustomerType customerType, Pageable pageable);
 }
@@ -0,0 +1,125 @@
+package customerservice.repository.mongodb;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import org.bson.types.ObjectId;
+import org.springframework.data.util.CloseableIterator;
+
+import customerservice.domain.Customer;
+
+/**
+ * Repository operations implemented directly on top of {@code MongoTemplate}.
+ */
+public interface CustomerRepositoryCustom {
+
+	/**
+	 * Iterates over all customers in id order through a MongoDB cursor, only the
+	 * current batch of documents is held in memory.
+	 * <p>
+	 * The caller must close the iterator to release the cursor.
+	 *
+	 * @return An iterator over all customers
+	 */
+	CloseableIterator<Customer> streamAll();
+
+	/**
+	 * Returns the customer with the given id, reading only the given fields
+	 * and its id from MongoDB. The other fields of the returned customer are
+	 * null, its version included.
+	 *
+	 * @param id
+	 *            The id of the customer
+	 * @param fields
+	 *            The document fields to return, all of them if empty
+	 * @return The customer or empty if not found
+	 */
+	Optional<Customer> findById(ObjectId id, Collection<String> fields);
+
+	/**
+	 * Returns the customers matching the search in id order, one page at a
+	 * time like {@link CustomerRepository#findByIdGreaterThanOrderByIdAsc}.
+	 * <p>
+	 * Only the given fields are read from MongoDB, the other fields of the
+	 * returned customers are null.
+	 *
+	 * @param search
+	 *            The criteria the customers must match
+	 * @param fields
+	 *            The document fields to return, all of them if empty
+	 * @param after
+	 *            The id of the last customer of the previous page, null for
+	 *            the first page
+	 * @param limit
+	 *            The maximum number of customers to return
+	 * @return The matching customers
+	 */
+	List<Customer> search(CustomerSearch search, Collection<String> fields, ObjectId after, int limit);
+
+	/**
+	 * Searches the first and last names of the customers by their trigrams, a
+	 * customer matches if its names share at least half of the grams of the
+	 * given name: a prefix or a misspelled name matches. The words of less
+	 * than 3 characters alone match nothing, they are shared by too many
+	 * customers.
+	 *
+	 * @param name
+	 *            The name, or part of the name, to search for
+	 * @param limit
+	 *            The maximum number of customers to return
+	 * @return The matching customers, best match first
+	 */
+	List<Customer> nameSearch(String name, int limit);
+
+	/**
+	 * Saves all the given customers with a single unordered bulk write.
+	 * <p>
+	 * Customers without id are inserted with a newly generated id, the others
+	 * replace the stored customer with the same id, incrementing its version,
+	 * or are inserted if there is none. Inserted customers start at version 0.
+	 * A failure on one customer does not prevent the others from being saved.
+	 *
+	 * @param customers
+	 *            The customers to save
+	 * @return The outcome of each save, in the order of the given customers
+	 */
+	List<BulkSaveOutcome> bulkSave(List<Customer> customers);
+
+	/**
+	 * Replaces the customer with the given id in a single operation and
+	 * increments its version, nothing is written if there is no such customer
+	 * or if its version is not the expected one.
+	 * <p>
+	 * The id and the version of the replacement are ignored.
+	 *
+	 * @param id
+	 *            The id of the customer to replace
+	 * @param replacement
+	 *            The new version of the customer
+	 * @param expectedVersion
+	 *            The version the stored customer must have, null to replace
+	 *            whatever version is stored
+	 * @return The new version of the customer or empty if nothing was replaced
+	 * @throws org.springframework.dao.DuplicateKeyException
+	 *             If the replacement conflicts with another customer
+	 */
+	Optional<Long> replace(ObjectId id, Customer replacement, Long expectedVersion);
+
+	/**
+	 * Deletes the customer with the given id, only if it has the expected
+	 * version when one is given.
+	 * <p>
+	 * A tombstone is written to the change feed before the customer is
+	 * deleted, a deletion is never missed by the consumers of the feed. It is
+	 * withdrawn when nothing was deleted.
+	 *
+	 * @param id
+	 *            The id of the customer to delete
+	 * @param expectedVersion
+	 *            The version the stored customer must have, null to delete
+	 *            whatever version is stored
+	 * @return true if the customer was deleted
+	 */
+	boolean delete(ObjectId id, Long expectedVersion);
+}
@@ -0,0 +1,138 @@
+package customerservice.repository.mongodb;
+
+import static customerservice.repository.mongodb.CustomerDocuments.VERSION;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.WriteModel;
+
+import customerservice.domain.Customer;
+
+/**
+ * Picked up by Spring Data as the implementation of
+ * {@link CustomerRepositoryCustom} because of its name.
+ */
+class CustomerRepositoryImpl implements CustomerRepositoryCustom {
+
+	private final MongoTemplate mongoTemplate;
+
+	private final CustomerDocuments documents;
+
+	CustomerRepositoryImpl(MongoTemplate mongoTemplate) {
+		this.mongoTemplate = mongoTemplate;
+		this.documents = new CustomerDocuments(mongoTemplate.getConverter());
+	}
+
+	@Override
+	public CloseableIterator<Customer> streamAll() {
+		return mongoTemplate.stream(new Query().with(Sort.by("id")), Customer.class);
+	}
+
+	@Override
+	public Optional<Customer> findById(ObjectId id, Collection<String> fields) {
+		return Optional.ofNullable(mongoTemplate.findOne(CustomerDocuments.byIdQuery(id, fields), Customer.class));
+	}
+
+	@Override
+	public List<Customer> search(CustomerSearch search, Collection<String> fields, ObjectId after, int limit) {
+		return mongoTemplate.find(CustomerDocuments.searchQuery(search, fields, after, limit), Customer.class);
+	}
+
+	@Override
+	public List<Customer> nameSearch(String name, int limit) {
+		return mongoTemplate.aggregate(CustomerDocuments.nameSearchAggregation(name, limit),
+				mongoTemplate.getCollectionName(Customer.class), Customer.class).getMappedResults();
+	}
+
+	@Override
+	public List<BulkSaveOutcome> bulkSave(List<Customer> customers) {
+
+		final List<ObjectId> ids = new ArrayList<>(customers.size());
+		final List<WriteModel<Document>> writes = documents.bulkWrites(customers, ids);
+
+		BulkWriteResult result;
+		List<BulkWriteError> errors = Collections.emptyList();
+		try {
+			result = collection().bulkWrite(writes, new BulkWriteOptions().ordered(false));
+		} catch (MongoBulkWriteException e) {
+			result = e.getWriteResult();
+			errors = e.getWriteErrors();
+		}
+
+		final List<BulkSaveOutcome> outcomes = CustomerDocuments.outcomes(ids, writes, result, errors);
+		final List<Integer> stored = CustomerDocuments.stored(outcomes);
+		if (!stored.isEmpty()) {
+			try {
+				collection().bulkWrite(documents.bulkReplacements(customers, stored),
+						new BulkWriteOptions().ordered(false));
+			} catch (MongoBulkWriteException e) {
+				CustomerDocuments.failedReplacements(outcomes, stored, e.getWriteErrors());
+			}
+		}
+
+		return outcomes;
+	}
+
+	@Override
+	public Optional<Long> replace(ObjectId id, Customer replacement, Long expectedVersion) {
+
+		final Bson filter = CustomerDocuments.filter(id, expectedVersion);
+		final Bson update = documents.toReplacement(replacement);
+		final FindOneAndUpdateOptions options = new FindOneAndUpdateOptions()
+				.returnDocument(ReturnDocument.AFTER)
+				.projection(Projections.include(VERSION));
+
+		// Executed through the template so driver exceptions are translated
+		final Document replaced = mongoTemplate.execute(Customer.class,
+				collection -> collection.findOneAndUpdate(filter, update, options));
+		return Optional.ofNullable(replaced).map(document -> document.getLong(VERSION));
+	}
+
+	@Override
+	public boolean delete(ObjectId id, Long expectedVersion) {
+
+		final Bson filter = CustomerDocuments.filter(id, expectedVersion);
+		final Document tombstone = CustomerChangeDocuments.tombstone(id);
+		mongoTemplate.execute(CustomerChangeDocuments.TOMBSTONES, tombstones -> {
+			tombstones.insertOne(tombstone);
+			return null;
+		});
+
+		final boolean deleted = mongoTemplate.execute(Customer.class,
+				collection -> collection.deleteOne(filter).getDeletedCount() > 0);
+
+		if (!deleted) {
+			// Withdrawn long before it settles, the feed never reads it
+			mongoTemplate.execute(CustomerChangeDocuments.TOMBSTONES, tombstones -> {
+				tombstones.deleteOne(CustomerChangeDocuments.filter(tombstone));
+				return null;
+			});
+		}
+
+		return deleted;
+	}
+
+	private MongoCollection<Document> collection() {
+		return mongoTemplate.getCollection(mongoTemplate.getCollectionName(Customer.class));
+	}
+}
@@ -0,0 +1,120 @@
+package customerservice.repository.mongodb;
+
+import java.time.LocalDate;
+
+import customerservice.domain.enums.CustomerType;
+
+/**
+ * The criteria of a customer search, all of them are optional and the ones
+ * that are set must all match.
+ * <p>
+ * Use {@code CustomerSearch.builder()} to create a search, example:<br>
+ * {@code CustomerSearch.builder().withLastName("Masters").withCountry("Shadaloo").build();}
+ */
+public final class CustomerSearch {
+
+	private final String email;
+	private final String lastName;
+	private final CustomerType customerType;
+	private final String country;
+	private final String city;
+	private final LocalDate bornAfter;
+	private final LocalDate bornBefore;
+
+	private CustomerSearch(Builder builder) {
+		this.email = builder.email;
+		this.lastName = builder.lastName;
+		this.customerType = builder.customerType;
+		this.country = builder.country;
+		this.city = builder.city;
+		this.bornAfter = builder.bornAfter;
+		this.bornBefore = builder.bornBefore;
+	}
+
+	static public Builder builder() {
+		return new Builder();
+	}
+
+	public String getEmail() {
+		return email;
+	}
+
+	public String getLastName() {
+		return lastName;
+	}
+
+	public CustomerType getCustomerType() {
+		return customerType;
+	}
+
+	public String getCountry() {
+		return country;
+	}
+
+	public String getCity() {
+		return city;
+	}
+
+	/**
+	 * @return The first birth date searched for, inclusive
+	 */
+	public LocalDate getBornAfter() {
+		return bornAfter;
+	}
+
+	/**
+	 * @return The last birth date searched for, inclusive
+	 */
+	public LocalDate getBornBefore() {
+		return bornBefore;
+	}
+
+	static public final class Builder {
+
+		private String email;
+		private String lastName;
+		private CustomerType customerType;
+		private String country;
+		private String city;
+		private LocalDate bornAfter;
+		private LocalDate bornBefore;
+
+		private Builder() {
+		}
+
+		public Builder withEmail(String email) {
+			this.email = email;
+			return this;
+		}
+
+		public Builder withLastName(String lastName) {
+			this.lastName = lastName;
+			return this;
+		}
+
+		public Builder withCustomerType(CustomerType customerType) {
+			this.customerType = customerType;
+			return this;
+		}
+
+		public Builder withCountry(String country) {
+			this.country = country;
+			return this;
+		}
+
+		public Builder withCity(String city) {
+			this.city = city;
+			return this;
+		}
+
+		public Builder withBirthDateBetween(LocalDate bornAfter, LocalDate bornBefore) {
+			this.bornAfter = bornAfter;
+			this.bornBefore = bornBefore;
+			return this;
+		}
+
+		public CustomerSearch build() {
+			return new CustomerSearch(this);
+		}
+	}
+}
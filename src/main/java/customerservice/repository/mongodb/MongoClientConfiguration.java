@@ -0,0 +1,42 @@
+package customerservice.repository.mongodb;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.mongodb.MongoClientOptions;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.opentelemetry.api.trace.Tracer;
+
+/**
+ * Sizes the connection pool of the blocking MongoDB client.
+ * <p>
+ * A request needing MongoDB while all the connections are busy waits for one,
+ * up to {@code connections-per-host * threads-allowed-to-block-multiplier}
+ * requests can wait, the following ones fail right away.
+ * <p>
+ * The commands are timed, the pool is gauged and the commands are traced, see
+ * {@link MongoCommandTimers}, {@link MongoPoolGauges} and
+ * {@link MongoCommandSpans}.
+ */
+@Configuration
+public class MongoClientConfiguration {
+
+	@Bean
+	public MongoClientOptions mongoClientOptions(
+			@Value("${customers.mongodb.connections-per-host:100}") int connectionsPerHost,
+			@Value("${customers.mongodb.threads-allowed-to-block-multiplier:5}") int threadsAllowedToBlockMultiplier,
+			@Value("${customers.mongodb.max-wait-time-ms:120000}") int maxWaitTime,
+			MeterRegistry registry, Tracer tracer) {
+
+		return MongoClientOptions.builder()
+				.connectionsPerHost(connectionsPerHost)
+				.threadsAllowedToBlockForConnectionMultiplier(threadsAllowedToBlockMultiplier)
+				.maxWaitTime(maxWaitTime)
+				.addCommandListener(new MongoCommandTimers(registry))
+				.addCommandListener(new MongoCommandSpans(tracer))
+				.addConnectionPoolListener(new MongoPoolGauges(registry))
+				.build();
+	}
+}
@@ -0,0 +1,64 @@
+package customerservice.repository.mongodb;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+
+/**
+ * Traces the commands sent by the MongoDB driver, one client span per
+ * command, child of the span current when the command is sent.
+ * <p>
+ * The blocking driver notifies the listeners on the thread sending the
+ * command, the span of a command is kept by request id until its reply.
+ */
+class MongoCommandSpans implements CommandListener {
+
+	private final Tracer tracer;
+	private final ConcurrentMap<Integer, Span> spans = new ConcurrentHashMap<>();
+
+	MongoCommandSpans(Tracer tracer) {
+		this.tracer = tracer;
+	}
+
+	@Override
+	public void commandStarted(CommandStartedEvent event) {
+
+		final Span span = tracer.spanBuilder("mongodb." + event.getCommandName())
+				.setSpanKind(SpanKind.CLIENT)
+				.setAttribute("db.system", "mongodb")
+				.setAttribute("db.name", event.getDatabaseName())
+				.setAttribute("db.operation", event.getCommandName())
+				.startSpan();
+
+		if (span.isRecording()) {
+			spans.put(event.getRequestId(), span);
+		}
+	}
+
+	@Override
+	public void commandSucceeded(CommandSucceededEvent event) {
+		final Span span = spans.remove(event.getRequestId());
+		if (span != null) {
+			span.end();
+		}
+	}
+
+	@Override
+	public void commandFailed(CommandFailedEvent event) {
+		final Span span = spans.remove(event.getRequestId());
+		if (span != null) {
+			span.recordException(event.getThrowable());
+			span.setStatus(StatusCode.ERROR);
+			span.end();
+		}
+	}
+}
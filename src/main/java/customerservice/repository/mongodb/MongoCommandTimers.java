@@ -0,0 +1,55 @@
+package customerservice.repository.mongodb;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Times the commands sent by the MongoDB driver, one
+ * {@code customers.mongodb.commands} timer per command name and outcome.
+ * <p>
+ * The driver measures the elapsed time itself, a timer is registered the
+ * first time a command is seen then only looked up.
+ */
+class MongoCommandTimers implements CommandListener {
+
+	private final MeterRegistry registry;
+	private final ConcurrentMap<String, Timer> succeeded = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, Timer> failed = new ConcurrentHashMap<>();
+
+	MongoCommandTimers(MeterRegistry registry) {
+		this.registry = registry;
+	}
+
+	@Override
+	public void commandStarted(CommandStartedEvent event) {
+	}
+
+	@Override
+	public void commandSucceeded(CommandSucceededEvent event) {
+		succeeded.computeIfAbsent(event.getCommandName(), command -> timer(command, "success"))
+				.record(event.getElapsedTime(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public void commandFailed(CommandFailedEvent event) {
+		failed.computeIfAbsent(event.getCommandName(), command -> timer(command, "failure"))
+				.record(event.getElapsedTime(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+	}
+
+	private Timer timer(String command, String status) {
+		return Timer.builder("customers.mongodb.commands")
+				.tag("command", command)
+				.tag("status", status)
+				.publishPercentileHistogram()
+				.register(registry);
+	}
+}
@@ -0,0 +1,61 @@
+package customerservice.repository.mongodb;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.mongodb.event.ConnectionAddedEvent;
+import com.mongodb.event.ConnectionCheckedInEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionPoolListenerAdapter;
+import com.mongodb.event.ConnectionPoolWaitQueueEnteredEvent;
+import com.mongodb.event.ConnectionPoolWaitQueueExitedEvent;
+import com.mongodb.event.ConnectionRemovedEvent;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Gauges of the connection pool of the blocking MongoDB client, summed over
+ * the servers: open connections, connections in use and threads waiting for
+ * a connection.
+ */
+class MongoPoolGauges extends ConnectionPoolListenerAdapter {
+
+	private final AtomicInteger size;
+	private final AtomicInteger checkedOut;
+	private final AtomicInteger waiting;
+
+	MongoPoolGauges(MeterRegistry registry) {
+		this.size = registry.gauge("customers.mongodb.pool.size", new AtomicInteger());
+		this.checkedOut = registry.gauge("customers.mongodb.pool.active", new AtomicInteger());
+		this.waiting = registry.gauge("customers.mongodb.pool.waiting", new AtomicInteger());
+	}
+
+	@Override
+	public void connectionAdded(ConnectionAddedEvent event) {
+		size.incrementAndGet();
+	}
+
+	@Override
+	public void connectionRemoved(ConnectionRemovedEvent event) {
+		size.decrementAndGet();
+	}
+
+	@Override
+	public void connectionCheckedOut(ConnectionCheckedOutEvent event) {
+		checkedOut.incrementAndGet();
+	}
+
+	@Override
+	public void connectionCheckedIn(ConnectionCheckedInEvent event) {
+		checkedOut.decrementAndGet();
+	}
+
+	@Override
+	public void waitQueueEntered(ConnectionPoolWaitQueueEnteredEvent event) {
+		waiting.incrementAndGet();
+	}
+
+	@Override
+	public void waitQueueExited(ConnectionPoolWaitQueueExitedEvent event) {
+		waiting.decrementAndGet();
+	}
+}
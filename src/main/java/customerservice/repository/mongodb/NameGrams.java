@@ -0,0 +1,89 @@
+package customerservice.repository.mongodb;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.bson.Document;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.BeforeSaveEvent;
+import org.springframework.stereotype.Component;
+
+import customerservice.domain.Customer;
+
+/**
+ * Keeps the trigrams of the names of each customer in its document, so that
+ * partial and misspelled names are searched with an index.
+ * <p>
+ * Each word of the first and last names is lower cased, stripped of its
+ * accents and padded with two leading spaces: {@code Ken} gives
+ * {@code "  k"}, {@code " ke"} and {@code "ken"}. The leading grams make any
+ * prefix of a word match, a misspelled name still shares most of its grams
+ * with the right one.
+ * <p>
+ * The grams are added to the documents saved by the templates, blocking and
+ * reactive, and to the replacements and bulk writes of
+ * {@link CustomerDocuments}. The customers written before get theirs from
+ * {@link NameGramsBackfill} when the service starts.
+ */
+@Component
+class NameGrams extends AbstractMongoEventListener<Customer> {
+
+	static final String FIELD = "nameGrams";
+
+	private static final int SIZE = 3;
+
+	private static final String PADDING = "  ";
+
+	private static final Pattern ACCENTS = Pattern.compile("\\p{M}+");
+
+	private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+	@Override
+	public void onBeforeSave(BeforeSaveEvent<Customer> event) {
+		if (event.getDocument() != null) {
+			put(event.getSource(), event.getDocument());
+		}
+	}
+
+	/**
+	 * @return True if the gram starts with padding, it tells little more than
+	 *         the first letters of a word
+	 */
+	static boolean padded(String gram) {
+		return gram.startsWith(" ");
+	}
+
+	static void put(Customer customer, Document document) {
+		document.put(FIELD, new ArrayList<>(of(customer.getFirstName(), customer.getLastName())));
+	}
+
+	/**
+	 * @return The distinct grams of the words of the given names, the null
+	 *         names are skipped
+	 */
+	static Set<String> of(String... names) {
+
+		final Set<String> grams = new LinkedHashSet<>();
+		for (String name : names) {
+			if (name == null) {
+				continue;
+			}
+			final String normalized = ACCENTS.matcher(Normalizer.normalize(name, Normalizer.Form.NFD)).replaceAll("")
+					.toLowerCase(Locale.ROOT);
+			for (String word : SEPARATORS.split(normalized)) {
+				if (word.isEmpty()) {
+					continue;
+				}
+				final String padded = PADDING + word;
+				for (int i = 0; i + SIZE <= padded.length(); i++) {
+					grams.add(padded.substring(i, i + SIZE));
+				}
+			}
+		}
+		return grams;
+	}
+}
@@ -0,0 +1,90 @@
+package customerservice.repository.mongodb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+
+import customerservice.domain.Customer;
+
+/**
+ * Adds the name grams to the customers written before they existed, once the
+ * service is started, so that every customer can be found by its name.
+ * <p>
+ * Only the customers without grams are read and updated, a customer saved in
+ * the meantime keeps the grams of its save. Several instances can run it at
+ * once, it is not a change of the customers and their change marks are left
+ * alone.
+ */
+@Component
+class NameGramsBackfill {
+
+	private static final int BATCH_SIZE = 1000;
+
+	private static final String FIRST_NAME = "firstName";
+
+	private static final String LAST_NAME = "lastName";
+
+	private final MongoTemplate mongoTemplate;
+
+	NameGramsBackfill(MongoTemplate mongoTemplate) {
+		this.mongoTemplate = mongoTemplate;
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void onReady() {
+		backfill();
+	}
+
+	/**
+	 * @return The number of customers given their grams
+	 */
+	long backfill() {
+
+		final MongoCollection<Document> customers = mongoTemplate
+				.getCollection(mongoTemplate.getCollectionName(Customer.class));
+		final Bson missing = Filters.exists(NameGrams.FIELD, false);
+		final List<WriteModel<Document>> writes = new ArrayList<>(BATCH_SIZE);
+		long count = 0;
+
+		try (MongoCursor<Document> cursor = customers.find(missing)
+				.projection(Projections.include(FIRST_NAME, LAST_NAME))
+				.batchSize(BATCH_SIZE)
+				.iterator()) {
+
+			while (cursor.hasNext()) {
+				final Document customer = cursor.next();
+				final List<String> grams = new ArrayList<>(
+						NameGrams.of(customer.getString(FIRST_NAME), customer.getString(LAST_NAME)));
+				writes.add(new UpdateOneModel<>(
+						Filters.and(Filters.eq(CustomerDocuments.ID, customer.get(CustomerDocuments.ID)), missing),
+						Updates.set(NameGrams.FIELD, grams)));
+				if (writes.size() == BATCH_SIZE) {
+					count += write(customers, writes);
+				}
+			}
+		}
+
+		return writes.isEmpty() ? count : count + write(customers, writes);
+	}
+
+	private static int write(MongoCollection<Document> customers, List<WriteModel<Document>> writes) {
+		final int modified = customers.bulkWrite(writes, new BulkWriteOptions().ordered(false)).getModifiedCount();
+		writes.clear();
+		return modified;
+	}
+}
@@ -0,0 +1,96 @@
+package customerservice.repository.mongodb;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.BsonTimestamp;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.stereotype.Component;
+
+import customerservice.domain.Customer;
+import customerservice.domain.CustomerChange;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non blocking counterpart of {@link CustomerChanges}, the changes are read
+ * from the same change marks and tombstones.
+ */
+@Profile("reactive")
+@Component
+public class ReactiveCustomerChanges {
+
+	private final ReactiveMongoTemplate mongoTemplate;
+
+	private final long retentionMillis;
+
+	private final long settleMillis;
+
+	public ReactiveCustomerChanges(ReactiveMongoTemplate mongoTemplate,
+			@Value("${customers.changes.retention-hours:72}") long retentionHours,
+			@Value("${customers.changes.settle-ms:2000}") long settleMillis) {
+		this.mongoTemplate = mongoTemplate;
+		this.retentionMillis = TimeUnit.HOURS.toMillis(retentionHours);
+		this.settleMillis = settleMillis;
+		// Once at startup, before the first request
+		mongoTemplate.indexOps(CustomerChangeDocuments.TOMBSTONES)
+				.ensureIndex(new Index().on(CustomerChangeDocuments.AT, Direction.ASC)
+						.expire(retentionHours, TimeUnit.HOURS))
+				.then(mongoTemplate.indexOps(CustomerChangeDocuments.TOMBSTONES)
+						.ensureIndex(new Index().on(CustomerChangeDocuments.CHANGED_AT, Direction.ASC)))
+				.block();
+	}
+
+	/**
+	 * @see CustomerChanges#after(long, int)
+	 */
+	public Mono<List<CustomerChange>> after(long since, int limit) {
+
+		return settled().flatMap(settled -> {
+
+			final Mono<List<CustomerChange>> updates = mongoTemplate
+					.execute(Customer.class, collection -> collection
+							.find(CustomerChangeDocuments.after(since, settled))
+							.projection(CustomerChangeDocuments.customerProjection())
+							.sort(CustomerChangeDocuments.ascending())
+							.limit(limit))
+					.map(CustomerChangeDocuments::fromCustomer)
+					.collectList();
+
+			final Mono<List<CustomerChange>> deletions = mongoTemplate
+					.execute(CustomerChangeDocuments.TOMBSTONES, collection -> collection
+							.find(CustomerChangeDocuments.after(since, settled))
+							.projection(CustomerChangeDocuments.tombstoneProjection())
+							.sort(CustomerChangeDocuments.ascending())
+							.limit(limit))
+					.map(CustomerChangeDocuments::fromTombstone)
+					.collectList();
+
+			return Mono.zip(updates, deletions, (u, d) -> CustomerChangeDocuments.merge(u, d, limit));
+		});
+	}
+
+	/**
+	 * @see CustomerChanges#expired(long)
+	 */
+	public boolean expired(long since) {
+		return TimeUnit.SECONDS.toMillis(new BsonTimestamp(since).getTime()) < System.currentTimeMillis()
+				- retentionMillis;
+	}
+
+	/**
+	 * @see CustomerChanges#latest()
+	 */
+	public Mono<Long> latest() {
+		return settled().map(BsonTimestamp::getValue);
+	}
+
+	private Mono<BsonTimestamp> settled() {
+		return mongoTemplate.executeCommand(new Document("isMaster", 1))
+				.map(isMaster -> CustomerChangeDocuments.settled(isMaster.getDate("localTime"), settleMillis));
+	}
+}
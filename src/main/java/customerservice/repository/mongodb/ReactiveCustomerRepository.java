@@ -0,0 +1,26 @@
+package customerservice.repository.mongodb;
+
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+
+import customerservice.domain.Customer;
+import reactor.core.publisher.Flux;
+
+/**
+ * Non blocking counterpart of {@link CustomerRepository} backed by the
+ * reactive streams MongoDB driver, used by the {@code reactive} profile.
+ */
+public interface ReactiveCustomerRepository
+		extends ReactiveMongoRepository<Customer, ObjectId>, ReactiveCustomerRepositoryCustom {
+
+	/**
+	 * @see CustomerRepository#findAllByOrderByIdAsc(Pageable)
+	 */
+	Flux<Customer> findAllByOrderByIdAsc(Pageable pageable);
+
+	/**
+	 * @see CustomerRepository#findByIdGreaterThanOrderByIdAsc(ObjectId, Pageable)
+	 */
+	Flux<Customer> findByIdGreaterThanOrderByIdAsc(ObjectId after, Pageable pageable);
+}
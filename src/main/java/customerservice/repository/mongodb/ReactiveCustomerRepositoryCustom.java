@@ -0,0 +1,98 @@
+package customerservice.repository.mongodb;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.bson.types.ObjectId;
+
+import customerservice.domain.Customer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non blocking counterpart of {@link CustomerRepositoryCustom}, implemented
+ * on top of {@code ReactiveMongoTemplate}.
+ */
+public interface ReactiveCustomerRepositoryCustom {
+
+	/**
+	 * Returns the customer with the given id, see
+	 * {@link CustomerRepositoryCustom#findById(ObjectId, Collection)}.
+	 *
+	 * @param id
+	 *            The id of the customer
+	 * @param fields
+	 *            The document fields to return, all of them if empty
+	 * @return The customer or empty if not found
+	 */
+	Mono<Customer> findById(ObjectId id, Collection<String> fields);
+
+	/**
+	 * Returns the customers matching the search, see
+	 * {@link CustomerRepositoryCustom#search(CustomerSearch, Collection, ObjectId, int)}.
+	 *
+	 * @param search
+	 *            The criteria the customers must match
+	 * @param fields
+	 *            The document fields to return, all of them if empty
+	 * @param after
+	 *            The id of the last customer of the previous page, null for
+	 *            the first page
+	 * @param limit
+	 *            The maximum number of customers to return
+	 * @return The matching customers
+	 */
+	Flux<Customer> search(CustomerSearch search, Collection<String> fields, ObjectId after, int limit);
+
+	/**
+	 * Searches the names of the customers by their trigrams, see
+	 * {@link CustomerRepositoryCustom#nameSearch(String, int)}.
+	 *
+	 * @param name
+	 *            The name, or part of the name, to search for
+	 * @param limit
+	 *            The maximum number of customers to return
+	 * @return The matching customers, best match first
+	 */
+	Flux<Customer> nameSearch(String name, int limit);
+
+	/**
+	 * Saves all the given customers with a single unordered bulk write, see
+	 * {@link CustomerRepositoryCustom#bulkSave(List)}.
+	 *
+	 * @param customers
+	 *            The customers to save
+	 * @return The outcome of each save, in the order of the given customers
+	 */
+	Mono<List<BulkSaveOutcome>> bulkSave(List<Customer> customers);
+
+	/**
+	 * Replaces the customer with the given id in a single operation, see
+	 * {@link CustomerRepositoryCustom#replace(ObjectId, Customer, Long)}.
+	 *
+	 * @param id
+	 *            The id of the customer to replace
+	 * @param replacement
+	 *            The new version of the customer
+	 * @param expectedVersion
+	 *            The version the stored customer must have, null to replace
+	 *            whatever version is stored
+	 * @return The new version of the customer or empty if nothing was replaced,
+	 *         fails with {@link org.springframework.dao.DuplicateKeyException}
+	 *         if the replacement conflicts with another customer
+	 */
+	Mono<Long> replace(ObjectId id, Customer replacement, Long expectedVersion);
+
+	/**
+	 * Deletes the customer with the given id, see
+	 * {@link CustomerRepositoryCustom#delete(ObjectId, Long)}.
+	 *
+	 * @param id
+	 *            The id of the customer to delete
+	 * @param expectedVersion
+	 *            The version the stored customer must have, null to delete
+	 *            whatever version is stored
+	 * @return true if the customer was deleted
+	 */
+	Mono<Boolean> delete(ObjectId id, Long expectedVersion);
+}
@@ -0,0 +1,111 @@
+package customerservice.repository.mongodb;
+
+import static customerservice.repository.mongodb.CustomerDocuments.VERSION;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.reactivestreams.client.MongoCollection;
+
+import customerservice.domain.Customer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Picked up by Spring Data as the implementation of
+ * {@link ReactiveCustomerRepositoryCustom} because of its name.
+ */
+class ReactiveCustomerRepositoryImpl implements ReactiveCustomerRepositoryCustom {
+
+	private final ReactiveMongoTemplate mongoTemplate;
+
+	private final CustomerDocuments documents;
+
+	ReactiveCustomerRepositoryImpl(ReactiveMongoTemplate mongoTemplate) {
+		this.mongoTemplate = mongoTemplate;
+		this.documents = new CustomerDocuments(mongoTemplate.getConverter());
+	}
+
+	@Override
+	public Mono<Customer> findById(ObjectId id, Collection<String> fields) {
+		return mongoTemplate.findOne(CustomerDocuments.byIdQuery(id, fields), Customer.class);
+	}
+
+	@Override
+	public Flux<Customer> search(CustomerSearch search, Collection<String> fields, ObjectId after, int limit) {
+		return mongoTemplate.find(CustomerDocuments.searchQuery(search, fields, after, limit), Customer.class);
+	}
+
+	@Override
+	public Flux<Customer> nameSearch(String name, int limit) {
+		return mongoTemplate.aggregate(CustomerDocuments.nameSearchAggregation(name, limit),
+				mongoTemplate.getCollectionName(Customer.class), Customer.class);
+	}
+
+	@Override
+	public Mono<List<BulkSaveOutcome>> bulkSave(List<Customer> customers) {
+
+		final List<ObjectId> ids = new ArrayList<>(customers.size());
+		final List<WriteModel<Document>> writes = documents.bulkWrites(customers, ids);
+
+		// Straight to the collection, the template would translate the partial failure
+		final MongoCollection<Document> collection = mongoTemplate
+				.getCollection(mongoTemplate.getCollectionName(Customer.class));
+
+		return Mono.from(collection.bulkWrite(writes, new BulkWriteOptions().ordered(false)))
+				.map(result -> CustomerDocuments.outcomes(ids, writes, result, Collections.emptyList()))
+				.onErrorResume(MongoBulkWriteException.class, e -> Mono
+						.just(CustomerDocuments.outcomes(ids, writes, e.getWriteResult(), e.getWriteErrors())))
+				.flatMap(outcomes -> {
+					final List<Integer> stored = CustomerDocuments.stored(outcomes);
+					return stored.isEmpty() ? Mono.just(outcomes)
+							: Mono.from(collection.bulkWrite(documents.bulkReplacements(customers, stored),
+									new BulkWriteOptions().ordered(false)))
+									.thenReturn(outcomes)
+									.onErrorResume(MongoBulkWriteException.class, e -> Mono.just(
+											CustomerDocuments.failedReplacements(outcomes, stored, e.getWriteErrors())));
+				});
+	}
+
+	@Override
+	public Mono<Long> replace(ObjectId id, Customer replacement, Long expectedVersion) {
+
+		final Bson filter = CustomerDocuments.filter(id, expectedVersion);
+		final Bson update = documents.toReplacement(replacement);
+		final FindOneAndUpdateOptions options = new FindOneAndUpdateOptions()
+				.returnDocument(ReturnDocument.AFTER)
+				.projection(Projections.include(VERSION));
+
+		// Executed through the template so driver exceptions are translated
+		return mongoTemplate.execute(Customer.class, collection -> collection.findOneAndUpdate(filter, update, options))
+				.next()
+				.map(document -> document.getLong(VERSION));
+	}
+
+	@Override
+	public Mono<Boolean> delete(ObjectId id, Long expectedVersion) {
+
+		final Bson filter = CustomerDocuments.filter(id, expectedVersion);
+		final Document tombstone = CustomerChangeDocuments.tombstone(id);
+		return mongoTemplate.execute(CustomerChangeDocuments.TOMBSTONES, tombstones -> tombstones.insertOne(tombstone))
+				.then(mongoTemplate.execute(Customer.class, collection -> collection.deleteOne(filter)).next())
+				.map(result -> result.getDeletedCount() > 0)
+				.flatMap(deleted -> deleted ? Mono.just(true)
+						: mongoTemplate.execute(CustomerChangeDocuments.TOMBSTONES,
+								tombstones -> tombstones.deleteOne(CustomerChangeDocuments.filter(tombstone)))
+								.then(Mono.just(false)));
+	}
+}
@@ -0,0 +1,40 @@
+package customerservice.restapi;
+
+import org.bson.types.ObjectId;
+
+/**
+ * The result of one customer of a {@code POST /customers/batch} request.
+ * <p>
+ * The status is the HTTP status the customer would have got if it was sent
+ * alone, the index is its position in the request.
+ */
+public final class BatchItemResult {
+
+	private final int index;
+	private final ObjectId id;
+	private final int status;
+	private final String error;
+
+	BatchItemResult(int index, ObjectId id, int status, String error) {
+		this.index = index;
+		this.id = id;
+		this.status = status;
+		this.error = error;
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
+	public ObjectId getId() {
+		return id;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	public String getError() {
+		return error;
+	}
+}
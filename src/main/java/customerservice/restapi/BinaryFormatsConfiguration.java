@@ -0,0 +1,91 @@
+package customerservice.restapi;
+
+import static org.springframework.http.HttpHeaders.ACCEPT;
+
+import java.util.List;
+
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+/**
+ * Binary alternatives to JSON for service to service calls, negotiated with
+ * the Accept and Content-Type headers: Smile ({@code application/x-jackson-smile})
+ * and CBOR ({@code application/cbor}).
+ * <p>
+ * Both formats are written by Jackson with the same configuration as JSON,
+ * property names included.
+ */
+@Profile("!reactive")
+@Configuration
+public class BinaryFormatsConfiguration {
+
+	public static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+	public static final String APPLICATION_CBOR_VALUE = "application/cbor";
+
+	private static final MediaType APPLICATION_SMILE = MediaType.valueOf(APPLICATION_SMILE_VALUE);
+	private static final MediaType APPLICATION_CBOR = MediaType.valueOf(APPLICATION_CBOR_VALUE);
+
+	@Bean
+	public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(
+			List<Jackson2ObjectMapperBuilderCustomizer> customizers) {
+		return new MappingJackson2SmileHttpMessageConverter(
+				customize(Jackson2ObjectMapperBuilder.smile(), customizers).build());
+	}
+
+	@Bean
+	public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(
+			List<Jackson2ObjectMapperBuilderCustomizer> customizers) {
+		return new MappingJackson2CborHttpMessageConverter(
+				customize(Jackson2ObjectMapperBuilder.cbor(), customizers).build());
+	}
+
+	/**
+	 * @return The binary format the current request prefers to JSON, null if
+	 *         it prefers JSON or if there is no current request
+	 */
+	public static MediaType requestedBinaryFormat() {
+
+		final RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+		if (!(attributes instanceof ServletRequestAttributes)) {
+			return null;
+		}
+
+		try {
+			final List<MediaType> accepted = MediaType
+					.parseMediaTypes(((ServletRequestAttributes) attributes).getRequest().getHeader(ACCEPT));
+			MediaType.sortBySpecificityAndQuality(accepted);
+
+			for (MediaType mediaType : accepted) {
+				if (APPLICATION_SMILE.includes(mediaType)) {
+					return APPLICATION_SMILE;
+				}
+				if (APPLICATION_CBOR.includes(mediaType)) {
+					return APPLICATION_CBOR;
+				}
+				if (mediaType.isCompatibleWith(MediaType.APPLICATION_JSON)) {
+					return null;
+				}
+			}
+		} catch (InvalidMediaTypeException e) {
+			// Rejected later by content negotiation
+		}
+		return null;
+	}
+
+	/* The customizers apply the spring.jackson.* properties and serialize ObjectId as a string */
+	private static Jackson2ObjectMapperBuilder customize(Jackson2ObjectMapperBuilder builder,
+			List<Jackson2ObjectMapperBuilderCustomizer> customizers) {
+		customizers.forEach(customizer -> customizer.customize(builder));
+		return builder;
+	}
+}
@@ -0,0 +1,138 @@
+package customerservice.restapi;
+
+import static org.springframework.http.ResponseEntity.noContent;
+import static org.springframework.http.ResponseEntity.ok;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import customerservice.CustomerServiceException;
+import customerservice.domain.CustomerChange;
+import customerservice.repository.mongodb.CustomerChanges;
+
+/**
+ * Answers the long polls of {@code GET /customers/changes}.
+ * <p>
+ * The changes are recorded by the writes of the customers themselves, see
+ * {@link CustomerChanges}. A consumer waiting for changes costs no query of
+ * its own: one thread looks for new changes every
+ * {@code customers.changes.poll-ms} while consumers are waiting, then reads
+ * the changes of the consumers that are behind.
+ */
+@Profile("!reactive")
+@Component
+public class ChangeFeed {
+
+	private final CustomerChanges changes;
+
+	private final Set<Waiter> waiters = ConcurrentHashMap.newKeySet();
+
+	private final ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		final Thread thread = new Thread(runnable, "change-feed");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	public ChangeFeed(CustomerChanges changes, @Value("${customers.changes.poll-ms:500}") long pollMillis) {
+		this.changes = changes;
+		poller.scheduleWithFixedDelay(this::poll, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void stop() {
+		poller.shutdownNow();
+	}
+
+	/**
+	 * @param since
+	 *            The token of the last change read by the consumer
+	 * @param waitMillis
+	 *            How long to wait for a change, 0 to answer right away
+	 * @return The changes following the given one, HTTP 204 if there was none
+	 *         within the wait or HTTP 410 if they are no longer recorded
+	 */
+	public DeferredResult<ResponseEntity<?>> after(long since, int limit, long waitMillis) {
+
+		if (changes.expired(since)) {
+			throw new CustomerServiceException(HttpStatus.GONE,
+					"Changes are no longer recorded, read all the customers again then follow the changes from now.");
+		}
+
+		final DeferredResult<ResponseEntity<?>> result = new DeferredResult<>(waitMillis, noContent().build());
+
+		final List<CustomerChange> found = changes.after(since, limit);
+		if (!found.isEmpty() || waitMillis == 0) {
+			result.setResult(response(found));
+			return result;
+		}
+
+		final Waiter waiter = new Waiter(since, limit, result);
+		waiters.add(waiter);
+		result.onCompletion(() -> waiters.remove(waiter));
+
+		return result;
+	}
+
+	/**
+	 * @return A token following the last change, to follow the changes from
+	 *         now
+	 */
+	public long latest() {
+		return changes.latest();
+	}
+
+	/* Answers the waiters that are behind, one query each, no query if none is */
+	private void poll() {
+
+		if (waiters.isEmpty()) {
+			return;
+		}
+
+		try {
+			final long latest = changes.latest();
+			for (Waiter waiter : waiters) {
+				if (waiter.since < latest) {
+					final List<CustomerChange> found = changes.after(waiter.since, waiter.limit);
+					if (!found.isEmpty()) {
+						waiter.result.setResult(response(found));
+					}
+				}
+			}
+		} catch (RuntimeException e) {
+			// MongoDB unavailable, the waiters time out or the next poll answers them
+		}
+	}
+
+	private static ResponseEntity<?> response(List<CustomerChange> found) {
+		return found.isEmpty() ? noContent().build()
+				: ok(new CustomerChangesPage(found, found.get(found.size() - 1).getToken()));
+	}
+
+	private static final class Waiter {
+
+		private final long since;
+
+		private final int limit;
+
+		private final DeferredResult<ResponseEntity<?>> result;
+
+		private Waiter(long since, int limit, DeferredResult<ResponseEntity<?>> result) {
+			this.since = since;
+			this.limit = limit;
+			this.result = result;
+		}
+	}
+}
@@ -0,0 +1,34 @@
+package customerservice.restapi;
+
+import java.util.List;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+
+import customerservice.domain.CustomerChange;
+
+/**
+ * The result of a {@code GET /customers/changes} request.
+ * <p>
+ * The changes are in write order, {@code next} is the token of the
+ * following request.
+ */
+public final class CustomerChangesPage {
+
+	private final List<CustomerChange> changes;
+	private final long next;
+
+	CustomerChangesPage(List<CustomerChange> changes, long next) {
+		this.changes = changes;
+		this.next = next;
+	}
+
+	public List<CustomerChange> getChanges() {
+		return changes;
+	}
+
+	@JsonSerialize(using = ToStringSerializer.class)
+	public long getNext() {
+		return next;
+	}
+}
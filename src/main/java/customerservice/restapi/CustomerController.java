@@ -1,73 +1,501 @@
 package customerservice.restapi;
 
+import static customerservice.restapi.BinaryFormatsConfiguration.APPLICATION_CBOR_VALUE;
+import static customerservice.restapi.BinaryFormatsConfiguration.APPLICATION_SMILE_VALUE;
+import static org.springframework.http.HttpHeaders.ACCEPT;
+import static org.springframework.http.HttpHeaders.IF_MATCH;
+import static org.springframework.http.HttpHeaders.IF_NONE_MATCH;
+import static org.springframework.http.MediaType.APPLICATION_JSON_UTF8;
 import static org.springframework.http.MediaType.APPLICATION_JSON_UTF8_VALUE;
 import static org.springframework.http.ResponseEntity.created;
 import static org.springframework.http.ResponseEntity.noContent;
 import static org.springframework.http.ResponseEntity.notFound;
 import static org.springframework.http.ResponseEntity.ok;
+import static org.springframework.http.ResponseEntity.status;
 import static org.springframework.web.bind.annotation.RequestMethod.DELETE;
 import static org.springframework.web.bind.annotation.RequestMethod.GET;
 import static org.springframework.web.bind.annotation.RequestMethod.POST;
 import static org.springframework.web.bind.annotation.RequestMethod.PUT;
 
+import java.io.IOException;
 import java.net.URI;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.validation.ConstraintViolation;
 import javax.validation.Valid;
+import javax.validation.Validator;
 import javax.validation.constraints.NotNull;
 
 import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.format.annotation.DateTimeFormat.ISO;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.ResponseEntity.BodyBuilder;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 
 import customerservice.CustomerServiceException;
+import customerservice.cache.CustomerCache;
+import customerservice.cache.CustomerLoader;
 import customerservice.domain.Customer;
+import customerservice.domain.enums.CustomerType;
+import customerservice.repository.mongodb.BulkSaveOutcome;
 import customerservice.repository.mongodb.CustomerRepository;
+import customerservice.repository.mongodb.CustomerSearch;
 
+@Profile("!reactive")
 @RestController
-@RequestMapping(path = "/customers", produces = { APPLICATION_JSON_UTF8_VALUE })
+@RequestMapping(path = "/customers", produces = { APPLICATION_JSON_UTF8_VALUE, APPLICATION_SMILE_VALUE,
+		APPLICATION_CBOR_VALUE })
 public class CustomerController {
 
+	public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+	private static final String LINK = "Link";
+
+	/* The JSON fields that can be projected by the reads and their customer property */
+	private static final Map<String, String> PROJECTED_FIELDS = new HashMap<>();
+
+	static {
+		PROJECTED_FIELDS.put("id", "id");
+		PROJECTED_FIELDS.put("first_name", "firstName");
+		PROJECTED_FIELDS.put("last_name", "lastName");
+		PROJECTED_FIELDS.put("gender", "gender");
+		PROJECTED_FIELDS.put("birth_date", "birthDate");
+		PROJECTED_FIELDS.put("marital_status", "maritalStatus");
+		PROJECTED_FIELDS.put("address", "address");
+		PROJECTED_FIELDS.put("phones", "phones");
+		PROJECTED_FIELDS.put("email", "email");
+		PROJECTED_FIELDS.put("customer_type", "customerType");
+	}
+
+	/* Key of the pretty printed bodies in the cache */
+	private static final String PRETTY_JSON_VALUE = APPLICATION_JSON_UTF8_VALUE + ";pretty=true";
+
+	private static final String CUSTOMER_MODIFIED = "Customer has been modified, get its last version and try again.";
+
+	private static final String EMAIL_USED = "Email already used by another customer.";
+
+	/* One trigram, a shorter name matches a large part of the customers */
+	private static final int MIN_SEARCHED_NAME = 3;
+
 	private CustomerRepository repo;
 
-	public CustomerController(CustomerRepository repo) {
+	private CustomerCache cache;
+
+	/* Loads the cache misses, in batches if configured */
+	private CustomerLoader loader;
+
+	/* Answers the consumers of GET /customers/changes */
+	private ChangeFeed feed;
+
+	private ObjectMapper mapper;
+
+	private Validator validator;
+
+	/* Reads the customers of a batch one at a time */
+	private ObjectReader customersReader;
+
+	/* The cached bodies, compact unless pretty printing is requested */
+	private ObjectWriter jsonWriter;
+	private ObjectWriter prettyJsonWriter;
+
+	/* One customer per line, no indentation and no flush after each customer */
+	private ObjectWriter ndjsonWriter;
+
+	@Value("${customers.page.default-size:100}")
+	private int defaultPageSize;
+
+	@Value("${customers.page.max-size:1000}")
+	private int maxPageSize;
+
+	@Value("${customers.batch.chunk-size:500}")
+	private int batchChunkSize;
+
+	@Value("${customers.cache.serialized-bodies:true}")
+	private boolean cacheSerializedBodies;
+
+	@Value("${customers.changes.max-wait-seconds:30}")
+	private int maxChangesWait;
+
+	public CustomerController(CustomerRepository repo, CustomerCache cache, CustomerLoader loader, ChangeFeed feed,
+			ObjectMapper mapper, Validator validator) {
 		this.repo = repo;
+		this.cache = cache;
+		this.loader = loader;
+		this.feed = feed;
+		this.mapper = mapper;
+		this.validator = validator;
+		this.customersReader = mapper.readerFor(Customer.class);
+		this.jsonWriter = mapper.writer().without(SerializationFeature.INDENT_OUTPUT);
+		this.prettyJsonWriter = mapper.writer().with(SerializationFeature.INDENT_OUTPUT);
+		this.ndjsonWriter = mapper.writer()
+				.without(SerializationFeature.INDENT_OUTPUT)
+				.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+				.withRootValueSeparator("\n");
 	}
 
 	/**
-	 * Query for all customers.
+	 * Query for all customers, one page at a time.
+	 * <p>
+	 * Customers are returned in id order, when more customers are available the
+	 * response contains a {@code Link} header with {@code rel="next"} pointing
+	 * at the following page.
+	 * <p>
+	 * When fields are given only these fields are read from MongoDB and
+	 * serialized, the id is always returned.
 	 * <p>
 	 * This method is idempotent.
 	 * 
-	 * @return HTTP 200 if customers found or HTTP 204 otherwise.
+	 * @param fields
+	 *            The comma separated JSON fields to return, all of them if
+	 *            absent.
+	 * @param after
+	 *            The opaque cursor of the previous page, absent for the first
+	 *            page.
+	 * @param size
+	 *            The number of customers per page, the configured default size
+	 *            is used if absent and it can not exceed the configured maximum.
+	 * 
+	 * @return HTTP 200 if customers found or HTTP 204 otherwise, HTTP 400 if a
+	 *         field, the cursor or the size are not valid.
 	 */
 	@PreAuthorize("#oauth2.hasAnyScope('read','write','read-write')")
 	@RequestMapping(method = GET)
-	public ResponseEntity<?> allCustomers() {
+	public ResponseEntity<?> allCustomers(@RequestParam(required = false) List<String> fields,
+			@RequestParam(required = false) String after,
+			@RequestParam(required = false) Integer size) {
+
+		final int pageSize = pageSize(size);
+		final UriComponentsBuilder next = UriComponentsBuilder.fromPath("/customers");
+
+		if (fields != null) {
+			next.queryParam("fields", String.join(",", fields));
+			final List<Customer> customers = repo.search(CustomerSearch.builder().build(), projection(fields),
+					after == null ? null : PageCursor.decode(after), pageSize + 1);
+			return page(customers, pageSize, next);
+		}
+
+		// Fetch one extra customer to know if there is a next page
+		final PageRequest page = PageRequest.of(0, pageSize + 1);
+		final List<Customer> customers = after == null ? repo.findAllByOrderByIdAsc(page)
+				: repo.findByIdGreaterThanOrderByIdAsc(PageCursor.decode(after), page);
+
+		return page(customers, pageSize, next);
+	}
+
+	/**
+	 * Query for the customers with the given ids at once.
+	 * <p>
+	 * The cached customers are served from the {@link CustomerCache}, the
+	 * others are read from MongoDB with a single query. They are not added to
+	 * the cache.
+	 * <p>
+	 * This method is idempotent.
+	 * 
+	 * @param ids
+	 *            The comma separated ids of the customers, duplicates are
+	 *            ignored. There can not be more ids than the maximum page
+	 *            size.
+	 * 
+	 * @return HTTP 200 with the customers found in request order and the ids
+	 *         of the missing ones, HTTP 400 if an id is not valid or if there
+	 *         are too many ids.
+	 */
+	@PreAuthorize("#oauth2.hasAnyScope('read','write','read-write')")
+	@RequestMapping(method = GET, params = "ids")
+	public ResponseEntity<?> customersByIds(@RequestParam List<ObjectId> ids) {
+
+		final Set<ObjectId> requested = distinctIds(ids, maxPageSize);
+
+		final Map<ObjectId, Customer> found = cache.getAllPresent(requested);
+		final List<ObjectId> misses = requested.stream().filter(id -> !found.containsKey(id))
+				.collect(Collectors.toList());
+		if (!misses.isEmpty()) {
+			repo.findAllById(misses).forEach(customer -> found.put(customer.getId(), customer));
+		}
+
+		return ok(byIds(requested, found));
+	}
+
+	/**
+	 * Search for customers, one page at a time.
+	 * <p>
+	 * Only the customers matching all the given criteria are returned, in id
+	 * order and paged like {@link #allCustomers(List, String, Integer)}. The
+	 * criteria are served by MongoDB indexes.
+	 * <p>
+	 * This method is idempotent.
+	 * 
+	 * @param email
+	 *            The email of the customer.
+	 * @param lastName
+	 *            The last name of the customers.
+	 * @param customerType
+	 *            The type of the customers.
+	 * @param country
+	 *            The country of the address of the customers.
+	 * @param city
+	 *            The city of the address of the customers.
+	 * @param bornAfter
+	 *            The first birth date, inclusive, in ISO-8601 format.
+	 * @param bornBefore
+	 *            The last birth date, inclusive, in ISO-8601 format.
+	 * @param fields
+	 *            The comma separated JSON fields to return, all of them if
+	 *            absent. The id is always returned.
+	 * @param after
+	 *            The opaque cursor of the previous page, absent for the first
+	 *            page.
+	 * @param size
+	 *            The number of customers per page.
+	 * 
+	 * @return HTTP 200 if customers found or HTTP 204 otherwise, HTTP 400 if a
+	 *         criterion, a field, the cursor or the size are not valid.
+	 */
+	@PreAuthorize("#oauth2.hasAnyScope('read','write','read-write')")
+	@RequestMapping(method = GET, value = "/search")
+	public ResponseEntity<?> searchCustomers(@RequestParam(required = false) String email,
+			@RequestParam(required = false) String lastName,
+			@RequestParam(required = false) CustomerType customerType,
+			@RequestParam(value = "address.country", required = false) String country,
+			@RequestParam(value = "address.city", required = false) String city,
+			@RequestParam(required = false) @DateTimeFormat(iso = ISO.DATE) LocalDate bornAfter,
+			@RequestParam(required = false) @DateTimeFormat(iso = ISO.DATE) LocalDate bornBefore,
+			@RequestParam(required = false) List<String> fields,
+			@RequestParam(required = false) String after,
+			@RequestParam(required = false) Integer size) {
+
+		final int pageSize = pageSize(size);
+		final CustomerSearch search = CustomerSearch.builder()
+				.withEmail(email)
+				.withLastName(lastName)
+				.withCustomerType(customerType)
+				.withCountry(country)
+				.withCity(city)
+				.withBirthDateBetween(bornAfter, bornBefore)
+				.build();
+		final List<Customer> customers = repo.search(search, projection(fields),
+				after == null ? null : PageCursor.decode(after), pageSize + 1);
+
+		return page(customers, pageSize,
+				searchUri(email, lastName, customerType, country, city, bornAfter, bornBefore, fields));
+	}
+
+	/**
+	 * Search for customers by their first and last names, partial or
+	 * misspelled.
+	 * <p>
+	 * The names are compared by their trigrams, case and accents ignored: the
+	 * beginning of a name or a name with a typo matches. Customers are
+	 * returned best match first.
+	 * <p>
+	 * Only the names are searched, the email, the street and the city are
+	 * searched exactly with {@code GET /customers/search}.
+	 * <p>
+	 * This method is idempotent.
+	 * 
+	 * @param q
+	 *            The name to search for, one or more words of the first and
+	 *            last names.
+	 * @param size
+	 *            The maximum number of customers to return.
+	 * 
+	 * @return HTTP 200 if customers found or HTTP 204 otherwise, HTTP 400 if
+	 *         the name is missing or shorter than 3 characters or the size is
+	 *         not valid.
+	 */
+	@PreAuthorize("#oauth2.hasAnyScope('read','write','read-write')")
+	@RequestMapping(method = GET, value = "/search/name")
+	public ResponseEntity<?> nameSearchCustomers(@RequestParam(required = false) String q,
+			@RequestParam(required = false) Integer size) {
+
+		final List<Customer> customers = repo.nameSearch(searchedName(q), pageSize(size));
+
+		return customers.isEmpty() ? noContent().build() : ok(customers);
+	}
+
+	/**
+	 * Follow the changes of the customers instead of reading all of them
+	 * again.
+	 * <p>
+	 * Without token only the token of the last change is returned: consumers
+	 * read all the customers once, then follow the changes from this token.
+	 * With a token the changes that followed are returned in write order with
+	 * the token of the next request. When there is none yet the request waits
+	 * for one, up to the given number of seconds.
+	 * <p>
+	 * A change tells which customer was created, updated or deleted, the
+	 * customers themselves are read with {@code GET /customers?ids=}.
+	 * <p>
+	 * This method is idempotent.
+	 * 
+	 * @param since
+	 *            The token returned by the previous request.
+	 * @param size
+	 *            The maximum number of changes to return, the same defaults
+	 *            and maximum as the pages of customers apply.
+	 * @param wait
+	 *            The number of seconds to wait for a change, up to the
+	 *            configured maximum which is also the default.
+	 * 
+	 * @return HTTP 200 with the changes, HTTP 204 if there was none within the
+	 *         wait, HTTP 400 if the size or the wait are not valid or HTTP 410
+	 *         if the changes that followed the token are no longer recorded.
+	 */
+	@PreAuthorize("#oauth2.hasAnyScope('read','write','read-write')")
+	@RequestMapping(method = GET, value = "/changes")
+	public DeferredResult<ResponseEntity<?>> customerChanges(@RequestParam(required = false) Long since,
+			@RequestParam(required = false) Integer size, @RequestParam(required = false) Integer wait) {
+
+		if (since == null) {
+			final DeferredResult<ResponseEntity<?>> latest = new DeferredResult<>();
+			latest.setResult(ok(new CustomerChangesPage(Collections.emptyList(), feed.latest())));
+			return latest;
+		}
+
+		if (wait != null && wait < 0) {
+			throw new CustomerServiceException(HttpStatus.BAD_REQUEST, "Wait must not be negative.");
+		}
+
+		final int seconds = wait == null ? maxChangesWait : Math.min(wait, maxChangesWait);
+		return feed.after(since, pageSize(size), TimeUnit.SECONDS.toMillis(seconds));
+	}
+
+	/**
+	 * Export all customers as newline delimited JSON, one customer per line.
+	 * <p>
+	 * Customers are read from a MongoDB cursor and written to the response as
+	 * they come so the memory used does not depend on the number of customers.
+	 * <p>
+	 * This method is idempotent.
+	 * 
+	 * @param response
+	 *            The response to stream the customers to.
+	 */
+	@PreAuthorize("#oauth2.hasAnyScope('read','write','read-write')")
+	@RequestMapping(method = GET, value = "/export", produces = { APPLICATION_NDJSON_VALUE })
+	public void exportCustomers(HttpServletResponse response) throws IOException {
+
+		response.setContentType(APPLICATION_NDJSON_VALUE);
+
+		try (CloseableIterator<Customer> customers = repo.streamAll();
+				JsonGenerator generator = mapper.getFactory().createGenerator(response.getOutputStream())) {
+
+			generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+			final SequenceWriter writer = ndjsonWriter.writeValues(generator);
 
-		final Iterable<Customer> it = repo.findAll();
-		return it.iterator().hasNext() ? ok(it) : noContent().build();
+			if (!customers.hasNext()) {
+				return;
+			}
+
+			// Send the first customer right away, the rest is flushed as the buffer fills up
+			writer.write(customers.next());
+			generator.flush();
+
+			while (customers.hasNext()) {
+				writer.write(customers.next());
+			}
+
+			generator.writeRaw('\n');
+		}
 	}
 
 	/**
 	 * Query for a customer with the given Id.
 	 * <p>
 	 * This method is idempotent.
+	 * <p>
+	 * Customers are served from the {@link CustomerCache}, the writes of this
+	 * controller invalidate the customers they change. Unless disabled with
+	 * {@code customers.cache.serialized-bodies} the JSON body itself is cached,
+	 * the compact and the pretty printed bodies separately. Smile and CBOR
+	 * bodies are not cached.
+	 * <p>
+	 * The version of the customer and the variant of the body, compact or
+	 * pretty printed JSON, Smile or CBOR, are sent in the ETag header, if it
+	 * matches the If-None-Match header the body is not sent.
+	 * <p>
+	 * When fields are given the customer is read from MongoDB with only these
+	 * fields, bypassing the cache, and only these fields are serialized. A
+	 * partial customer has no ETag, If-None-Match is ignored.
 	 * 
 	 * @param id
 	 *            The id of the customer to look for.
+	 * @param fields
+	 *            The comma separated JSON fields to return, all of them if
+	 *            absent. The id is always returned.
+	 * @param ifNoneMatch
+	 *            The entity tags of the versions known by the client.
 	 * 
-	 * @return HTTP 200 if the customer is found or HTTP 404 otherwise.
+	 * @return HTTP 200 if the customer is found, HTTP 304 if the client already
+	 *         has its last version, HTTP 400 if a field is not valid or HTTP
+	 *         404 otherwise.
 	 */
 	@PreAuthorize("#oauth2.hasAnyScope('read','write','read-write')")
 	@RequestMapping(method = GET, value = "/{id}")
-	public ResponseEntity<?> oneCustomer(@PathVariable ObjectId id) {
+	public ResponseEntity<?> oneCustomer(@PathVariable ObjectId id,
+			@RequestParam(required = false) List<String> fields,
+			@RequestHeader(value = IF_NONE_MATCH, required = false) String ifNoneMatch) {
+
+		final MediaType binary = BinaryFormatsConfiguration.requestedBinaryFormat();
+		final boolean pretty = NegotiatedJsonHttpMessageConverter.isPrettyRequested();
+		final String variant = ETags.variant(binary, pretty);
+
+		// A partial customer must not be cached, it is read from MongoDB as is
+		if (fields != null) {
+			return repo.findById(id, projection(fields))
+					.<ResponseEntity<?>> map(customer -> ok().varyBy(ACCEPT).body(customer))
+					.orElse(notFound().build());
+		}
 
-		return repo.findById(id).map(ResponseEntity::ok).orElse(notFound().build());
+		// Binary formats are cheap to write, only JSON bodies are cached
+		if (cacheSerializedBodies && binary == null) {
+			return cache.getBody(id, pretty ? PRETTY_JSON_VALUE : APPLICATION_JSON_UTF8_VALUE, loader::load,
+					customer -> toJson(customer, pretty ? prettyJsonWriter : jsonWriter))
+					.<ResponseEntity<?>> map(body -> found(body.getCustomer(), body.getBytes(), variant, ifNoneMatch))
+					.orElse(notFound().build());
+		}
+
+		return cache.get(id, loader::load)
+				.<ResponseEntity<?>> map(customer -> found(customer, customer, variant, ifNoneMatch))
+				.orElse(notFound().build());
 	}
 
 	/**
@@ -77,19 +505,86 @@ public class CustomerController {
 	 *            The customer to create.
 	 * 
 	 * @return HTTP 201, the header Location contains the URL of the created
-	 *         customer.
+	 *         customer and the header ETag its version.
 	 */
 	@PreAuthorize("#oauth2.hasAnyScope('write','read-write')")
-	@RequestMapping(method = POST, consumes = { APPLICATION_JSON_UTF8_VALUE })
+	@RequestMapping(method = POST, consumes = { APPLICATION_JSON_UTF8_VALUE, APPLICATION_SMILE_VALUE,
+			APPLICATION_CBOR_VALUE })
 	public ResponseEntity<?> addCustomer(@RequestBody @Valid Customer newCustomer) {
 
-		if (newCustomer.getId() != null && repo.existsById(newCustomer.getId())) {
+		final Customer created;
+		try {
+			// A plain insert, MongoDB rejects it if the id is already taken
+			created = repo.insert(newCustomer);
+		} catch (DuplicateKeyException e) {
+			throw duplicate(e, "Customer already exists, to update an existing customer use PUT instead.");
+		}
+
+		final BodyBuilder response = created(URI.create(String.format("/customers/%s", created.getId())));
+		return withETag(response, created.getVersion(), requestedVariant()).build();
+	}
+
+	/**
+	 * Create or update many customers at once.
+	 * <p>
+	 * The body is either a JSON array of customers or newline delimited JSON
+	 * with one customer per line. Customers are read one by one from the
+	 * request, validated, then written to MongoDB by chunks with one bulk write
+	 * per chunk. Customers without id are created, the others are created or
+	 * replaced.
+	 * <p>
+	 * Each customer gets its own status: HTTP 201 if it was created, HTTP 204
+	 * if it was updated, HTTP 400 if it is not valid or conflicts with an
+	 * existing customer and HTTP 500 if it could not be saved.
+	 * <p>
+	 * If the body is malformed the request fails with HTTP 400, the customers
+	 * preceding the malformed one may already be saved.
+	 * 
+	 * @param request
+	 *            The request to read the customers from.
+	 * 
+	 * @return HTTP 200 with the result of each customer in request order.
+	 */
+	@PreAuthorize("#oauth2.hasAnyScope('write','read-write')")
+	@RequestMapping(method = POST, value = "/batch", consumes = { APPLICATION_JSON_UTF8_VALUE,
+			APPLICATION_NDJSON_VALUE })
+	public ResponseEntity<?> addOrUpdateCustomers(HttpServletRequest request) throws IOException {
+
+		final List<BatchItemResult> results = new ArrayList<>();
+		final List<Customer> chunk = new ArrayList<>(batchChunkSize);
+		final List<Integer> chunkIndexes = new ArrayList<>(batchChunkSize);
+
+		int index = 0;
+		try (MappingIterator<Customer> customers = customersReader.readValues(request.getInputStream())) {
+
+			while (customers.hasNextValue()) {
+				final Customer customer = customers.nextValue();
+				final Set<ConstraintViolation<Customer>> violations = validator.validate(customer);
+
+				if (!violations.isEmpty()) {
+					results.add(new BatchItemResult(index, customer.getId(), HttpStatus.BAD_REQUEST.value(),
+							violations.stream().map(v -> v.getPropertyPath() + " " + v.getMessage())
+									.collect(Collectors.joining(", "))));
+				} else {
+					chunk.add(customer);
+					chunkIndexes.add(index);
+					if (chunk.size() == batchChunkSize) {
+						results.addAll(bulkSave(chunk, chunkIndexes));
+					}
+				}
+				index++;
+			}
+		} catch (JsonProcessingException e) {
 			throw new CustomerServiceException(HttpStatus.BAD_REQUEST,
-					"Customer already exists, to update an existing customer use PUT instead.");
+					String.format("Malformed customer at index %d: %s", index, e.getOriginalMessage()));
+		}
+
+		if (!chunk.isEmpty()) {
+			results.addAll(bulkSave(chunk, chunkIndexes));
 		}
 
-		final Customer created = repo.save(newCustomer);
-		return created(URI.create(String.format("/customers/%s", created.getId()))).build();
+		results.sort(Comparator.comparingInt(BatchItemResult::getIndex));
+		return ok(results);
 	}
 
 	/**
@@ -97,26 +592,51 @@ public class CustomerController {
 	 * <p>
 	 * This method is idempotent.
 	 * <p>
+	 * The stored customer is replaced in one operation, the id of the updated
+	 * customer is the one given in the path whatever the body contains.
+	 * <p>
+	 * If the If-Match header is present the customer is updated only if its
+	 * version still matches, which prevents overwriting a concurrent update.
 	 * 
 	 * @param id
 	 *            The id of the customer to update.
 	 * @param update
 	 *            The Customer object containing the updated version to be
 	 *            persisted.
+	 * @param ifMatch
+	 *            The entity tag of the version the update is based on.
 	 * 
-	 * @return HTTP 204 otherwise HTTP 400 if the customer does not exist.
+	 * @return HTTP 204 with the new version in the header ETag, HTTP 400 if the
+	 *         customer does not exist or HTTP 412 if its version does not match
+	 *         If-Match.
 	 */
 	@PreAuthorize("#oauth2.hasAnyScope('write','read-write')")
-	@RequestMapping(method = PUT, value = "/{id}", consumes = { APPLICATION_JSON_UTF8_VALUE })
-	public ResponseEntity<?> updateCustomer(@PathVariable @NotNull ObjectId id, @RequestBody @Valid Customer update) {
+	@RequestMapping(method = PUT, value = "/{id}", consumes = { APPLICATION_JSON_UTF8_VALUE, APPLICATION_SMILE_VALUE,
+			APPLICATION_CBOR_VALUE })
+	public ResponseEntity<?> updateCustomer(@PathVariable @NotNull ObjectId id, @RequestBody @Valid Customer update,
+			@RequestHeader(value = IF_MATCH, required = false) String ifMatch) {
+
+		final Long expectedVersion = ETags.expectedVersion(ifMatch);
 
-		if (!repo.existsById(id)) {
+		final Optional<Long> version;
+		try {
+			version = repo.replace(id, update, expectedVersion);
+		} catch (DuplicateKeyException e) {
+			throw duplicate(e, "Customer conflicts with an existing customer.");
+		}
+
+		if (!version.isPresent()) {
+			// Only a failed conditional update needs a second look
+			if (expectedVersion != null && repo.existsById(id)) {
+				throw new CustomerServiceException(HttpStatus.PRECONDITION_FAILED, CUSTOMER_MODIFIED);
+			}
 			throw new CustomerServiceException(HttpStatus.BAD_REQUEST,
 					"Customer does not exist, to create a new customer use POST instead.");
 		}
 
-		repo.save(update);
-		return noContent().build();
+		cache.invalidate(id);
+
+		return noContent().eTag(ETags.of(version.get(), requestedVariant())).build();
 	}
 
 	/**
@@ -125,19 +645,223 @@ public class CustomerController {
 	 * This method is idempotent, if it's called multiples times with the same
 	 * id then the first call will delete the customer and subsequent calls will
 	 * be silently ignored.
+	 * <p>
+	 * If the If-Match header is present the customer is deleted only if its
+	 * version still matches.
 	 * 
 	 * @param id
 	 *            The id of the customer to delete.
-	 * @return HTTP 204
+	 * @param ifMatch
+	 *            The entity tag of the version to delete.
+	 * @return HTTP 204 or HTTP 412 if the customer does not exist or its
+	 *         version does not match If-Match.
 	 */
 	@PreAuthorize("#oauth2.hasAnyScope('write','read-write')")
 	@RequestMapping(method = DELETE, value = "/{id}")
-	public ResponseEntity<?> deleteCustomer(@PathVariable @NotNull ObjectId id) {
+	public ResponseEntity<?> deleteCustomer(@PathVariable @NotNull ObjectId id,
+			@RequestHeader(value = IF_MATCH, required = false) String ifMatch) {
+
+		final Long expectedVersion = ETags.expectedVersion(ifMatch);
 
-		if (repo.existsById(id)) {
-			repo.deleteById(id);
+		if (repo.delete(id, expectedVersion)) {
+			cache.invalidate(id);
+		} else if (expectedVersion != null) {
+			throw new CustomerServiceException(HttpStatus.PRECONDITION_FAILED, CUSTOMER_MODIFIED);
 		}
 
 		return noContent().build();
 	}
+
+	private ResponseEntity<?> found(Customer customer, Object body, String variant, String ifNoneMatch) {
+
+		final String eTag = ETags.of(customer.getVersion(), variant);
+		if (ETags.matches(ifNoneMatch, eTag)) {
+			return status(HttpStatus.NOT_MODIFIED).eTag(eTag).varyBy(ACCEPT).build();
+		}
+
+		final BodyBuilder response = withETag(ok(), customer.getVersion(), variant).varyBy(ACCEPT);
+		return body instanceof byte[] ? response.contentType(APPLICATION_JSON_UTF8).body(body) : response.body(body);
+	}
+
+	private static BodyBuilder withETag(BodyBuilder response, Long version, String variant) {
+		final String eTag = ETags.of(version, variant);
+		return eTag == null ? response : response.eTag(eTag);
+	}
+
+	/**
+	 * MongoDB names the violated index in the message, a duplicate email is
+	 * told apart from a duplicate id.
+	 *
+	 * @param message
+	 *            The message when the email is not the duplicate key
+	 */
+	static CustomerServiceException duplicate(DuplicateKeyException e, String message) {
+		final boolean email = e.getMessage() != null
+				&& e.getMessage().contains(String.format("index: %s ", Customer.EMAIL_INDEX));
+		return new CustomerServiceException(HttpStatus.BAD_REQUEST, email ? EMAIL_USED : message);
+	}
+
+	/* The variant a read with the headers of the current request gets */
+	private static String requestedVariant() {
+		return ETags.variant(BinaryFormatsConfiguration.requestedBinaryFormat(),
+				NegotiatedJsonHttpMessageConverter.isPrettyRequested());
+	}
+
+	private static byte[] toJson(Customer customer, ObjectWriter writer) {
+		try {
+			return writer.writeValueAsBytes(customer);
+		} catch (JsonProcessingException e) {
+			throw new CustomerServiceException(HttpStatus.INTERNAL_SERVER_ERROR, e.getOriginalMessage());
+		}
+	}
+
+	/**
+	 * @param customers
+	 *            The customers of the page plus the first customer of the next
+	 *            page if any
+	 * @param next
+	 *            The URL of the page without cursor and size
+	 */
+	static ResponseEntity<?> page(List<Customer> customers, int pageSize, UriComponentsBuilder next) {
+
+		if (customers.isEmpty()) {
+			return noContent().build();
+		}
+
+		if (customers.size() <= pageSize) {
+			return ok(customers);
+		}
+
+		final List<Customer> content = customers.subList(0, pageSize);
+		final String link = next
+				.replaceQueryParam("after", PageCursor.encode(content.get(pageSize - 1).getId()))
+				.replaceQueryParam("size", pageSize)
+				.build().encode().toUriString();
+		return ok().header(LINK, String.format("<%s>; rel=\"next\"", link)).body(content);
+	}
+
+	/* The URL of a search, without cursor and size */
+	static UriComponentsBuilder searchUri(String email, String lastName, CustomerType customerType, String country,
+			String city, LocalDate bornAfter, LocalDate bornBefore, List<String> fields) {
+
+		final UriComponentsBuilder uri = UriComponentsBuilder.fromPath("/customers/search");
+		addIfSet(uri, "email", email);
+		addIfSet(uri, "lastName", lastName);
+		addIfSet(uri, "customerType", customerType);
+		addIfSet(uri, "address.country", country);
+		addIfSet(uri, "address.city", city);
+		addIfSet(uri, "bornAfter", bornAfter);
+		addIfSet(uri, "bornBefore", bornBefore);
+		addIfSet(uri, "fields", fields == null ? null : String.join(",", fields));
+		return uri;
+	}
+
+	private static void addIfSet(UriComponentsBuilder uri, String name, Object value) {
+		if (value != null) {
+			uri.queryParam(name, value);
+		}
+	}
+
+	/* The requested ids without duplicates, in request order */
+	static Set<ObjectId> distinctIds(List<ObjectId> ids, int max) {
+
+		final Set<ObjectId> distinct = new LinkedHashSet<>(ids);
+		if (distinct.size() > max) {
+			throw new CustomerServiceException(HttpStatus.BAD_REQUEST,
+					String.format("No more than %d ids can be requested at once.", max));
+		}
+
+		return distinct;
+	}
+
+	static CustomersByIds byIds(Set<ObjectId> requested, Map<ObjectId, Customer> found) {
+
+		final List<Customer> customers = new ArrayList<>(found.size());
+		final List<ObjectId> missing = new ArrayList<>();
+		for (ObjectId id : requested) {
+			final Customer customer = found.get(id);
+			if (customer == null) {
+				missing.add(id);
+			} else {
+				customers.add(customer);
+			}
+		}
+
+		return new CustomersByIds(customers, missing);
+	}
+
+	/* The customer properties of the given JSON fields, none for all of them */
+	static List<String> projection(List<String> fields) {
+		return fields == null ? Collections.emptyList()
+				: fields.stream().map(CustomerController::propertyOf).collect(Collectors.toList());
+	}
+
+	/* The customer property of a JSON field */
+	static String propertyOf(String field) {
+		final String property = PROJECTED_FIELDS.get(field.trim());
+		if (property == null) {
+			throw new CustomerServiceException(HttpStatus.BAD_REQUEST, String.format("Unknown field %s.", field));
+		}
+		return property;
+	}
+
+	/* The name of a name search, trimmed */
+	static String searchedName(String q) {
+
+		if (q == null || q.trim().isEmpty()) {
+			throw new CustomerServiceException(HttpStatus.BAD_REQUEST, "Searched name must not be empty.");
+		}
+
+		if (q.trim().length() < MIN_SEARCHED_NAME) {
+			throw new CustomerServiceException(HttpStatus.BAD_REQUEST,
+					String.format("Searched name must have at least %d characters.", MIN_SEARCHED_NAME));
+		}
+
+		return q.trim();
+	}
+
+	private int pageSize(Integer size) {
+
+		if (size == null) {
+			return Math.min(defaultPageSize, maxPageSize);
+		}
+
+		if (size < 1) {
+			throw new CustomerServiceException(HttpStatus.BAD_REQUEST, "Page size must be greater than zero.");
+		}
+
+		return Math.min(size, maxPageSize);
+	}
+
+	/* Saves and clears the chunk */
+	private List<BatchItemResult> bulkSave(List<Customer> chunk, List<Integer> chunkIndexes) {
+
+		final List<BulkSaveOutcome> outcomes = repo.bulkSave(chunk);
+		cache.invalidateAll(outcomes.stream().map(BulkSaveOutcome::getId).collect(Collectors.toList()));
+		final List<BatchItemResult> results = new ArrayList<>(outcomes.size());
+
+		for (int i = 0; i < outcomes.size(); i++) {
+			final BulkSaveOutcome outcome = outcomes.get(i);
+			results.add(new BatchItemResult(chunkIndexes.get(i), outcome.getId(), httpStatus(outcome).value(),
+					outcome.getError()));
+		}
+
+		chunk.clear();
+		chunkIndexes.clear();
+		return results;
+	}
+
+	static HttpStatus httpStatus(BulkSaveOutcome outcome) {
+
+		switch (outcome.getStatus()) {
+		case CREATED:
+			return HttpStatus.CREATED;
+		case UPDATED:
+			return HttpStatus.NO_CONTENT;
+		case DUPLICATE:
+			return HttpStatus.BAD_REQUEST;
+		default:
+			return HttpStatus.INTERNAL_SERVER_ERROR;
+		}
+	}
 }
@@ -0,0 +1,32 @@
+package customerservice.restapi;
+
+import java.util.List;
+
+import org.bson.types.ObjectId;
+
+import customerservice.domain.Customer;
+
+/**
+ * The result of a {@code GET /customers?ids=} request.
+ * <p>
+ * The customers found are in request order, the ids of the customers that do
+ * not exist are listed apart in request order too.
+ */
+public final class CustomersByIds {
+
+	private final List<Customer> customers;
+	private final List<ObjectId> missing;
+
+	CustomersByIds(List<Customer> customers, List<ObjectId> missing) {
+		this.customers = customers;
+		this.missing = missing;
+	}
+
+	public List<Customer> getCustomers() {
+		return customers;
+	}
+
+	public List<ObjectId> getMissing() {
+		return missing;
+	}
+}
@@ -0,0 +1,126 @@
+package customerservice.restapi;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+
+import customerservice.CustomerServiceException;
+
+/**
+ * Entity tags of customers, built from their version and the variant of the
+ * representation: {@code "<version>-<variant>"}.
+ * <p>
+ * The compact and the pretty printed JSON, Smile and CBOR bodies of a version
+ * are different bytes, each gets its own strong tag so a cache never serves
+ * one for another. The responses that depend on the Accept header say so with
+ * {@code Vary: Accept}. The compressed bodies are tagged with their coding
+ * too, {@code "<version>-<variant>-gzip"}, see
+ * {@link customerservice.undertow.CompressionConfiguration}, and match the
+ * tag of the identity body in an If-None-Match header.
+ */
+final class ETags {
+
+	private static final String ANY = "*";
+	private static final String WEAK_PREFIX = "W/";
+	private static final char VARIANT_SEPARATOR = '-';
+
+	/* The content-codings a compressed body is tagged with */
+	private static final List<String> CODINGS = Arrays.asList("gzip", "deflate");
+
+	static final String JSON = "json";
+	static final String PRETTY_JSON = "json-pretty";
+	static final String SMILE = "smile";
+	static final String CBOR = "cbor";
+
+	private static final MediaType APPLICATION_SMILE = MediaType
+			.valueOf(BinaryFormatsConfiguration.APPLICATION_SMILE_VALUE);
+
+	private ETags() {
+	}
+
+	/**
+	 * @return The strong entity tag of the given version and variant, null if
+	 *         the version is null
+	 */
+	static String of(Long version, String variant) {
+		return version == null ? null : "\"" + version + VARIANT_SEPARATOR + variant + "\"";
+	}
+
+	/**
+	 * @param binary
+	 *            The binary format requested, null for JSON
+	 * @param pretty
+	 *            true if pretty printed JSON is requested
+	 * @return The variant of the representation written for these choices
+	 */
+	static String variant(MediaType binary, boolean pretty) {
+		if (binary != null) {
+			return APPLICATION_SMILE.includes(binary) ? SMILE : CBOR;
+		}
+		return pretty ? PRETTY_JSON : JSON;
+	}
+
+	/**
+	 * Weak comparison of an If-None-Match header with an entity tag, the tags
+	 * of the compressed bodies included.
+	 * 
+	 * @return true if the header is present and matches the entity tag
+	 */
+	static boolean matches(String ifNoneMatch, String eTag) {
+
+		if (ifNoneMatch == null || eTag == null) {
+			return false;
+		}
+
+		for (String tag : ifNoneMatch.split(",")) {
+			tag = tag.trim();
+			if (tag.startsWith(WEAK_PREFIX)) {
+				tag = tag.substring(WEAK_PREFIX.length());
+			}
+			if (ANY.equals(tag) || eTag.equals(tag) || eTag.equals(withoutCoding(tag))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/* The tag of the identity body of a compressed one */
+	private static String withoutCoding(String tag) {
+		for (String coding : CODINGS) {
+			final String suffix = VARIANT_SEPARATOR + coding + "\"";
+			if (tag.endsWith(suffix)) {
+				return tag.substring(0, tag.length() - suffix.length()) + "\"";
+			}
+		}
+		return tag;
+	}
+
+	/**
+	 * Returns the version an If-Match header requires, whatever the variant
+	 * of its tag: all the variants of a version are the same customer.
+	 * 
+	 * @return The version or null if the header is absent or matches any
+	 *         version
+	 * @throws CustomerServiceException
+	 *             HTTP 412 if the header can't match the tag of any version
+	 */
+	static Long expectedVersion(String ifMatch) {
+
+		if (ifMatch == null || ANY.equals(ifMatch.trim())) {
+			return null;
+		}
+
+		final String tag = ifMatch.trim();
+		if (tag.length() > 2 && tag.startsWith("\"") && tag.endsWith("\"")) {
+			final int separator = tag.indexOf(VARIANT_SEPARATOR);
+			try {
+				return Long.valueOf(tag.substring(1, separator < 0 ? tag.length() - 1 : separator));
+			} catch (NumberFormatException e) {
+				// Not one of our tags, handled below
+			}
+		}
+		throw new CustomerServiceException(HttpStatus.PRECONDITION_FAILED, "If-Match does not match the customer.");
+	}
+}
@@ -0,0 +1,43 @@
+package customerservice.restapi;
+
+import static customerservice.restapi.CustomerController.APPLICATION_NDJSON_VALUE;
+
+import java.util.Collections;
+
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Reads and writes newline delimited JSON with WebFlux, one customer per line.
+ * <p>
+ * The default codecs only handle JSON arrays, these ones are registered for
+ * {@code application/x-ndjson} only.
+ */
+@Profile("reactive")
+@Configuration
+public class NdjsonCodecsConfiguration {
+
+	@Bean
+	public CodecCustomizer ndjsonCodecCustomizer(ObjectMapper mapper) {
+
+		final MediaType ndjson = MediaType.parseMediaType(APPLICATION_NDJSON_VALUE);
+
+		/* One customer per line, no indentation */
+		final Jackson2JsonEncoder encoder = new Jackson2JsonEncoder(
+				mapper.copy().disable(SerializationFeature.INDENT_OUTPUT), ndjson);
+		encoder.setStreamingMediaTypes(Collections.singletonList(ndjson));
+
+		return configurer -> {
+			configurer.customCodecs().encoder(encoder);
+			configurer.customCodecs().decoder(new Jackson2JsonDecoder(mapper, ndjson));
+		};
+	}
+}
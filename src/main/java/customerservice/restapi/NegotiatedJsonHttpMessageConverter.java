@@ -0,0 +1,84 @@
+package customerservice.restapi;
+
+import static org.springframework.http.HttpHeaders.ACCEPT;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Writes compact JSON unless the client asks for pretty printing with the
+ * {@code pretty} query parameter ({@code ?pretty} or {@code ?pretty=true}) or
+ * with a {@code pretty=true} parameter of its Accept header
+ * ({@code application/json;pretty=true}).
+ * <p>
+ * Replaces the Jackson converter configured by Spring Boot.
+ */
+@Profile("!reactive")
+@Component
+public class NegotiatedJsonHttpMessageConverter extends MappingJackson2HttpMessageConverter {
+
+	public static final String PRETTY = "pretty";
+
+	/* Null for the pretty converter itself */
+	private final NegotiatedJsonHttpMessageConverter pretty;
+
+	public NegotiatedJsonHttpMessageConverter(ObjectMapper mapper) {
+		this(mapper.copy().disable(SerializationFeature.INDENT_OUTPUT),
+				new NegotiatedJsonHttpMessageConverter(mapper.copy().enable(SerializationFeature.INDENT_OUTPUT), null));
+	}
+
+	private NegotiatedJsonHttpMessageConverter(ObjectMapper mapper, NegotiatedJsonHttpMessageConverter pretty) {
+		super(mapper);
+		this.pretty = pretty;
+	}
+
+	@Override
+	protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage) throws IOException {
+		if (pretty != null && isPrettyRequested()) {
+			pretty.writeInternal(object, type, outputMessage);
+		} else {
+			super.writeInternal(object, type, outputMessage);
+		}
+	}
+
+	/**
+	 * @return true if the current request asks for pretty printed JSON, false
+	 *         if there is no current request
+	 */
+	public static boolean isPrettyRequested() {
+
+		final RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+		if (!(attributes instanceof ServletRequestAttributes)) {
+			return false;
+		}
+
+		final HttpServletRequest request = ((ServletRequestAttributes) attributes).getRequest();
+		final String parameter = request.getParameter(PRETTY);
+		if (parameter != null) {
+			return parameter.isEmpty() || Boolean.parseBoolean(parameter);
+		}
+
+		try {
+			return MediaType.parseMediaTypes(request.getHeader(ACCEPT)).stream()
+					.anyMatch(accepted -> Boolean.parseBoolean(accepted.getParameter(PRETTY)));
+		} catch (InvalidMediaTypeException e) {
+			// Rejected later by content negotiation
+			return false;
+		}
+	}
+}
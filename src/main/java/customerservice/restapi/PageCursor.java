@@ -0,0 +1,38 @@
+package customerservice.restapi;
+
+import java.util.Base64;
+
+import org.bson.types.ObjectId;
+import org.springframework.http.HttpStatus;
+
+import customerservice.CustomerServiceException;
+
+/**
+ * Opaque token pointing at the last customer of a page.
+ * <p>
+ * The token is the URL safe Base64 encoding of the customer's
+ * {@code ObjectId}, clients must not rely on its format.
+ */
+final class PageCursor {
+
+	private static final int OBJECT_ID_LENGTH = 12;
+
+	private PageCursor() {
+	}
+
+	static String encode(ObjectId id) {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(id.toByteArray());
+	}
+
+	static ObjectId decode(String token) {
+		try {
+			final byte[] bytes = Base64.getUrlDecoder().decode(token);
+			if (bytes.length == OBJECT_ID_LENGTH) {
+				return new ObjectId(bytes);
+			}
+		} catch (IllegalArgumentException e) {
+			// Not Base64, handled below
+		}
+		throw new CustomerServiceException(HttpStatus.BAD_REQUEST, "Invalid page cursor.");
+	}
+}
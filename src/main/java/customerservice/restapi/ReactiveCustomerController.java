@@ -0,0 +1,442 @@
+package customerservice.restapi;
+
+import static customerservice.restapi.CustomerController.APPLICATION_NDJSON_VALUE;
+import static org.springframework.http.HttpHeaders.IF_MATCH;
+import static org.springframework.http.HttpHeaders.IF_NONE_MATCH;
+import static org.springframework.http.MediaType.APPLICATION_JSON_UTF8_VALUE;
+import static org.springframework.http.ResponseEntity.created;
+import static org.springframework.http.ResponseEntity.noContent;
+import static org.springframework.http.ResponseEntity.notFound;
+import static org.springframework.http.ResponseEntity.ok;
+import static org.springframework.http.ResponseEntity.status;
+import static org.springframework.web.bind.annotation.RequestMethod.DELETE;
+import static org.springframework.web.bind.annotation.RequestMethod.GET;
+import static org.springframework.web.bind.annotation.RequestMethod.POST;
+import static org.springframework.web.bind.annotation.RequestMethod.PUT;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Valid;
+import javax.validation.Validator;
+import javax.validation.constraints.NotNull;
+
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.core.codec.CodecException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.format.annotation.DateTimeFormat.ISO;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.ResponseEntity.BodyBuilder;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebInputException;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import customerservice.CustomerServiceException;
+import customerservice.domain.Customer;
+import customerservice.domain.CustomerChange;
+import customerservice.domain.enums.CustomerType;
+import customerservice.repository.mongodb.BulkSaveOutcome;
+import customerservice.repository.mongodb.CustomerSearch;
+import customerservice.repository.mongodb.ReactiveCustomerChanges;
+import customerservice.repository.mongodb.ReactiveCustomerRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non blocking counterpart of {@link CustomerController}, served by WebFlux
+ * when the {@code reactive} profile is active.
+ * <p>
+ * Routes, scopes and status codes are the same, requests are processed on the
+ * event loop threads and never wait for MongoDB. Scopes are checked by
+ * {@link customerservice.oauth2.OAuth2ReactiveResourceServerConfiguration}.
+ * <p>
+ * Customers are not cached, every read goes to MongoDB.
+ */
+@Profile("reactive")
+@RestController
+@RequestMapping(path = "/customers", produces = { APPLICATION_JSON_UTF8_VALUE })
+public class ReactiveCustomerController {
+
+	private static final String CUSTOMER_MODIFIED = "Customer has been modified, get its last version and try again.";
+
+	private ReactiveCustomerRepository repo;
+
+	private ReactiveCustomerChanges changes;
+
+	private Validator validator;
+
+	@Value("${customers.page.default-size:100}")
+	private int defaultPageSize;
+
+	@Value("${customers.page.max-size:1000}")
+	private int maxPageSize;
+
+	@Value("${customers.batch.chunk-size:500}")
+	private int batchChunkSize;
+
+	@Value("${customers.changes.max-wait-seconds:30}")
+	private int maxChangesWait;
+
+	@Value("${customers.changes.poll-ms:500}")
+	private long changesPollMillis;
+
+	public ReactiveCustomerController(ReactiveCustomerRepository repo, ReactiveCustomerChanges changes,
+			Validator validator) {
+		this.repo = repo;
+		this.changes = changes;
+		this.validator = validator;
+	}
+
+	/**
+	 * Query for all customers, one page at a time.
+	 *
+	 * @see CustomerController#allCustomers(List, String, Integer)
+	 */
+	@RequestMapping(method = GET)
+	public Mono<ResponseEntity<?>> allCustomers(@RequestParam(required = false) List<String> fields,
+			@RequestParam(required = false) String after,
+			@RequestParam(required = false) Integer size) {
+
+		final int pageSize = pageSize(size);
+		final UriComponentsBuilder next = UriComponentsBuilder.fromPath("/customers");
+		final Flux<Customer> customers;
+
+		if (fields != null) {
+			next.queryParam("fields", String.join(",", fields));
+			customers = repo.search(CustomerSearch.builder().build(), CustomerController.projection(fields),
+					after == null ? null : PageCursor.decode(after), pageSize + 1);
+		} else {
+			// Fetch one extra customer to know if there is a next page
+			final PageRequest page = PageRequest.of(0, pageSize + 1);
+			customers = after == null ? repo.findAllByOrderByIdAsc(page)
+					: repo.findByIdGreaterThanOrderByIdAsc(PageCursor.decode(after), page);
+		}
+
+		return customers.collectList().map(list -> CustomerController.page(list, pageSize, next));
+	}
+
+	/**
+	 * Query for the customers with the given ids at once, with a single
+	 * MongoDB query.
+	 *
+	 * @see CustomerController#customersByIds(List)
+	 */
+	@RequestMapping(method = GET, params = "ids")
+	public Mono<ResponseEntity<?>> customersByIds(@RequestParam List<ObjectId> ids) {
+
+		final Set<ObjectId> requested = CustomerController.distinctIds(ids, maxPageSize);
+
+		return repo.findAllById(requested)
+				.collectMap(Customer::getId)
+				.<ResponseEntity<?>> map(found -> ok(CustomerController.byIds(requested, found)));
+	}
+
+	/**
+	 * Search for customers, one page at a time.
+	 *
+	 * @see CustomerController#searchCustomers(String, String, CustomerType, String, String, LocalDate,
+	 *      LocalDate, List, String, Integer)
+	 */
+	@RequestMapping(method = GET, value = "/search")
+	public Mono<ResponseEntity<?>> searchCustomers(@RequestParam(required = false) String email,
+			@RequestParam(required = false) String lastName,
+			@RequestParam(required = false) CustomerType customerType,
+			@RequestParam(value = "address.country", required = false) String country,
+			@RequestParam(value = "address.city", required = false) String city,
+			@RequestParam(required = false) @DateTimeFormat(iso = ISO.DATE) LocalDate bornAfter,
+			@RequestParam(required = false) @DateTimeFormat(iso = ISO.DATE) LocalDate bornBefore,
+			@RequestParam(required = false) List<String> fields,
+			@RequestParam(required = false) String after,
+			@RequestParam(required = false) Integer size) {
+
+		final int pageSize = pageSize(size);
+		final CustomerSearch search = CustomerSearch.builder()
+				.withEmail(email)
+				.withLastName(lastName)
+				.withCustomerType(customerType)
+				.withCountry(country)
+				.withCity(city)
+				.withBirthDateBetween(bornAfter, bornBefore)
+				.build();
+		return repo.search(search, CustomerController.projection(fields), after == null ? null : PageCursor.decode(after), pageSize + 1)
+				.collectList()
+				.map(list -> CustomerController.page(list, pageSize, CustomerController.searchUri(email, lastName,
+						customerType, country, city, bornAfter, bornBefore, fields)));
+	}
+
+	/**
+	 * Search for customers by their names, partial or misspelled.
+	 *
+	 * @see CustomerController#nameSearchCustomers(String, Integer)
+	 */
+	@RequestMapping(method = GET, value = "/search/name")
+	public Mono<ResponseEntity<?>> nameSearchCustomers(@RequestParam(required = false) String q,
+			@RequestParam(required = false) Integer size) {
+
+		return repo.nameSearch(CustomerController.searchedName(q), pageSize(size))
+				.collectList()
+				.<ResponseEntity<?>> map(list -> list.isEmpty() ? noContent().build() : ok(list));
+	}
+
+	/**
+	 * Follow the changes of the customers, the wait is a sequence of polls
+	 * that holds no thread.
+	 *
+	 * @see CustomerController#customerChanges(Long, Integer, Integer)
+	 */
+	@RequestMapping(method = GET, value = "/changes")
+	public Mono<ResponseEntity<?>> customerChanges(@RequestParam(required = false) Long since,
+			@RequestParam(required = false) Integer size, @RequestParam(required = false) Integer wait) {
+
+		if (since == null) {
+			return changes.latest()
+					.map(latest -> ok(new CustomerChangesPage(Collections.emptyList(), latest)));
+		}
+
+		if (wait != null && wait < 0) {
+			return Mono.error(new CustomerServiceException(HttpStatus.BAD_REQUEST, "Wait must not be negative."));
+		}
+
+		if (changes.expired(since)) {
+			return Mono.error(new CustomerServiceException(HttpStatus.GONE,
+					"Changes are no longer recorded, read all the customers again then follow the changes from now."));
+		}
+
+		final int limit = pageSize(size);
+		final int seconds = wait == null ? maxChangesWait : Math.min(wait, maxChangesWait);
+
+		return changes.after(since, limit).<ResponseEntity<?>> flatMap(found -> !found.isEmpty() || seconds == 0
+				? Mono.just(changesPage(found))
+				: Flux.interval(Duration.ofMillis(changesPollMillis))
+						.concatMap(tick -> changes.after(since, limit))
+						.filter(next -> !next.isEmpty())
+						.next()
+						.map(ReactiveCustomerController::changesPage)
+						.timeout(Duration.ofSeconds(seconds), Mono.<ResponseEntity<?>> just(noContent().build())));
+	}
+
+	/**
+	 * Export all customers as newline delimited JSON, one customer per line.
+	 * <p>
+	 * Customers are written as MongoDB returns them, the cursor is only read
+	 * as fast as the client consumes the response.
+	 *
+	 * @see CustomerController#exportCustomers(javax.servlet.http.HttpServletResponse)
+	 */
+	@RequestMapping(method = GET, value = "/export", produces = { APPLICATION_NDJSON_VALUE })
+	public Flux<Customer> exportCustomers() {
+		return repo.findAll();
+	}
+
+	/**
+	 * Query for a customer with the given Id.
+	 *
+	 * @see CustomerController#oneCustomer(ObjectId, List, String)
+	 */
+	@RequestMapping(method = GET, value = "/{id}")
+	public Mono<ResponseEntity<?>> oneCustomer(@PathVariable ObjectId id,
+			@RequestParam(required = false) List<String> fields,
+			@RequestHeader(value = IF_NONE_MATCH, required = false) String ifNoneMatch) {
+
+		// A partial customer has no ETag
+		if (fields != null) {
+			return repo.findById(id, CustomerController.projection(fields))
+					.<ResponseEntity<?>> map(customer -> ok(customer))
+					.defaultIfEmpty(notFound().build());
+		}
+
+		return repo.findById(id)
+				.map(customer -> found(customer, ifNoneMatch))
+				.defaultIfEmpty(notFound().build());
+	}
+
+	/**
+	 * Create a new customer.
+	 *
+	 * @see CustomerController#addCustomer(Customer)
+	 */
+	@RequestMapping(method = POST, consumes = { APPLICATION_JSON_UTF8_VALUE })
+	public Mono<ResponseEntity<?>> addCustomer(@RequestBody @Valid Customer newCustomer) {
+
+		// A plain insert, MongoDB rejects it if the id is already taken
+		return repo.insert(newCustomer)
+				.onErrorMap(DuplicateKeyException.class, e -> CustomerController.duplicate(e,
+						"Customer already exists, to update an existing customer use PUT instead."))
+				.<ResponseEntity<?>> map(created -> {
+					final BodyBuilder response = created(URI.create(String.format("/customers/%s", created.getId())));
+					return withETag(response, created.getVersion()).build();
+				});
+	}
+
+	/**
+	 * Create or update many customers at once.
+	 * <p>
+	 * Customers are decoded one by one as the request body arrives, the valid
+	 * ones are written by chunks with one bulk write per chunk while the
+	 * following ones are still being read.
+	 *
+	 * @see CustomerController#addOrUpdateCustomers(javax.servlet.http.HttpServletRequest)
+	 */
+	@RequestMapping(method = POST, value = "/batch", consumes = { APPLICATION_JSON_UTF8_VALUE,
+			APPLICATION_NDJSON_VALUE })
+	public Mono<ResponseEntity<?>> addOrUpdateCustomers(@RequestBody Flux<Customer> customers) {
+
+		final AtomicInteger index = new AtomicInteger();
+
+		return customers
+				.map(customer -> new BatchItem(index.getAndIncrement(), customer, validator.validate(customer)))
+				.onErrorMap(e -> e instanceof CodecException || e instanceof ServerWebInputException,
+						e -> new CustomerServiceException(HttpStatus.BAD_REQUEST,
+								String.format("Malformed customer at index %d: %s", index.get(), originalMessage(e))))
+				.publish(items -> Flux.merge(
+						items.filter(BatchItem::isInvalid).map(BatchItem::toResult),
+						items.filter(item -> !item.isInvalid()).buffer(batchChunkSize).concatMap(this::bulkSave)))
+				.collectSortedList(Comparator.comparingInt(BatchItemResult::getIndex))
+				.<ResponseEntity<?>> map(results -> ok(results));
+	}
+
+	/**
+	 * Update an existing customer.
+	 *
+	 * @see CustomerController#updateCustomer(ObjectId, Customer, String)
+	 */
+	@RequestMapping(method = PUT, value = "/{id}", consumes = { APPLICATION_JSON_UTF8_VALUE })
+	public Mono<ResponseEntity<?>> updateCustomer(@PathVariable @NotNull ObjectId id,
+			@RequestBody @Valid Customer update, @RequestHeader(value = IF_MATCH, required = false) String ifMatch) {
+
+		final Long expectedVersion = ETags.expectedVersion(ifMatch);
+
+		return repo.replace(id, update, expectedVersion)
+				.onErrorMap(DuplicateKeyException.class,
+						e -> CustomerController.duplicate(e, "Customer conflicts with an existing customer."))
+				.<ResponseEntity<?>> map(version -> noContent().eTag(ETags.of(version, ETags.JSON)).build())
+				.switchIfEmpty(Mono.defer(() -> notReplaced(id, expectedVersion)));
+	}
+
+	/**
+	 * Delete a customer.
+	 *
+	 * @see CustomerController#deleteCustomer(ObjectId, String)
+	 */
+	@RequestMapping(method = DELETE, value = "/{id}")
+	public Mono<ResponseEntity<?>> deleteCustomer(@PathVariable @NotNull ObjectId id,
+			@RequestHeader(value = IF_MATCH, required = false) String ifMatch) {
+
+		final Long expectedVersion = ETags.expectedVersion(ifMatch);
+
+		return repo.delete(id, expectedVersion).<ResponseEntity<?>> flatMap(done -> done || expectedVersion == null
+				? Mono.just(noContent().build())
+				: Mono.error(new CustomerServiceException(HttpStatus.PRECONDITION_FAILED, CUSTOMER_MODIFIED)));
+	}
+
+	/* Only a failed conditional update needs a second look */
+	private Mono<ResponseEntity<?>> notReplaced(ObjectId id, Long expectedVersion) {
+
+		final Mono<Boolean> modified = expectedVersion == null ? Mono.just(false) : repo.existsById(id);
+
+		return modified.flatMap(exists -> Mono.error(exists
+				? new CustomerServiceException(HttpStatus.PRECONDITION_FAILED, CUSTOMER_MODIFIED)
+				: new CustomerServiceException(HttpStatus.BAD_REQUEST,
+						"Customer does not exist, to create a new customer use POST instead.")));
+	}
+
+	private static ResponseEntity<?> changesPage(List<CustomerChange> found) {
+		return found.isEmpty() ? noContent().build()
+				: ok(new CustomerChangesPage(found, found.get(found.size() - 1).getToken()));
+	}
+
+	private static ResponseEntity<?> found(Customer customer, String ifNoneMatch) {
+
+		final String eTag = ETags.of(customer.getVersion(), ETags.JSON);
+		if (ETags.matches(ifNoneMatch, eTag)) {
+			return status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+		}
+
+		return withETag(ok(), customer.getVersion()).body(customer);
+	}
+
+	/* Only JSON is served, the tags are the ones of the compact JSON of the servlet controller */
+	private static BodyBuilder withETag(BodyBuilder response, Long version) {
+		final String eTag = ETags.of(version, ETags.JSON);
+		return eTag == null ? response : response.eTag(eTag);
+	}
+
+	private static String originalMessage(Throwable e) {
+		final Throwable cause = NestedExceptionUtils.getMostSpecificCause(e);
+		return cause instanceof JsonProcessingException ? ((JsonProcessingException) cause).getOriginalMessage()
+				: cause.getMessage();
+	}
+
+	private int pageSize(Integer size) {
+
+		if (size == null) {
+			return Math.min(defaultPageSize, maxPageSize);
+		}
+
+		if (size < 1) {
+			throw new CustomerServiceException(HttpStatus.BAD_REQUEST, "Page size must be greater than zero.");
+		}
+
+		return Math.min(size, maxPageSize);
+	}
+
+	private Flux<BatchItemResult> bulkSave(List<BatchItem> chunk) {
+
+		return repo.bulkSave(chunk.stream().map(item -> item.customer).collect(Collectors.toList()))
+				.flatMapIterable(outcomes -> {
+					final List<BatchItemResult> results = new ArrayList<>(outcomes.size());
+					for (int i = 0; i < outcomes.size(); i++) {
+						final BulkSaveOutcome outcome = outcomes.get(i);
+						results.add(new BatchItemResult(chunk.get(i).index, outcome.getId(),
+								CustomerController.httpStatus(outcome).value(), outcome.getError()));
+					}
+					return results;
+				});
+	}
+
+	/* A customer of a batch with its position in the request */
+	private static final class BatchItem {
+
+		private final int index;
+		private final Customer customer;
+		private final Set<ConstraintViolation<Customer>> violations;
+
+		BatchItem(int index, Customer customer, Set<ConstraintViolation<Customer>> violations) {
+			this.index = index;
+			this.customer = customer;
+			this.violations = violations;
+		}
+
+		boolean isInvalid() {
+			return !violations.isEmpty();
+		}
+
+		BatchItemResult toResult() {
+			return new BatchItemResult(index, customer.getId(), HttpStatus.BAD_REQUEST.value(),
+					violations.stream().map(v -> v.getPropertyPath() + " " + v.getMessage())
+							.collect(Collectors.joining(", ")));
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package customerservice.tracing;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Scope;
+
+/**
+ * Spans of the controller handlers.
+ * <p>
+ * A {@code CustomerController.oneCustomer} span covers the handler method,
+ * the {@code @PreAuthorize} check and the MongoDB commands are its children.
+ * When the handler returns a body a {@code http.write-body} child span covers
+ * the serialization of the body by Jackson and its writing to the response.
+ * <p>
+ * An async handler, one returning a {@code DeferredResult}, is handled in two
+ * dispatches on two threads. The span is current on each of them in turn and
+ * ends with the second dispatch, once the result is written.
+ */
+@Profile("!reactive")
+@ControllerAdvice
+public class HandlerSpans implements AsyncHandlerInterceptor, ResponseBodyAdvice<Object> {
+
+	private static final String HANDLER_SPAN = HandlerSpans.class.getName() + ".HANDLER_SPAN";
+	private static final String HANDLER_SCOPE = HandlerSpans.class.getName() + ".HANDLER_SCOPE";
+	private static final String BODY_SPAN = HandlerSpans.class.getName() + ".BODY_SPAN";
+
+	private final Tracer tracer;
+
+	public HandlerSpans(Tracer tracer) {
+		this.tracer = tracer;
+	}
+
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+
+		if (handler instanceof HandlerMethod) {
+			// The async dispatch carries on with the span of the initial dispatch
+			Span span = (Span) request.getAttribute(HANDLER_SPAN);
+			if (span == null) {
+				final HandlerMethod method = (HandlerMethod) handler;
+				span = tracer.spanBuilder(method.getBeanType().getSimpleName() + "." + method.getMethod().getName())
+						.startSpan();
+				request.setAttribute(HANDLER_SPAN, span);
+			}
+			request.setAttribute(HANDLER_SCOPE, span.makeCurrent());
+		}
+
+		return true;
+	}
+
+	/* The thread is released before the result is ready, the span goes on without it */
+	@Override
+	public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+			Object handler) {
+		closeScope(request);
+	}
+
+	@Override
+	public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+		return true;
+	}
+
+	@Override
+	public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+			Class<? extends HttpMessageConverter<?>> selectedConverterType, ServerHttpRequest request,
+			ServerHttpResponse response) {
+
+		if (request instanceof ServletServerHttpRequest) {
+			final HttpServletRequest servletRequest = ((ServletServerHttpRequest) request).getServletRequest();
+			if (servletRequest.getAttribute(HANDLER_SPAN) != null) {
+				servletRequest.setAttribute(BODY_SPAN, tracer.spanBuilder("http.write-body")
+						.setAttribute("http.response_content_type", String.valueOf(selectedContentType))
+						.startSpan());
+			}
+		}
+
+		return body;
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+			Exception ex) {
+
+		final Span body = (Span) request.getAttribute(BODY_SPAN);
+		if (body != null) {
+			body.end();
+		}
+
+		closeScope(request);
+
+		final Span span = (Span) request.getAttribute(HANDLER_SPAN);
+		if (span != null) {
+			if (ex != null) {
+				span.recordException(ex);
+			}
+			span.end();
+		}
+	}
+
+	/* A scope must be closed on the thread that opened it */
+	private static void closeScope(HttpServletRequest request) {
+		final Scope scope = (Scope) request.getAttribute(HANDLER_SCOPE);
+		if (scope != null) {
+			scope.close();
+			request.removeAttribute(HANDLER_SCOPE);
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package customerservice.tracing;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Scope;
+
+/**
+ * Opens the server span of each request, the parent of all the other spans.
+ * <p>
+ * It runs before every other filter. Once the request is handled the span is
+ * named after the matched route, {@code GET /customers/{id}} for instance.
+ * <p>
+ * When the handler is async the span outlives the initial dispatch, it is
+ * current again during the async dispatch and ends with it.
+ */
+class RequestSpanFilter extends OncePerRequestFilter {
+
+	private static final String REQUEST_SPAN = RequestSpanFilter.class.getName() + ".REQUEST_SPAN";
+
+	private final Tracer tracer;
+
+	RequestSpanFilter(Tracer tracer) {
+		this.tracer = tracer;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+			throws ServletException, IOException {
+
+		Span span = (Span) request.getAttribute(REQUEST_SPAN);
+		if (span == null) {
+			span = tracer.spanBuilder(request.getMethod())
+					.setSpanKind(SpanKind.SERVER)
+					.setAttribute("http.method", request.getMethod())
+					.setAttribute("http.target", request.getRequestURI())
+					.startSpan();
+			request.setAttribute(REQUEST_SPAN, span);
+		}
+
+		try (Scope scope = span.makeCurrent()) {
+			chain.doFilter(request, response);
+		} catch (IOException | ServletException | RuntimeException e) {
+			span.recordException(e);
+			span.setStatus(StatusCode.ERROR);
+			throw e;
+		} finally {
+			// The response is written by the async dispatch
+			if (!isAsyncStarted(request)) {
+				end(span, request, response);
+			}
+		}
+	}
+
+	@Override
+	protected boolean shouldNotFilterAsyncDispatch() {
+		return false;
+	}
+
+	private static void end(Span span, HttpServletRequest request, HttpServletResponse response) {
+
+		final Object route = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+		if (route != null) {
+			span.updateName(request.getMethod() + " " + route);
+			span.setAttribute("http.route", route.toString());
+		}
+		span.setAttribute("http.status_code", response.getStatus());
+		if (response.getStatus() >= 500) {
+			span.setStatus(StatusCode.ERROR);
+		}
+		span.end();
+	}
+}
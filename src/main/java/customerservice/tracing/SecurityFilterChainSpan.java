@@ -0,0 +1,68 @@
+package customerservice.tracing;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.Scope;
+
+/**
+ * Wraps the Spring Security filter chain in a {@code security.filter-chain}
+ * span, the OAuth2 token check included.
+ * <p>
+ * The span ends when the security filters hand the request over to the rest
+ * of the application, or when they reject it. What follows runs in the
+ * context of the request span again, not inside the security span.
+ */
+class SecurityFilterChainSpan implements Filter {
+
+	private final Filter securityFilterChain;
+	private final Tracer tracer;
+
+	SecurityFilterChainSpan(Filter securityFilterChain, Tracer tracer) {
+		this.securityFilterChain = securityFilterChain;
+		this.tracer = tracer;
+	}
+
+	@Override
+	public void init(FilterConfig filterConfig) throws ServletException {
+		securityFilterChain.init(filterConfig);
+	}
+
+	@Override
+	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+			throws IOException, ServletException {
+
+		final Context parent = Context.current();
+		final Span span = tracer.spanBuilder("security.filter-chain").startSpan();
+		final AtomicBoolean passed = new AtomicBoolean();
+
+		try (Scope scope = span.makeCurrent()) {
+			securityFilterChain.doFilter(request, response, (securedRequest, securedResponse) -> {
+				passed.set(true);
+				span.end();
+				try (Scope restored = parent.makeCurrent()) {
+					chain.doFilter(securedRequest, securedResponse);
+				}
+			});
+		} finally {
+			if (!passed.get()) {
+				span.end();
+			}
+		}
+	}
+
+	@Override
+	public void destroy() {
+		securityFilterChain.destroy();
+	}
+}
@@ -0,0 +1,55 @@
+package customerservice.tracing;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.exporter.logging.otlp.OtlpJsonLoggingSpanExporter;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+import io.opentelemetry.sdk.trace.samplers.Sampler;
+
+/**
+ * OpenTelemetry tracer of the service, enabled with
+ * {@code customers.tracing.enabled}.
+ * <p>
+ * Spans are exported as OTLP JSON, one line per batch, to the
+ * {@code io.opentelemetry.exporter.logging.otlp} logger: they can be written
+ * to a file with the logging configuration and read by any OTLP collector.
+ * When tracing is disabled the tracer is a no-op and the instrumentation
+ * costs next to nothing.
+ */
+@Configuration
+public class TracingConfiguration {
+
+	static final String INSTRUMENTATION = "customerservice";
+
+	@Bean
+	public OpenTelemetry openTelemetry(@Value("${customers.tracing.enabled:false}") boolean enabled,
+			@Value("${customers.tracing.sample-ratio:1.0}") double sampleRatio) {
+
+		if (!enabled) {
+			return OpenTelemetry.noop();
+		}
+
+		final SdkTracerProvider tracerProvider = SdkTracerProvider.builder()
+				.setResource(Resource.getDefault()
+						.merge(Resource.create(Attributes.of(AttributeKey.stringKey("service.name"), "customer-service"))))
+				.setSampler(Sampler.parentBased(Sampler.traceIdRatioBased(sampleRatio)))
+				.addSpanProcessor(BatchSpanProcessor.builder(OtlpJsonLoggingSpanExporter.create()).build())
+				.build();
+
+		return OpenTelemetrySdk.builder().setTracerProvider(tracerProvider).build();
+	}
+
+	@Bean
+	public Tracer tracer(OpenTelemetry openTelemetry) {
+		return openTelemetry.getTracer(INSTRUMENTATION);
+	}
+}
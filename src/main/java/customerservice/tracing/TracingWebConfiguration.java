@@ -0,0 +1,108 @@
+package customerservice.tracing;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.Filter;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.Ordered;
+import org.springframework.security.oauth2.provider.token.ResourceServerTokenServices;
+import org.springframework.util.ClassUtils;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Scope;
+
+/**
+ * Traces the servlet requests through the filters, Spring Security, the
+ * controllers and the OAuth2 token checks.
+ * <p>
+ * The MongoDB commands are traced by the client, see
+ * {@link customerservice.repository.mongodb.MongoClientConfiguration}, and
+ * the {@code @PreAuthorize} checks by
+ * {@link customerservice.oauth2.OAuth2GlobalMethodSecurityConfiguration}.
+ */
+@Profile("!reactive")
+@Configuration
+public class TracingWebConfiguration implements WebMvcConfigurer {
+
+	static final String SECURITY_FILTER_CHAIN = "springSecurityFilterChain";
+
+	private final HandlerSpans handlerSpans;
+
+	public TracingWebConfiguration(HandlerSpans handlerSpans) {
+		this.handlerSpans = handlerSpans;
+	}
+
+	@Bean
+	public FilterRegistrationBean<RequestSpanFilter> requestSpanFilter(Tracer tracer) {
+		final FilterRegistrationBean<RequestSpanFilter> registration = new FilterRegistrationBean<>(
+				new RequestSpanFilter(tracer));
+		registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+		// The async dispatch of the long polls ends the span
+		registration.setDispatcherTypes(DispatcherType.REQUEST, DispatcherType.ASYNC);
+		return registration;
+	}
+
+	/* Static, bean post processors are created before the other beans */
+	@Bean
+	public static BeanPostProcessor securitySpansPostProcessor(ObjectProvider<Tracer> tracer) {
+		return new BeanPostProcessor() {
+
+			@Override
+			public Object postProcessAfterInitialization(Object bean, String beanName) {
+
+				if (SECURITY_FILTER_CHAIN.equals(beanName) && bean instanceof Filter) {
+					return new SecurityFilterChainSpan((Filter) bean, tracer.getObject());
+				}
+
+				if (bean instanceof ResourceServerTokenServices) {
+					return traced((ResourceServerTokenServices) bean, tracer.getObject());
+				}
+
+				return bean;
+			}
+		};
+	}
+
+	@Override
+	public void addInterceptors(InterceptorRegistry registry) {
+		registry.addInterceptor(handlerSpans);
+	}
+
+	/* The token checks of the resource server, the other methods are not traced */
+	static Object traced(ResourceServerTokenServices tokenServices, Tracer tracer) {
+
+		final ProxyFactory proxy = new ProxyFactory(ClassUtils.getAllInterfaces(tokenServices));
+		proxy.setTarget(tokenServices);
+		proxy.addAdvice((MethodInterceptor) invocation -> {
+
+			final String method = invocation.getMethod().getName();
+			if (!"loadAuthentication".equals(method) && !"readAccessToken".equals(method)) {
+				return invocation.proceed();
+			}
+
+			final Span span = tracer.spanBuilder("oauth2." + method).startSpan();
+			try (Scope scope = span.makeCurrent()) {
+				return invocation.proceed();
+			} catch (Throwable e) {
+				span.recordException(e);
+				span.setStatus(StatusCode.ERROR);
+				throw e;
+			} finally {
+				span.end();
+			}
+		});
+
+		return proxy.getProxy();
+	}
+}
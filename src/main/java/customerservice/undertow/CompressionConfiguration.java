@@ -0,0 +1,94 @@
+package customerservice.undertow;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.undertow.UndertowServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+
+import io.undertow.predicate.Predicate;
+import io.undertow.server.handlers.encoding.ContentEncodingProvider;
+import io.undertow.server.handlers.encoding.ContentEncodingRepository;
+import io.undertow.server.handlers.encoding.DeflateEncodingProvider;
+import io.undertow.server.handlers.encoding.EncodingHandler;
+import io.undertow.server.handlers.encoding.GzipEncodingProvider;
+import io.undertow.util.Headers;
+
+/**
+ * Compresses the responses with gzip or deflate, as accepted by the client,
+ * enabled with {@code customers.compression.enabled}.
+ * <p>
+ * Spring Boot's {@code server.compression} only compresses responses with a
+ * Content-Length, which leaves out the streamed lists and exports. Here a
+ * response without Content-Length is always compressed, the others only
+ * above {@code customers.compression.min-response-size} bytes.
+ * <p>
+ * A compressed body is other bytes than the identity one, its entity tag is
+ * given the name of the content-coding: {@code "3-json"} is sent as
+ * {@code "3-json-gzip"}.
+ */
+@Configuration
+@ConditionalOnProperty("customers.compression.enabled")
+public class CompressionConfiguration {
+
+	@Bean
+	public WebServerFactoryCustomizer<UndertowServletWebServerFactory> compressionCustomizer(
+			@Value("${customers.compression.min-response-size:2048}") long minResponseSize,
+			@Value("${customers.compression.mime-types:application/json,application/x-ndjson}") String[] mimeTypes) {
+
+		final List<MediaType> compressed = MediaType.parseMediaTypes(Arrays.asList(mimeTypes));
+
+		final Predicate compressible = exchange -> {
+
+			final String length = exchange.getResponseHeaders().getFirst(Headers.CONTENT_LENGTH);
+			if (length != null && Long.parseLong(length) < minResponseSize) {
+				return false;
+			}
+
+			final String contentType = exchange.getResponseHeaders().getFirst(Headers.CONTENT_TYPE);
+			if (contentType == null) {
+				return false;
+			}
+
+			try {
+				final MediaType mediaType = MediaType.parseMediaType(contentType);
+				return compressed.stream().anyMatch(mimeType -> mimeType.isCompatibleWith(mediaType));
+			} catch (InvalidMediaTypeException e) {
+				return false;
+			}
+		};
+
+		final ContentEncodingRepository encodings = new ContentEncodingRepository()
+				.addEncodingHandler("gzip", tagged("gzip", new GzipEncodingProvider()), 50, compressible)
+				.addEncodingHandler("deflate", tagged("deflate", new DeflateEncodingProvider()), 10, compressible);
+
+		return factory -> factory.addDeploymentInfoCustomizers(deploymentInfo -> deploymentInfo
+				.addInitialHandlerChainWrapper(handler -> new EncodingHandler(handler, encodings)));
+	}
+
+	/* Tags the body with the coding when the response is compressed, before its headers are sent */
+	private static ContentEncodingProvider tagged(String coding, ContentEncodingProvider provider) {
+		return () -> (factory, exchange) -> {
+			final String eTag = exchange.getResponseHeaders().getFirst(Headers.ETAG);
+			if (eTag != null) {
+				exchange.getResponseHeaders().put(Headers.ETAG, codedETag(eTag, coding));
+			}
+			return provider.getResponseWrapper().wrap(factory, exchange);
+		};
+	}
+
+	/**
+	 * @return The entity tag with the coding appended to its opaque part,
+	 *         weak or strong as the given one
+	 */
+	static String codedETag(String eTag, String coding) {
+		final int end = eTag.lastIndexOf('"');
+		return end <= 0 ? eTag : eTag.substring(0, end) + "-" + coding + eTag.substring(end);
+	}
+}
@@ -0,0 +1,47 @@
+package customerservice.undertow;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.undertow.UndertowServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Runs the servlet requests on virtual threads instead of the Undertow worker
+ * pool, enabled with {@code customers.virtual-threads.enabled}.
+ * <p>
+ * Controllers and repositories stay blocking, a request waiting for MongoDB
+ * only parks its virtual thread. The JDK must support virtual threads, the
+ * application does not start otherwise.
+ * <p>
+ * The number of requests waiting for MongoDB is then no longer bounded by the
+ * worker pool but by the MongoDB connection pool, see
+ * {@link customerservice.repository.mongodb.MongoClientConfiguration}.
+ */
+@Configuration
+@ConditionalOnProperty("customers.virtual-threads.enabled")
+public class VirtualThreadsConfiguration {
+
+	@Bean(destroyMethod = "shutdown")
+	public ExecutorService virtualThreadsExecutor() {
+		try {
+			// Looked up by reflection, the code is compiled for JDKs without virtual threads
+			final Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(
+					"customers.virtual-threads.enabled requires a JDK with virtual threads (21 or later).", e);
+		}
+	}
+
+	@Bean
+	public WebServerFactoryCustomizer<UndertowServletWebServerFactory> virtualThreadsCustomizer(
+			ExecutorService virtualThreadsExecutor) {
+		return factory -> factory
+				.addDeploymentInfoCustomizers(deploymentInfo -> deploymentInfo.setExecutor(virtualThreadsExecutor));
+	}
+}
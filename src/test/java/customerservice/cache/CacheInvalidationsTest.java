@@ -0,0 +1,71 @@
+package customerservice.cache;
+
+import static customerservice.domain.enums.CustomerType.PERSON;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Optional;
+
+import org.bson.types.ObjectId;
+import org.junit.Test;
+
+import customerservice.domain.Customer;
+import customerservice.domain.CustomerChange;
+import customerservice.domain.CustomerChange.Type;
+import customerservice.repository.mongodb.CustomerChanges;
+
+public class CacheInvalidationsTest {
+
+	private final CustomerChanges changes = mock(CustomerChanges.class);
+
+	private final CustomerCache cache = new CustomerCache(100, 60);
+
+	/* Not scheduled, polled by the tests */
+	private final CacheInvalidations invalidations = new CacheInvalidations(changes, cache, 0);
+
+	@Test
+	public void shouldInvalidateTheCustomersChangedElsewhere() {
+
+		// Given
+		final Customer changed = cached(Customer.ofType(PERSON).withId(ObjectId.get()).build());
+		final Customer unchanged = cached(Customer.ofType(PERSON).withId(ObjectId.get()).build());
+		when(changes.latest()).thenReturn(10L);
+		when(changes.after(10L, 1000)).thenReturn(
+				asList(CustomerChange.of(11L, changed.getId(), Type.UPDATED, 1L, Instant.now())));
+		when(changes.after(11L, 1000)).thenReturn(Collections.emptyList());
+
+		// When
+		invalidations.poll();
+		invalidations.poll();
+		invalidations.poll();
+
+		// Then
+		assertThat(cache.getAllPresent(asList(changed.getId(), unchanged.getId()))).containsOnlyKeys(unchanged.getId());
+	}
+
+	@Test
+	public void shouldClearTheCacheWhenTheChangesAreNoLongerRecorded() {
+
+		// Given
+		final Customer customer = cached(Customer.ofType(PERSON).withId(ObjectId.get()).build());
+		when(changes.latest()).thenReturn(10L);
+		when(changes.expired(10L)).thenReturn(true);
+
+		// When
+		invalidations.poll();
+		invalidations.poll();
+
+		// Then
+		assertThat(cache.getAllPresent(asList(customer.getId()))).isEmpty();
+	}
+
+	private Customer cached(Customer customer) {
+		cache.get(customer.getId(), id -> completedFuture(Optional.of(customer)));
+		return customer;
+	}
+}
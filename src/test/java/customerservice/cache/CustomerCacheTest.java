@@ -0,0 +1,101 @@
+package customerservice.cache;
+
+import static customerservice.domain.enums.CustomerType.PERSON;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bson.types.ObjectId;
+import org.junit.Test;
+
+import customerservice.domain.Customer;
+
+public class CustomerCacheTest {
+
+	private final CustomerCache cache = new CustomerCache(100, 60);
+
+	@Test
+	public void shouldLoadACustomerOnlyOnce() {
+
+		// Given
+		final ObjectId id = ObjectId.get();
+		final Customer customer = Customer.ofType(PERSON).withId(id).build();
+		final AtomicInteger loads = new AtomicInteger();
+
+		// When
+		cache.get(id, key -> {
+			loads.incrementAndGet();
+			return completedFuture(Optional.of(customer));
+		});
+		final Optional<Customer> cached = cache.get(id, key -> {
+			loads.incrementAndGet();
+			return completedFuture(Optional.of(customer));
+		});
+
+		// Then
+		assertThat(cached).containsSame(customer);
+		assertThat(loads).hasValue(1);
+		assertThat(cache.getHitCount()).isEqualTo(1);
+		assertThat(cache.getMissCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void shouldNotCacheAbsentCustomers() {
+
+		// Given
+		final ObjectId id = ObjectId.get();
+		final Customer customer = Customer.ofType(PERSON).withId(id).build();
+
+		// When
+		final Optional<Customer> absent = cache.get(id, key -> completedFuture(Optional.empty()));
+		final Optional<Customer> loaded = cache.get(id, key -> completedFuture(Optional.of(customer)));
+
+		// Then
+		assertThat(absent).isEmpty();
+		assertThat(loaded).containsSame(customer);
+	}
+
+	@Test
+	public void shouldReloadAnInvalidatedCustomer() {
+
+		// Given
+		final ObjectId id = ObjectId.get();
+		final Customer before = Customer.ofType(PERSON).withId(id).build();
+		final Customer after = Customer.from(before).withFirstName("Ken").build();
+		cache.get(id, key -> completedFuture(Optional.of(before)));
+
+		// When
+		cache.invalidateAll(Collections.singletonList(id));
+		final Optional<Customer> reloaded = cache.get(id, key -> completedFuture(Optional.of(after)));
+
+		// Then
+		assertThat(reloaded).containsSame(after);
+	}
+
+	@Test
+	public void shouldNotCacheACustomerLoadedBeforeItsInvalidation() {
+
+		// Given
+		final ObjectId id = ObjectId.get();
+		final Customer before = Customer.ofType(PERSON).withId(id).build();
+		final Customer after = Customer.from(before).withFirstName("Ken").build();
+		final CompletableFuture<Optional<Customer>> load = new CompletableFuture<>();
+		final CompletableFuture<Optional<Customer>> stale = CompletableFuture.supplyAsync(() -> cache.get(id, key -> load));
+
+		// When
+		while (cache.getSize() == 0) {
+			Thread.yield();
+		}
+		cache.invalidate(id);
+		load.complete(Optional.of(before));
+		final Optional<Customer> reloaded = cache.get(id, key -> completedFuture(Optional.of(after)));
+
+		// Then
+		assertThat(stale.join()).containsSame(before);
+		assertThat(reloaded).containsSame(after);
+	}
+}
@@ -0,0 +1,138 @@
+package customerservice.cache;
+
+import static customerservice.domain.enums.CustomerType.COMPANY;
+import static customerservice.domain.enums.CustomerType.PERSON;
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.types.ObjectId;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import customerservice.domain.Customer;
+import customerservice.repository.mongodb.CustomerRepository;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CustomerLoaderTest {
+
+	@Mock
+	private CustomerRepository repo;
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(3);
+
+	@After
+	public void shutdownExecutor() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void shouldLoadEachCustomerAloneWithoutBatchWindow() {
+
+		// Given
+		final ObjectId id = ObjectId.get();
+		final Customer customer = Customer.ofType(PERSON).withId(id).build();
+		when(repo.findById(id)).thenReturn(Optional.of(customer));
+
+		// When
+		final Optional<Customer> loaded = new CustomerLoader(repo, 0, 100).load(id).join();
+
+		// Then
+		assertThat(loaded).containsSame(customer);
+		verify(repo, never()).findAllById(any());
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void shouldLoadConcurrentMissesWithOneQuery() throws Exception {
+
+		// Given
+		final Customer ken = Customer.ofType(PERSON).withId(ObjectId.get()).build();
+		final Customer shadaloo = Customer.ofType(COMPANY).withId(ObjectId.get()).build();
+		final ObjectId missing = ObjectId.get();
+		when(repo.findAllById(any())).thenReturn(asList(ken, shadaloo));
+
+		// A long window, the batch is loaded as soon as it is full
+		final CustomerLoader loader = new CustomerLoader(repo, 10_000, 3);
+
+		// When
+		final Future<Optional<Customer>> first = executor.submit(() -> loader.load(ken.getId()).join());
+		final Future<Optional<Customer>> second = executor.submit(() -> loader.load(shadaloo.getId()).join());
+		final Future<Optional<Customer>> third = executor.submit(() -> loader.load(missing).join());
+
+		// Then
+		assertThat(first.get(5, TimeUnit.SECONDS)).containsSame(ken);
+		assertThat(second.get(5, TimeUnit.SECONDS)).containsSame(shadaloo);
+		assertThat(third.get(5, TimeUnit.SECONDS)).isEmpty();
+
+		final ArgumentCaptor<Iterable<ObjectId>> ids = ArgumentCaptor.forClass(Iterable.class);
+		verify(repo, times(1)).findAllById(ids.capture());
+		assertThat(ids.getValue()).containsExactlyInAnyOrder(ken.getId(), shadaloo.getId(), missing);
+		verify(repo, never()).findById(any(ObjectId.class));
+	}
+
+	@Test
+	public void shouldLoadAnIncompleteBatchWhenTheWindowElapses() {
+
+		// Given
+		final Customer ken = Customer.ofType(PERSON).withId(ObjectId.get()).build();
+		when(repo.findAllById(any())).thenReturn(asList(ken));
+
+		// When
+		final Optional<Customer> loaded = new CustomerLoader(repo, 10, 100).load(ken.getId()).join();
+
+		// Then
+		assertThat(loaded).containsSame(ken);
+	}
+
+	@Test
+	public void shouldShareOneLoadBetweenConcurrentMissesOfTheSameCustomer() throws Exception {
+
+		// Given
+		final Customer ken = Customer.ofType(PERSON).withId(ObjectId.get()).build();
+		when(repo.findAllById(any())).thenReturn(asList(ken));
+		final CustomerLoader loader = new CustomerLoader(repo, 200, 100);
+
+		// When
+		final List<Future<Optional<Customer>>> loads = executor.invokeAll(asList(
+				() -> loader.load(ken.getId()).join(),
+				() -> loader.load(ken.getId()).join()));
+
+		// Then
+		for (Future<Optional<Customer>> load : loads) {
+			assertThat(load.get()).containsSame(ken);
+		}
+		verify(repo, times(1)).findAllById(any());
+	}
+
+	@Test
+	public void shouldNotWaitForTheWindowToReturnTheLoad() {
+
+		// Given
+		final Customer ken = Customer.ofType(PERSON).withId(ObjectId.get()).build();
+		when(repo.findAllById(any())).thenReturn(asList(ken));
+
+		// When
+		final CompletableFuture<Optional<Customer>> load = new CustomerLoader(repo, 200, 100).load(ken.getId());
+
+		// Then
+		assertThat(load).isNotDone();
+		assertThat(load.join()).containsSame(ken);
+	}
+}
@@ -141,6 +141,19 @@ public class CustomerTest {
 		assertThat(customer.getEmail()).isEqualTo("kmasters@streetf.com");
 	}
 
+	@Test
+	public void shouldKeepTheVersionOfTheCopiedCustomer() {
+
+		// Given
+		final Customer customer = Customer.ofType(CustomerType.PERSON).withVersion(4L).build();
+
+		// When
+		final Customer copy = Customer.from(customer).withFirstName("Ken").build();
+
+		// Then
+		assertThat(copy.getVersion()).isEqualTo(4L);
+	}
+
 	@Test
 	public void shouldFailIfCustomerTypeIsNull() {
 		assertThatThrownBy(() -> Customer.ofType(null).build())
@@ -0,0 +1,100 @@
+package customerservice.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+import static org.springframework.http.HttpHeaders.ACCEPT;
+import static org.springframework.http.HttpMethod.GET;
+import static org.springframework.http.HttpStatus.NO_CONTENT;
+import static org.springframework.http.HttpStatus.OK;
+import static org.springframework.http.MediaType.APPLICATION_JSON_UTF8_VALUE;
+
+import javax.annotation.PostConstruct;
+import javax.net.ssl.SSLContext;
+
+import org.apache.http.client.HttpClient;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.conn.ssl.TrustSelfSignedStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.ssl.SSLContextBuilder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Scrapes the Prometheus endpoint on the management port, as Prometheus
+ * does, after a request to the API.
+ * <p>
+ * The management properties change between the Spring Boot milestones, this
+ * test fails if the port, the exposure of the endpoint or the histograms are
+ * no longer configured by them.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = RANDOM_PORT, properties = "management.server.port=0")
+public class PrometheusEndpointTest {
+
+	@Autowired
+	private TestRestTemplate restTemplate;
+
+	@Value("${local.management.port}")
+	private int managementPort;
+
+	/* The management port serves the same self signed certificate */
+	@PostConstruct
+	void init() throws Exception {
+
+		final SSLContext sslCtx = SSLContextBuilder.create().loadTrustMaterial(new TrustSelfSignedStrategy()).build();
+		final HttpClient httpClient = HttpClients.custom()
+				.setSSLSocketFactory(new SSLConnectionSocketFactory(sslCtx))
+				.build();
+
+		((HttpComponentsClientHttpRequestFactory) restTemplate.getRestTemplate().getRequestFactory())
+				.setHttpClient(httpClient);
+	}
+
+	@Test
+	public void shouldExposeTheRequestAndRepositoryTimersWithoutToken() {
+
+		// Given
+		final HttpHeaders headers = new HttpHeaders();
+		headers.add(ACCEPT, APPLICATION_JSON_UTF8_VALUE);
+		headers.add("Authorization", String.format("Bearer %s", requestToken()));
+		final ResponseEntity<String> customers = restTemplate.exchange("/customers?size=1", GET,
+				new HttpEntity<>(headers), String.class);
+
+		// When
+		final ResponseEntity<String> scrape = restTemplate
+				.getForEntity(String.format("https://localhost:%d/actuator/prometheus", managementPort), String.class);
+
+		// Then
+		assertThat(customers.getStatusCode()).isIn(OK, NO_CONTENT);
+		assertThat(scrape.getStatusCode()).isEqualTo(OK);
+		assertThat(scrape.getBody())
+				.contains("customers_repository_seconds_bucket{method=\"findAllByOrderByIdAsc\"")
+				.contains("http_server_requests_seconds_bucket{")
+				.contains("uri=\"/customers\"");
+	}
+
+	private String requestToken() {
+
+		final MultiValueMap<String, String> postParams = new LinkedMultiValueMap<>();
+		postParams.add("grant_type", "client_credentials");
+
+		final ResponseEntity<JsonNode> response = restTemplate.withBasicAuth("clientId", "clientSecret")
+				.postForEntity("/oauth/token", postParams, JsonNode.class);
+		assertThat(response.getStatusCode()).isEqualTo(OK);
+
+		return response.getBody().get("access_token").asText();
+	}
+}
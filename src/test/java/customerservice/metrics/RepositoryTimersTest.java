@@ -0,0 +1,60 @@
+package customerservice.metrics;
+
+import static customerservice.domain.enums.CustomerType.PERSON;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.when;
+
+import java.util.Optional;
+
+import org.bson.types.ObjectId;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import customerservice.domain.Customer;
+import customerservice.repository.mongodb.CustomerRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RepositoryTimersTest {
+
+	@Mock
+	private CustomerRepository repo;
+
+	private final MeterRegistry registry = new SimpleMeterRegistry();
+
+	@Test
+	public void shouldTimeEachCallWithTheTimerOfItsMethod() {
+
+		// Given
+		final ObjectId id = ObjectId.get();
+		final Customer customer = Customer.ofType(PERSON).withId(id).build();
+		when(repo.findById(id)).thenReturn(Optional.of(customer));
+		final CustomerRepository timed = RepositoryTimers.timed(repo, registry);
+
+		// When
+		final Optional<Customer> found = timed.findById(id);
+		timed.findById(id);
+
+		// Then
+		assertThat(found).containsSame(customer);
+		assertThat(registry.get(RepositoryTimers.TIMER).tag("method", "findById").timer().count()).isEqualTo(2);
+		assertThat(registry.get(RepositoryTimers.TIMER).tag("method", "deleteById").timer().count()).isZero();
+	}
+
+	@Test
+	public void shouldTimeFailedCalls() {
+
+		// Given
+		final ObjectId id = ObjectId.get();
+		when(repo.existsById(id)).thenThrow(new IllegalStateException("MongoDB is down"));
+		final CustomerRepository timed = RepositoryTimers.timed(repo, registry);
+
+		// Then
+		assertThatThrownBy(() -> timed.existsById(id)).isInstanceOf(IllegalStateException.class);
+		assertThat(registry.get(RepositoryTimers.TIMER).tag("method", "existsById").timer().count()).isEqualTo(1);
+	}
+}
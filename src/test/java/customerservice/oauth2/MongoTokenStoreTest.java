@@ -0,0 +1,89 @@
+package customerservice.oauth2;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Collections;
+import java.util.Date;
+
+import org.bson.Document;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import customerservice.CustomerService;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = CustomerService.class)
+@TestPropertySource(locations = "classpath:application.properties")
+public class MongoTokenStoreTest {
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+
+	@Before
+	public void cleanDB() {
+		mongoTemplate.dropCollection(MongoTokenStore.ACCESS_TOKENS);
+		mongoTemplate.dropCollection(MongoTokenStore.REFRESH_TOKENS);
+	}
+
+	@Test
+	public void shouldReadATokenStoredByAnotherInstance() {
+
+		// Given
+		final DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("token");
+		token.setExpiration(new Date(System.currentTimeMillis() + 60_000));
+		new MongoTokenStore(mongoTemplate, 10, 100).storeAccessToken(token, authentication());
+
+		// When
+		final MongoTokenStore other = new MongoTokenStore(mongoTemplate, 10, 100);
+
+		// Then
+		assertThat(other.readAccessToken("token").getExpiration()).isEqualTo(token.getExpiration());
+		assertThat(other.readAuthentication("token").getOAuth2Request().getScope()).containsExactly("read");
+		assertThat(other.readAccessToken("unknown")).isNull();
+	}
+
+	@Test
+	public void shouldForgetARemovedToken() {
+
+		// Given
+		final MongoTokenStore store = new MongoTokenStore(mongoTemplate, 10, 100);
+		final DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("token");
+		store.storeAccessToken(token, authentication());
+		assertThat(store.readAccessToken("token")).isNotNull();
+
+		// When
+		store.removeAccessToken(token);
+
+		// Then
+		assertThat(store.readAccessToken("token")).isNull();
+		assertThat(store.findTokensByClientId("clientId")).isEmpty();
+	}
+
+	@Test
+	public void shouldExpireTheTokensWithATtlIndex() {
+
+		// When
+		new MongoTokenStore(mongoTemplate, 10, 100);
+
+		// Then
+		assertThat(mongoTemplate.getCollection(MongoTokenStore.ACCESS_TOKENS).listIndexes())
+				.filteredOn(index -> index.get("key", Document.class).containsKey("expiresAt"))
+				.extracting(index -> ((Number) index.get("expireAfterSeconds")).longValue())
+				.containsExactly(0L);
+	}
+
+	private static OAuth2Authentication authentication() {
+		return new OAuth2Authentication(new OAuth2Request(Collections.emptyMap(), "clientId", Collections.emptyList(),
+				true, Collections.singleton("read"), Collections.emptySet(), null, Collections.emptySet(),
+				Collections.emptyMap()), null);
+	}
+}
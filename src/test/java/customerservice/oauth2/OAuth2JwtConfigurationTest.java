@@ -0,0 +1,85 @@
+package customerservice.oauth2;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
+
+public class OAuth2JwtConfigurationTest {
+
+	private final OAuth2JwtConfiguration configuration = new OAuth2JwtConfiguration();
+
+	private JwtAccessTokenConverter converter;
+
+	private TokenStore tokenStore;
+
+	@Before
+	public void createConverter() throws Exception {
+		converter = configuration.accessTokenConverter(new ClassPathResource("jwtstore.jks"), "azerty", "jwt",
+				"azerty");
+		converter.afterPropertiesSet();
+		tokenStore = configuration.tokenStore(converter);
+	}
+
+	@Test
+	public void shouldVerifyASignedTokenWithoutStoringIt() {
+
+		// Given
+		final OAuth2Request request = new OAuth2Request(Collections.emptyMap(), "clientId", Collections.emptyList(),
+				true, Collections.singleton("read"), Collections.emptySet(), null, Collections.emptySet(),
+				Collections.emptyMap());
+		final OAuth2AccessToken token = converter.enhance(new DefaultOAuth2AccessToken("opaque"),
+				new OAuth2Authentication(request, null));
+
+		// When
+		final OAuth2Authentication authentication = tokenStore.readAuthentication(token.getValue());
+
+		// Then
+		assertThat(authentication.getOAuth2Request().getClientId()).isEqualTo("clientId");
+		assertThat(authentication.getOAuth2Request().getScope()).containsExactly("read");
+	}
+
+	@Test
+	public void shouldRejectATamperedToken() {
+
+		// Given
+		final OAuth2Request request = new OAuth2Request(Collections.emptyMap(), "clientId", Collections.emptyList(),
+				true, Collections.singleton("read"), Collections.emptySet(), null, Collections.emptySet(),
+				Collections.emptyMap());
+		final String token = converter.enhance(new DefaultOAuth2AccessToken("opaque"),
+				new OAuth2Authentication(request, null)).getValue();
+		final String[] parts = token.split("\\.");
+		final String tampered = parts[0] + "." + parts[1] + "." + new StringBuilder(parts[2]).reverse();
+
+		// Then
+		assertThatThrownBy(() -> tokenStore.readAuthentication(tampered)).isInstanceOf(InvalidTokenException.class);
+	}
+
+	@Test
+	public void shouldRejectATokenSignedWithTheSslKey() throws Exception {
+
+		// Given
+		final JwtAccessTokenConverter sslConverter = configuration
+				.accessTokenConverter(new ClassPathResource("servicestore.jks"), "qwerty", "clientservice", "qwerty");
+		sslConverter.afterPropertiesSet();
+		final OAuth2Request request = new OAuth2Request(Collections.emptyMap(), "clientId", Collections.emptyList(),
+				true, Collections.singleton("read"), Collections.emptySet(), null, Collections.emptySet(),
+				Collections.emptyMap());
+		final String token = sslConverter.enhance(new DefaultOAuth2AccessToken("opaque"),
+				new OAuth2Authentication(request, null)).getValue();
+
+		// Then
+		assertThatThrownBy(() -> tokenStore.readAuthentication(token)).isInstanceOf(InvalidTokenException.class);
+	}
+}
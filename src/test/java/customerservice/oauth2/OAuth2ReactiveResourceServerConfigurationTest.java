@@ -0,0 +1,77 @@
+package customerservice.oauth2;
+
+import static org.springframework.http.HttpHeaders.AUTHORIZATION;
+
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
+import org.springframework.security.web.server.WebFilterChainProxy;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import reactor.core.publisher.Mono;
+
+public class OAuth2ReactiveResourceServerConfigurationTest {
+
+	private JwtAccessTokenConverter converter;
+
+	private WebTestClient client;
+
+	@Before
+	public void createClient() throws Exception {
+		converter = new OAuth2JwtConfiguration().accessTokenConverter(new ClassPathResource("jwtstore.jks"), "azerty",
+				"jwt", "azerty");
+		converter.afterPropertiesSet();
+		client = WebTestClient.bindToController(new Customers())
+				.webFilter(new WebFilterChainProxy(new OAuth2ReactiveResourceServerConfiguration()
+						.securityWebFilterChain(ServerHttpSecurity.http(), converter)))
+				.build();
+	}
+
+	@Test
+	public void shouldGrantHeadToTheReadScope() {
+
+		// When
+		// Then
+		client.head().uri("/customers/1").header(AUTHORIZATION, bearer("read")).exchange()
+				.expectStatus().isOk();
+		client.get().uri("/customers/1").header(AUTHORIZATION, bearer("read")).exchange()
+				.expectStatus().isOk();
+	}
+
+	@Test
+	public void shouldDenyTheWritesToTheReadScope() {
+
+		// When
+		// Then
+		client.delete().uri("/customers/1").header(AUTHORIZATION, bearer("read")).exchange()
+				.expectStatus().isForbidden();
+		client.delete().uri("/customers/1").header(AUTHORIZATION, bearer("write")).exchange()
+				.expectStatus().isOk();
+	}
+
+	private String bearer(String scope) {
+		final OAuth2Request request = new OAuth2Request(Collections.emptyMap(), "clientId", Collections.emptyList(),
+				true, Collections.singleton(scope), Collections.emptySet(), null, Collections.emptySet(),
+				Collections.emptyMap());
+		return "Bearer " + converter.enhance(new DefaultOAuth2AccessToken("opaque"),
+				new OAuth2Authentication(request, null)).getValue();
+	}
+
+	@RestController
+	static class Customers {
+
+		@RequestMapping("/customers/{id}")
+		public Mono<String> customer() {
+			return Mono.just("Ken");
+		}
+	}
+}
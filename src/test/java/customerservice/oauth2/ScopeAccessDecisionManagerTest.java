@@ -0,0 +1,93 @@
+package customerservice.oauth2;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collections;
+import java.util.Set;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.security.access.AccessDecisionManager;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.util.SimpleMethodInvocation;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ScopeAccessDecisionManagerTest {
+
+	@Mock
+	private AccessDecisionManager decisions;
+
+	@Test
+	public void shouldGrantAScopeWithoutEvaluatingTheExpression() throws Exception {
+
+		// Given
+		final ScopeAccessDecisionManager manager = new ScopeAccessDecisionManager(decisions);
+		final SimpleMethodInvocation invocation = invocation("write");
+
+		// When
+		manager.decide(authentication(Collections.singleton("read-write")), invocation, Collections.emptyList());
+
+		// Then
+		verify(decisions, never()).decide(any(), any(), any());
+	}
+
+	@Test
+	public void shouldEvaluateTheExpressionWhenNoScopeMatches() throws Exception {
+
+		// Given
+		final ScopeAccessDecisionManager manager = new ScopeAccessDecisionManager(decisions);
+		final SimpleMethodInvocation invocation = invocation("write");
+		final OAuth2Authentication authentication = authentication(Collections.singleton("read"));
+		doThrow(new AccessDeniedException("insufficient_scope")).when(decisions).decide(authentication, invocation,
+				Collections.emptyList());
+
+		// Then
+		assertThatThrownBy(() -> manager.decide(authentication, invocation, Collections.emptyList()))
+				.isInstanceOf(AccessDeniedException.class);
+	}
+
+	@Test
+	public void shouldEvaluateTheOtherExpressions() throws Exception {
+
+		// Given
+		final ScopeAccessDecisionManager manager = new ScopeAccessDecisionManager(decisions);
+		final SimpleMethodInvocation invocation = invocation("admin");
+		final OAuth2Authentication authentication = authentication(Collections.singleton("read-write"));
+
+		// When
+		manager.decide(authentication, invocation, Collections.emptyList());
+
+		// Then
+		verify(decisions).decide(authentication, invocation, Collections.emptyList());
+	}
+
+	private static SimpleMethodInvocation invocation(String method) throws NoSuchMethodException {
+		final Resource resource = new Resource();
+		return new SimpleMethodInvocation(resource, Resource.class.getMethod(method));
+	}
+
+	private static OAuth2Authentication authentication(Set<String> scopes) {
+		return new OAuth2Authentication(new OAuth2Request(Collections.emptyMap(), "clientId", Collections.emptyList(),
+				true, scopes, Collections.emptySet(), null, Collections.emptySet(), Collections.emptyMap()), null);
+	}
+
+	public static class Resource {
+
+		@PreAuthorize("#oauth2.hasAnyScope('write','read-write')")
+		public void write() {
+		}
+
+		@PreAuthorize("#oauth2.hasAnyScope('write') and #oauth2.clientHasRole('ROLE_ADMIN')")
+		public void admin() {
+		}
+	}
+}
@@ -0,0 +1,117 @@
+package customerservice.repository.mongodb;
+
+import static customerservice.domain.enums.CustomerType.PERSON;
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.bson.BsonTimestamp;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import customerservice.CustomerService;
+import customerservice.domain.Customer;
+import customerservice.domain.CustomerChange;
+import customerservice.domain.CustomerChange.Type;
+
+/**
+ * The changes are readable once their second is over, settle-ms is 0.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = CustomerService.class)
+@TestPropertySource(locations = "classpath:application.properties", properties = "customers.changes.settle-ms=0")
+public class CustomerChangesTest {
+
+	@Autowired
+	private CustomerChanges changes;
+
+	@Autowired
+	private CustomerRepository repo;
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+
+	@Before
+	public void cleanDB() {
+		repo.deleteAll();
+		mongoTemplate.remove(new Query(), CustomerChangeDocuments.TOMBSTONES);
+	}
+
+	@Test
+	public void shouldReadTheChangesWrittenWithTheCustomers() throws Exception {
+
+		// Given
+		final long since = changes.latest();
+		final Customer created = repo.insert(Customer.ofType(PERSON).withLastName("Masters").build());
+		final Customer updated = repo.insert(Customer.ofType(PERSON).withLastName("Hoshi").build());
+		repo.replace(updated.getId(), Customer.from(updated).withFirstName("Ryu").build(), null);
+		final Customer deleted = repo.insert(Customer.ofType(PERSON).withLastName("Xiang").build());
+		repo.delete(deleted.getId(), null);
+		final List<BulkSaveOutcome> batch = repo.bulkSave(asList(Customer.ofType(PERSON).build()));
+		awaitTheNextSecond();
+
+		// When
+		final List<CustomerChange> found = changes.after(since, 10);
+
+		// Then
+		assertThat(found).extracting(CustomerChange::getCustomerId, CustomerChange::getType)
+				.containsExactly(tuple(created.getId(), Type.CREATED), tuple(updated.getId(), Type.UPDATED),
+						tuple(deleted.getId(), Type.DELETED), tuple(batch.get(0).getId(), Type.CREATED));
+		assertThat(found).extracting(CustomerChange::getToken).isSorted();
+		assertThat(changes.after(found.get(1).getToken(), 10)).extracting(CustomerChange::getCustomerId)
+				.containsExactly(deleted.getId(), batch.get(0).getId());
+		assertThat(changes.after(since, 2)).hasSize(2);
+	}
+
+	@Test
+	public void shouldNotReadAChangeWhoseSecondIsNotOver() {
+
+		// Given
+		final long since = changes.latest();
+
+		// When
+		repo.insert(Customer.ofType(PERSON).build());
+
+		// Then
+		assertThat(changes.after(since, 10)).isEmpty();
+	}
+
+	@Test
+	public void shouldFollowTheChangesFromNow() throws Exception {
+
+		// Given
+		repo.insert(Customer.ofType(PERSON).build());
+		awaitTheNextSecond();
+
+		// When
+		final long latest = changes.latest();
+
+		// Then
+		assertThat(changes.after(latest, 10)).isEmpty();
+		assertThat(changes.expired(latest)).isFalse();
+	}
+
+	@Test
+	public void shouldTellWhenTheChangesAreNoLongerRecorded() {
+
+		// When
+		// Then
+		final int old = (int) Instant.now().minusSeconds(73 * 3600).getEpochSecond();
+		assertThat(changes.expired(new BsonTimestamp(old, 0).getValue())).isTrue();
+		assertThat(changes.expired(new BsonTimestamp(old + 2 * 3600, 0).getValue())).isFalse();
+	}
+
+	private static void awaitTheNextSecond() throws InterruptedException {
+		Thread.sleep(1000 - System.currentTimeMillis() % 1000 + 50);
+	}
+}
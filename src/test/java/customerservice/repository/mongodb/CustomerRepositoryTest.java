@@ -2,12 +2,30 @@ package customerservice.repository.mongodb;
 
 import static customerservice.domain.enums.CustomerType.COMPANY;
 import static customerservice.domain.enums.CustomerType.PERSON;
+import static java.util.Arrays.asList;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
@@ -15,6 +33,7 @@ import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import customerservice.CustomerService;
 import customerservice.domain.Address;
 import customerservice.domain.Customer;
+import customerservice.repository.mongodb.BulkSaveOutcome.Status;
 import customerservice.repository.mongodb.CustomerRepository;
 
 @RunWith(SpringJUnit4ClassRunner.class)
@@ -25,6 +44,12 @@ public class CustomerRepositoryTest {
 	@Autowired
 	private CustomerRepository repo;
 
+	@Autowired
+	private MongoTemplate mongoTemplate;
+
+	@Autowired
+	private NameGramsBackfill backfill;
+
 	/**
 	 * Class level @DirtiesContext(classMode=ClassMode.BEFORE_EACH_TEST_METHOD)
 	 * annotation can be used instead of this method to reset the context for
@@ -175,4 +200,401 @@ public class CustomerRepositoryTest {
 		assertThat(customers).isNotNull();
 		assertThat(customers.iterator()).hasSize(0);
 	}
+
+	@Test
+	public void shouldReturnCustomersPageByPage() {
+
+		// Given
+		for (int i = 0; i < 5; i++) {
+			repo.save(Customer.ofType(PERSON).withLastName("Masters" + i).build());
+		}
+
+		// When
+		final List<Customer> firstPage = repo.findAllByOrderByIdAsc(PageRequest.of(0, 3));
+		final List<Customer> secondPage = repo.findByIdGreaterThanOrderByIdAsc(firstPage.get(2).getId(),
+				PageRequest.of(0, 3));
+
+		// Then
+		assertThat(firstPage).extracting(Customer::getLastName).containsExactly("Masters0", "Masters1", "Masters2");
+		assertThat(secondPage).extracting(Customer::getLastName).containsExactly("Masters3", "Masters4");
+	}
+
+	@Test
+	public void shouldCreateAndReplaceCustomersInBulk() {
+
+		// Given
+		final Customer existing = repo.save(Customer.ofType(PERSON).withLastName("Masters").build());
+		final Customer update = Customer.from(existing).withLastName("Shadaloo").build();
+		final Customer newCustomer = Customer.ofType(COMPANY).withLastName("Bison").build();
+
+		// When
+		final List<BulkSaveOutcome> outcomes = repo.bulkSave(asList(update, newCustomer));
+
+		// Then
+		assertThat(outcomes).extracting(BulkSaveOutcome::getStatus).containsExactly(Status.UPDATED, Status.CREATED);
+		assertThat(outcomes.get(0).getId()).isEqualTo(existing.getId());
+		assertThat(repo.findById(existing.getId()).get().getLastName()).isEqualTo("Shadaloo");
+		assertThat(repo.findById(existing.getId()).get().getVersion()).isEqualTo(1L);
+		assertThat(repo.findById(outcomes.get(1).getId()).get().getLastName()).isEqualTo("Bison");
+		assertThat(repo.findById(outcomes.get(1).getId()).get().getVersion()).isEqualTo(0L);
+		assertThat(repo.count()).isEqualTo(2);
+	}
+
+	@Test
+	public void shouldStartTheCustomersUpsertedInBulkAtVersion0() {
+
+		// Given
+		final Customer upserted = Customer.ofType(PERSON).withId(ObjectId.get()).withLastName("Masters").build();
+		final Customer inserted = Customer.ofType(PERSON).withLastName("Hoshi").build();
+
+		// When
+		final List<BulkSaveOutcome> outcomes = repo.bulkSave(asList(upserted, inserted));
+
+		// Then
+		assertThat(outcomes).extracting(BulkSaveOutcome::getStatus).containsExactly(Status.CREATED, Status.CREATED);
+		assertThat(repo.findById(upserted.getId()).get().getVersion()).isEqualTo(0L);
+		assertThat(repo.findById(upserted.getId()).get().getLastName()).isEqualTo("Masters");
+		assertThat(repo.findById(outcomes.get(1).getId()).get().getVersion()).isEqualTo(0L);
+	}
+
+	@Test
+	public void shouldReportAFailedReplacementInBulk() {
+
+		// Given
+		repo.save(Customer.ofType(PERSON).withEmail("kenm@email.com").build());
+		final Customer existing = repo.save(Customer.ofType(PERSON).withEmail("ryu@email.com").build());
+		final Customer duplicate = Customer.from(existing).withEmail("kenm@email.com").build();
+
+		// When
+		final List<BulkSaveOutcome> outcomes = repo.bulkSave(asList(duplicate));
+
+		// Then
+		assertThat(outcomes).extracting(BulkSaveOutcome::getStatus).containsExactly(Status.DUPLICATE);
+		assertThat(repo.findById(existing.getId()).get().getEmail()).isEqualTo("ryu@email.com");
+	}
+
+	@Test
+	public void shouldReplaceACustomerKeepingItsId() {
+
+		// Given
+		final Customer saved = repo.save(Customer.ofType(PERSON)
+				.withFirstName("Ken")
+				.withLastName("Masters")
+				.withEmail("kenm@email.com")
+				.build());
+		final Customer replacement = Customer.ofType(PERSON)
+				.withId(ObjectId.get())
+				.withFirstName("Ryu")
+				.build();
+
+		// When
+		final Optional<Long> version = repo.replace(saved.getId(), replacement, null);
+
+		// Then
+		final Customer retrieved = repo.findById(saved.getId()).get();
+		assertThat(version).contains(1L);
+		assertThat(retrieved.getVersion()).isEqualTo(1L);
+		assertThat(retrieved.getFirstName()).isEqualTo("Ryu");
+		assertThat(retrieved.getEmail()).isNull();
+		assertThat(repo.count()).isEqualTo(1);
+	}
+
+	@Test
+	public void shouldNotReplaceAMissingCustomer() {
+
+		// When
+		final Optional<Long> version = repo.replace(ObjectId.get(), Customer.ofType(PERSON).build(), null);
+
+		// Then
+		assertThat(version).isEmpty();
+		assertThat(repo.count()).isZero();
+	}
+
+	@Test(expected = DuplicateKeyException.class)
+	public void shouldNotInsertACustomerTwice() {
+
+		// Given
+		final Customer saved = repo.insert(Customer.ofType(PERSON).build());
+
+		// When
+		repo.insert(Customer.ofType(COMPANY).withId(saved.getId()).build());
+	}
+
+	@Test
+	public void shouldReplaceACustomerOnlyIfItsVersionMatches() {
+
+		// Given
+		final Customer saved = repo.insert(Customer.ofType(PERSON).withFirstName("Ken").build());
+
+		// When
+		final Optional<Long> stale = repo.replace(saved.getId(), Customer.ofType(PERSON).build(), 5L);
+		final Optional<Long> current = repo.replace(saved.getId(), Customer.ofType(PERSON).withFirstName("Ryu").build(),
+				saved.getVersion());
+
+		// Then
+		assertThat(saved.getVersion()).isEqualTo(0L);
+		assertThat(stale).isEmpty();
+		assertThat(current).contains(1L);
+		assertThat(repo.findById(saved.getId()).get().getFirstName()).isEqualTo("Ryu");
+	}
+
+	@Test
+	public void shouldDeleteACustomerOnlyIfItsVersionMatches() {
+
+		// Given
+		final Customer saved = repo.insert(Customer.ofType(PERSON).build());
+
+		// When
+		final boolean stale = repo.delete(saved.getId(), 5L);
+		final boolean current = repo.delete(saved.getId(), saved.getVersion());
+
+		// Then
+		assertThat(stale).isFalse();
+		assertThat(current).isTrue();
+		assertThat(repo.existsById(saved.getId())).isFalse();
+	}
+
+	@Test
+	public void shouldOnlyLeaveATombstoneOfADeletedCustomer() {
+
+		// Given
+		final Customer saved = repo.insert(Customer.ofType(PERSON).build());
+		mongoTemplate.remove(new Query(), CustomerChangeDocuments.TOMBSTONES);
+
+		// When
+		final boolean unknown = repo.delete(ObjectId.get(), null);
+		final boolean stale = repo.delete(saved.getId(), 5L);
+		final boolean current = repo.delete(saved.getId(), null);
+
+		// Then
+		assertThat(unknown).isFalse();
+		assertThat(stale).isFalse();
+		assertThat(current).isTrue();
+		assertThat(mongoTemplate.find(new Query(), Document.class, CustomerChangeDocuments.TOMBSTONES))
+				.extracting(tombstone -> tombstone.get("customerId"))
+				.containsExactly(saved.getId());
+	}
+
+	@Test
+	public void shouldNotInsertTwoCustomersWithTheSameEmail() {
+
+		// Given
+		repo.insert(Customer.ofType(PERSON).build());
+		repo.insert(Customer.ofType(COMPANY).build());
+		repo.insert(Customer.ofType(PERSON).withEmail("kenm@email.com").build());
+
+		// Then
+		assertThatThrownBy(() -> repo.insert(Customer.ofType(COMPANY).withEmail("kenm@email.com").build()))
+				.isInstanceOf(DuplicateKeyException.class)
+				.hasMessageContaining(String.format("index: %s ", Customer.EMAIL_INDEX));
+		assertThat(repo.findByEmail("kenm@email.com").get().getCustomerType()).isEqualTo(PERSON);
+	}
+
+	@Test
+	public void shouldSearchCustomersAndReturnOnlyTheGivenFields() {
+
+		// Given
+		final Address shadaloo = Address.ofCountry("Shadaloo").withCity("Shadaloo City").build();
+		final Customer ken = repo.insert(Customer.ofType(PERSON).withFirstName("Ken").withLastName("Masters")
+				.withBirthDate(LocalDate.of(1990, Month.MARCH, 16)).withAddress(shadaloo).build());
+		repo.insert(Customer.ofType(PERSON).withFirstName("Ryu").withLastName("Hoshi")
+				.withBirthDate(LocalDate.of(1985, Month.JULY, 21)).withAddress(shadaloo).build());
+		repo.insert(Customer.ofType(COMPANY).withLastName("Masters").build());
+
+		// When
+		final List<Customer> found = repo.search(CustomerSearch.builder()
+				.withCustomerType(PERSON)
+				.withCountry("Shadaloo")
+				.withBirthDateBetween(LocalDate.of(1990, Month.JANUARY, 1), null)
+				.build(), asList("firstName"), null, 10);
+
+		// Then
+		assertThat(found).hasSize(1);
+		assertThat(found.get(0).getId()).isEqualTo(ken.getId());
+		assertThat(found.get(0).getFirstName()).isEqualTo("Ken");
+		assertThat(found.get(0).getLastName()).isNull();
+		assertThat(found.get(0).getPhones()).isNull();
+	}
+
+	@Test
+	public void shouldFindANameByItsBeginning() {
+
+		// Given
+		final Customer ken = repo.insert(Customer.ofType(PERSON).withFirstName("Ken").withLastName("Masters").build());
+		repo.insert(Customer.ofType(PERSON).withFirstName("Ryu").withLastName("Hoshi").build());
+		repo.insert(Customer.ofType(PERSON).withFirstName("Chun-Li").withLastName("Xiang").build());
+
+		// When
+		final List<Customer> found = repo.nameSearch("MAS", 10);
+
+		// Then
+		assertThat(found).extracting(Customer::getId).containsExactly(ken.getId());
+	}
+
+	@Test
+	public void shouldNotSearchANameByItsPaddedGramsOnly() {
+
+		// Given
+		repo.insert(Customer.ofType(PERSON).withFirstName("Ken").withLastName("Masters").build());
+
+		// When
+		final List<Customer> found = repo.nameSearch("K M", 10);
+
+		// Then
+		assertThat(found).isEmpty();
+	}
+
+	@Test
+	public void shouldFindACustomerWrittenWithoutGramsOnceBackfilled() {
+
+		// Given
+		final ObjectId id = ObjectId.get();
+		mongoTemplate.getCollection(mongoTemplate.getCollectionName(Customer.class))
+				.insertOne(new Document("_id", id).append("customerType", "PERSON").append("firstName", "Ken")
+						.append("lastName", "Masters").append("version", 0L));
+
+		// When
+		final long backfilled = backfill.backfill();
+
+		// Then
+		assertThat(backfilled).isEqualTo(1L);
+		assertThat(repo.nameSearch("Masters", 10)).extracting(Customer::getId).containsExactly(id);
+		assertThat(backfill.backfill()).isEqualTo(0L);
+	}
+
+	@Test
+	public void shouldRankTheClosestNamesFirstInAMisspelledNameSearch() {
+
+		// Given
+		final Customer closest = repo.insert(Customer.ofType(PERSON).withFirstName("Ken").withLastName("Masters")
+				.build());
+		final Customer close = repo.insert(Customer.ofType(PERSON).withFirstName("Kenny").withLastName("Mars").build());
+		repo.insert(Customer.ofType(PERSON).withFirstName("Ryu").withLastName("Hoshi").build());
+
+		// When
+		final List<Customer> found = repo.nameSearch("ken mastres", 10);
+
+		// Then
+		assertThat(found).extracting(Customer::getId).containsExactly(closest.getId(), close.getId());
+		assertThat(found.get(0).getLastName()).isEqualTo("Masters");
+	}
+
+	@Test
+	public void shouldFindAReplacedNameByItsNewGrams() {
+
+		// Given
+		final Customer ken = repo.insert(Customer.ofType(PERSON).withFirstName("Ken").withLastName("Masters").build());
+
+		// When
+		repo.replace(ken.getId(), Customer.from(ken).withLastName("Hoshi").build(), null);
+
+		// Then
+		assertThat(repo.nameSearch("masters", 10)).isEmpty();
+		assertThat(repo.nameSearch("hoshi", 10)).extracting(Customer::getId).containsExactly(ken.getId());
+	}
+
+	@Test
+	public void shouldNotScanTheCollectionToSearch() {
+
+		// Given
+		final ObjectId after = ObjectId.get();
+		final List<Query> queries = asList(
+				CustomerDocuments.byIdQuery(after, asList("firstName")),
+				searchQuery(CustomerSearch.builder().withLastName("Masters").build(), after),
+				searchQuery(CustomerSearch.builder().withCountry("Shadaloo").build(), null),
+				searchQuery(CustomerSearch.builder()
+						.withBirthDateBetween(LocalDate.of(1990, Month.JANUARY, 1), LocalDate.of(2000, Month.JANUARY, 1))
+						.build(), after));
+
+		// Queries whose filter is an equality on the prefix of an index ending with the id
+		final List<Query> sortedByIndex = asList(
+				searchQuery(CustomerSearch.builder().withEmail("kenm@email.com").build(), after),
+				searchQuery(CustomerSearch.builder().withCustomerType(PERSON).build(), after),
+				searchQuery(CustomerSearch.builder().withCountry("Shadaloo").withCity("Shadaloo City").build(), after));
+
+		// When
+		// Then
+		for (Query query : queries) {
+			assertThat(winningPlan(query)).as("Plan of %s", query).contains("IXSCAN").doesNotContain("COLLSCAN");
+		}
+		for (Query query : sortedByIndex) {
+			assertThat(winningPlan(query)).as("Plan of %s", query).contains("IXSCAN").doesNotContain("COLLSCAN")
+					.doesNotContain("\"SORT\"");
+		}
+		assertThat(plan(CustomerDocuments.nameSearchAggregation("ken mastres", 10))).contains("IXSCAN")
+				.doesNotContain("COLLSCAN");
+	}
+
+	/**
+	 * The derived finders are run as they are, their queries are read back
+	 * from the profiler.
+	 */
+	@Test
+	public void shouldNotScanTheCollectionToFind() {
+
+		// Given
+		repo.insert(Customer.ofType(PERSON).withFirstName("Ken").withLastName("Masters").withEmail("kenm@email.com")
+				.withAddress(Address.ofCountry("Shadaloo").withCity("Shadaloo City").build()).build());
+		mongoTemplate.getDb().runCommand(new Document("profile", 2));
+
+		// When
+		try {
+			repo.findAllByOrderByIdAsc(PageRequest.of(0, 10));
+			repo.findByIdGreaterThanOrderByIdAsc(ObjectId.get(), PageRequest.of(0, 10));
+			repo.findByEmail("kenm@email.com");
+			repo.findByLastNameAndFirstName("Masters", "Ken");
+			repo.findByAddressCountryAndAddressCity("Shadaloo", "Shadaloo City");
+			repo.findByCustomerType(PERSON, PageRequest.of(0, 10));
+		} finally {
+			mongoTemplate.getDb().runCommand(new Document("profile", 0));
+		}
+
+		// Then
+		final List<Document> profiled = mongoTemplate.getCollection("system.profile")
+				.find(new Document("ns", mongoTemplate.getDb().getName() + "."
+						+ mongoTemplate.getCollectionName(Customer.class)).append("op", "query"))
+				.into(new ArrayList<>());
+		mongoTemplate.getCollection("system.profile").drop();
+
+		assertThat(profiled).hasSize(6);
+		for (Document query : profiled) {
+			assertThat(query.getString("planSummary")).as("Plan of %s", query.toJson())
+					.contains("IXSCAN").doesNotContain("COLLSCAN");
+			assertThat(query.getBoolean("hasSortStage", false)).as("Sort of %s", query.toJson()).isFalse();
+		}
+	}
+
+	private static Query searchQuery(CustomerSearch search, ObjectId after) {
+		return CustomerDocuments.searchQuery(search, Collections.emptyList(), after, 10);
+	}
+
+	/* Explains a query as MongoTemplate sends it, with its mapped filter, sort, projection and limit */
+	/* The plans of the stages run by the query engine, the whole explain */
+	private String plan(Aggregation aggregation) {
+
+		final String collection = mongoTemplate.getCollectionName(Customer.class);
+		final Document aggregate = new Document("aggregate", collection)
+				.append("pipeline", aggregation.toDocument(collection, Aggregation.DEFAULT_CONTEXT).get("pipeline"))
+				.append("explain", true);
+
+		return mongoTemplate.getDb().runCommand(aggregate).toJson();
+	}
+
+	private String winningPlan(Query query) {
+
+		final MongoPersistentEntity<?> entity = mongoTemplate.getConverter().getMappingContext()
+				.getRequiredPersistentEntity(Customer.class);
+		final QueryMapper mapper = new QueryMapper(mongoTemplate.getConverter());
+
+		final Document find = new Document("find", mongoTemplate.getCollectionName(Customer.class))
+				.append("filter", mapper.getMappedObject(query.getQueryObject(), entity))
+				.append("sort", mapper.getMappedObject(query.getSortObject(), entity))
+				.append("projection", mapper.getMappedObject(query.getFieldsObject(), entity));
+		if (query.getLimit() > 0) {
+			find.append("limit", query.getLimit());
+		}
+
+		final Document explain = mongoTemplate.getDb().runCommand(new Document("explain", find));
+		return explain.get("queryPlanner", Document.class).get("winningPlan", Document.class).toJson();
+	}
 }
@@ -0,0 +1,27 @@
+package customerservice.repository.mongodb;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class NameGramsTest {
+
+	@Test
+	public void shouldPadEachWordSoThatItsBeginningMatches() {
+
+		// When
+		// Then
+		assertThat(NameGrams.of("Ken", null, "Li")).containsExactly("  k", " ke", "ken", "  l", " li");
+		assertThat(NameGrams.of("Ke")).containsExactly("  k", " ke");
+	}
+
+	@Test
+	public void shouldIgnoreTheCaseTheAccentsAndTheSeparators() {
+
+		// When
+		// Then
+		assertThat(NameGrams.of("Chun-Li")).isEqualTo(NameGrams.of("chun li"));
+		assertThat(NameGrams.of("ÉLÉNA")).isEqualTo(NameGrams.of("elena"));
+		assertThat(NameGrams.of(" - ")).isEmpty();
+	}
+}
@@ -0,0 +1,82 @@
+package customerservice.restapi;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.http.HttpStatus.GONE;
+import static org.springframework.http.HttpStatus.NO_CONTENT;
+import static org.springframework.http.HttpStatus.OK;
+
+import java.time.Instant;
+import java.util.Collections;
+
+import org.bson.types.ObjectId;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import customerservice.CustomerServiceException;
+import customerservice.domain.CustomerChange;
+import customerservice.domain.CustomerChange.Type;
+import customerservice.repository.mongodb.CustomerChanges;
+
+public class ChangeFeedTest {
+
+	private final CustomerChanges changes = mock(CustomerChanges.class);
+
+	private final ChangeFeed feed = new ChangeFeed(changes, 60_000L);
+
+	@After
+	public void stop() {
+		feed.stop();
+	}
+
+	@Test
+	public void shouldAnswerRightAwayWhenChangesFollowTheToken() {
+
+		// Given
+		final long since = 6_473_920_349_712_187_393L;
+		final CustomerChange change = CustomerChange.of(since + 1, ObjectId.get(), Type.CREATED, 0L, Instant.now());
+		when(changes.after(eq(since), anyInt())).thenReturn(asList(change));
+
+		// When
+		final DeferredResult<ResponseEntity<?>> result = feed.after(since, 10, 30_000L);
+
+		// Then
+		final ResponseEntity<?> response = (ResponseEntity<?>) result.getResult();
+		assertThat(response.getStatusCode()).isEqualTo(OK);
+		assertThat(((CustomerChangesPage) response.getBody()).getNext()).isEqualTo(change.getToken());
+	}
+
+	@Test
+	public void shouldAnswerWithoutChangesWhenNotWaiting() {
+
+		// Given
+		when(changes.after(anyLong(), anyInt())).thenReturn(Collections.emptyList());
+
+		// When
+		final DeferredResult<ResponseEntity<?>> result = feed.after(1L, 10, 0L);
+
+		// Then
+		assertThat(((ResponseEntity<?>) result.getResult()).getStatusCode()).isEqualTo(NO_CONTENT);
+	}
+
+	@Test
+	public void shouldAnswer410WhenTheChangesAreNoLongerRecorded() {
+
+		// Given
+		when(changes.expired(1L)).thenReturn(true);
+
+		// When
+		// Then
+		assertThatThrownBy(() -> feed.after(1L, 10, 0L))
+				.isInstanceOf(CustomerServiceException.class)
+				.hasFieldOrPropertyWithValue("httpStatus", GONE);
+	}
+}
@@ -3,11 +3,17 @@ package customerservice.restapi;
 import static customerservice.domain.enums.CustomerType.COMPANY;
 import static customerservice.domain.enums.CustomerType.PERSON;
 import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.hasItems;
 import static org.hamcrest.CoreMatchers.is;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.verify;
 import static org.springframework.http.MediaType.APPLICATION_JSON_UTF8;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
@@ -22,6 +28,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 import java.time.LocalDate;
 import java.time.Month;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
 
@@ -33,6 +40,9 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.util.CloseableIterator;
 import org.springframework.security.config.annotation.web.builders.WebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.test.context.ContextConfiguration;
@@ -41,13 +51,17 @@ import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
 
 import customerservice.CustomerServiceExceptionHandler;
+import customerservice.cache.CustomerCache;
+import customerservice.cache.CustomerLoader;
 import customerservice.domain.Customer;
+import customerservice.repository.mongodb.BulkSaveOutcome;
+import customerservice.repository.mongodb.BulkSaveOutcome.Status;
 import customerservice.repository.mongodb.CustomerRepository;
 import customerservice.restapi.CustomerController;
 
 @RunWith(SpringRunner.class)
 @WebMvcTest(controllers = { CustomerController.class })
-@ContextConfiguration(classes = { CustomerServiceExceptionHandler.class })
+@ContextConfiguration(classes = { CustomerServiceExceptionHandler.class, CustomerCache.class, CustomerLoader.class })
 @ComponentScan
 public class CustomerControllerIT {
 
@@ -67,6 +81,9 @@ public class CustomerControllerIT {
 	@MockBean
 	private CustomerRepository repo;
 
+	@MockBean
+	private ChangeFeed feed;
+
 	@Autowired
 	private MockMvc mvc;
 
@@ -75,7 +92,7 @@ public class CustomerControllerIT {
 
 		final List<Customer> customers = asList(Customer.ofType(PERSON).build(), Customer.ofType(COMPANY).build());
 
-		given(repo.findAll()).willReturn(customers);
+		given(repo.findAllByOrderByIdAsc(any(Pageable.class))).willReturn(customers);
 
 		// Expect HTTP 200
 		mvc.perform(get("/customers").accept(APPLICATION_JSON_UTF8)).andExpect(status().isOk())
@@ -83,11 +100,69 @@ public class CustomerControllerIT {
 				.andExpect(jsonPath("$..customer_type").value(hasItems(PERSON.toString(), COMPANY.toString())));
 	}
 
+	@Test
+	public void shouldReturnALinkToTheNextPage() throws Exception {
+
+		final List<Customer> customers = asList(Customer.ofType(PERSON).withId(ObjectId.get()).build(),
+				Customer.ofType(COMPANY).withId(ObjectId.get()).build());
+
+		given(repo.findAllByOrderByIdAsc(any(Pageable.class))).willReturn(customers);
+
+		// Expect HTTP 200
+		mvc.perform(get("/customers?size=1").accept(APPLICATION_JSON_UTF8)).andExpect(status().isOk())
+				.andExpect(jsonPath("$.length()").value(1))
+				.andExpect(header().string("Link", containsString("rel=\"next\"")));
+	}
+
+	@Test
+	public void shouldReturn400WhenPageCursorIsInvalid() throws Exception {
+
+		// Expect HTTP 400
+		mvc.perform(get("/customers?after=invalid_cursor").accept(APPLICATION_JSON_UTF8))
+				.andExpect(status().isBadRequest());
+	}
+
+	@Test
+	public void shouldExportAllCustomersAsNdjson() throws Exception {
+
+		final Iterator<Customer> customers = asList(Customer.ofType(PERSON).build(), Customer.ofType(COMPANY).build())
+				.iterator();
+
+		given(repo.streamAll()).willReturn(new CloseableIterator<Customer>() {
+
+			@Override
+			public boolean hasNext() {
+				return customers.hasNext();
+			}
+
+			@Override
+			public Customer next() {
+				return customers.next();
+			}
+
+			@Override
+			public void close() {
+			}
+		});
+
+		// Expect HTTP 200
+		final String body = mvc.perform(get("/customers/export").accept(CustomerController.APPLICATION_NDJSON_VALUE))
+				.andExpect(status().isOk())
+				.andExpect(content().contentType(CustomerController.APPLICATION_NDJSON_VALUE))
+				.andReturn().getResponse().getContentAsString();
+
+		// One compact JSON object per line
+		final String[] lines = body.split("\n");
+		assertThat(lines).hasSize(2);
+		assertThat(lines[0]).startsWith("{").endsWith("}").contains("\"customer_type\":\"PERSON\"");
+		assertThat(lines[1]).startsWith("{").endsWith("}").contains("\"customer_type\":\"COMPANY\"");
+	}
+
 	@Test
 	public void shouldReturnOneCustomerById() throws Exception {
 
 		final LocalDate birthDate = LocalDate.of(1990, Month.JULY, 31);
-		final Customer customer = Customer.ofType(PERSON).withBirthDate(birthDate).build();
+		final Customer customer = Customer.ofType(PERSON).withBirthDate(birthDate).withVersion(0L).build();
 		final ObjectId id = ObjectId.get();
 
 		given(repo.findById(any(ObjectId.class))).willReturn(Optional.of(customer));
@@ -96,7 +171,21 @@ public class CustomerControllerIT {
 		mvc.perform(get(String.format("/customers/%s", id)).accept(APPLICATION_JSON_UTF8)).andExpect(status().isOk())
 				.andExpect(content().contentType(APPLICATION_JSON_UTF8))
 				.andExpect(jsonPath("$..customer_type").value("PERSON"))
-				.andExpect(jsonPath("$..birth_date").value("1990-07-31"));
+				.andExpect(jsonPath("$..birth_date").value("1990-07-31"))
+				.andExpect(header().string("ETag", "\"0-json\""));
+	}
+
+	@Test
+	public void shouldReturn304IfCustomerNotModified() throws Exception {
+
+		final ObjectId id = ObjectId.get();
+		given(repo.findById(id)).willReturn(Optional.of(Customer.ofType(PERSON).withId(id).withVersion(7L).build()));
+
+		// Expect HTTP 304
+		mvc.perform(get(String.format("/customers/%s", id)).accept(APPLICATION_JSON_UTF8).header("If-None-Match", "\"7-json\""))
+				.andExpect(status().isNotModified())
+				.andExpect(header().string("ETag", "\"7-json\""))
+				.andExpect(content().string(""));
 	}
 
 	@Test
@@ -121,7 +210,7 @@ public class CustomerControllerIT {
 	@Test
 	public void shouldReturnEmptyBodyWhenNoCustomersFound() throws Exception {
 
-		given(repo.findAll()).willReturn(Collections.emptyList());
+		given(repo.findAllByOrderByIdAsc(any(Pageable.class))).willReturn(Collections.emptyList());
 
 		// Expect HTTP 204
 		mvc.perform(get("/customers").accept(APPLICATION_JSON_UTF8)).andExpect(status().isNoContent());
@@ -132,7 +221,7 @@ public class CustomerControllerIT {
 
 		final List<Customer> customers = asList(Customer.ofType(PERSON).build(), Customer.ofType(COMPANY).build());
 
-		given(repo.findAll()).willReturn(customers);
+		given(repo.findAllByOrderByIdAsc(any(Pageable.class))).willReturn(customers);
 
 		// Expect HTTP 200
 		mvc.perform(head("/customers").accept(APPLICATION_JSON_UTF8)).andExpect(status().isOk());
@@ -146,7 +235,7 @@ public class CustomerControllerIT {
 		final ObjectId id = ObjectId.get();
 		ReflectionTestUtils.setField(newCustomer, "id", id);
 
-		given(repo.save(any(Customer.class))).willReturn(newCustomer);
+		given(repo.insert(any(Customer.class))).willReturn(newCustomer);
 
 		// Expect HTTP 201
 		mvc.perform(post("/customers").contentType(APPLICATION_JSON_UTF8).content("{\"customer_type\":\"PERSON\"}"))
@@ -167,7 +256,7 @@ public class CustomerControllerIT {
 	@Test
 	public void shouldNotAddCustomerIfCustomerAlreadyExists() throws Exception {
 
-		given(repo.existsById(any(ObjectId.class))).willReturn(true);
+		given(repo.insert(any(Customer.class))).willThrow(new DuplicateKeyException("E11000 duplicate key"));
 		final ObjectId id = ObjectId.get();
 
 		// Expect HTTP 400
@@ -176,11 +265,54 @@ public class CustomerControllerIT {
 				.andExpect(status().isBadRequest());
 	}
 
+	@Test
+	public void shouldAddOrUpdateCustomersInBatch() throws Exception {
+
+		final ObjectId created = ObjectId.get();
+		final ObjectId updated = ObjectId.get();
+		given(repo.bulkSave(anyList())).willReturn(asList(new BulkSaveOutcome(created, Status.CREATED, null),
+				new BulkSaveOutcome(updated, Status.UPDATED, null)));
+
+		final String BATCH = String.format(
+				"[{\"customer_type\":\"PERSON\"},{\"customer_type\":\"COMPANY\",\"id\":\"%s\"},{\"last_name\":\"Doe\"}]",
+				updated);
+
+		// Expect HTTP 200 with a status per customer
+		mvc.perform(post("/customers/batch").contentType(APPLICATION_JSON_UTF8).content(BATCH))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$[0].id").value(created.toString()))
+				.andExpect(jsonPath("$[0].status").value(201))
+				.andExpect(jsonPath("$[1].id").value(updated.toString()))
+				.andExpect(jsonPath("$[1].status").value(204))
+				.andExpect(jsonPath("$[2].status").value(400));
+	}
+
+	@Test
+	public void shouldAddCustomersInBatchFromNdjson() throws Exception {
+
+		final ObjectId created = ObjectId.get();
+		given(repo.bulkSave(anyList())).willReturn(asList(new BulkSaveOutcome(created, Status.CREATED, null)));
+
+		// Expect HTTP 200 with a status per customer
+		mvc.perform(post("/customers/batch").contentType(CustomerController.APPLICATION_NDJSON_VALUE)
+				.content("{\"customer_type\":\"PERSON\"}\n"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$[0].index").value(0))
+				.andExpect(jsonPath("$[0].status").value(201));
+	}
+
+	@Test
+	public void shouldRejectAMalformedBatch() throws Exception {
+
+		// Expect HTTP 400
+		mvc.perform(post("/customers/batch").contentType(APPLICATION_JSON_UTF8).content("[{\"customer_type\":"))
+				.andExpect(status().isBadRequest());
+	}
+
 	@Test
 	public void shouldUpdateAnExistingCustomer() throws Exception {
 
-		given(repo.existsById(any(ObjectId.class))).willReturn(true);
-		given(repo.save(any(Customer.class))).willReturn(Customer.ofType(PERSON).build());
+		given(repo.replace(any(ObjectId.class), any(Customer.class), isNull())).willReturn(Optional.of(1L));
 
 		final ObjectId id = ObjectId.get();
 		final String UPDATE = String.format(
@@ -191,10 +323,23 @@ public class CustomerControllerIT {
 				.andExpect(status().isNoContent());
 	}
 
+	@Test
+	public void shouldReturn412IfCustomerWasModified() throws Exception {
+
+		final ObjectId id = ObjectId.get();
+		given(repo.replace(eq(id), any(Customer.class), eq(1L))).willReturn(Optional.empty());
+		given(repo.existsById(id)).willReturn(true);
+
+		// Expect HTTP 412
+		mvc.perform(put(String.format("/customers/%s", id)).contentType(APPLICATION_JSON_UTF8)
+				.header("If-Match", "\"1\"").content("{\"customer_type\":\"PERSON\"}"))
+				.andExpect(status().isPreconditionFailed());
+	}
+
 	@Test
 	public void shouldFailUpdatingNonExistingCustomer() throws Exception {
 
-		given(repo.existsById(any(ObjectId.class))).willReturn(false);
+		given(repo.replace(any(ObjectId.class), any(Customer.class), isNull())).willReturn(Optional.empty());
 
 		final ObjectId id = ObjectId.get();
 		final String UPDATE = String.format(
@@ -208,19 +353,16 @@ public class CustomerControllerIT {
 	@Test
 	public void shouldDeleteAnExistingCustomer() throws Exception {
 
-		given(repo.existsById(any(ObjectId.class))).willReturn(true);
-
 		final ObjectId id = ObjectId.get();
 
 		// Expect HTTP 204
 		mvc.perform(delete(String.format("/customers/%s", id))).andExpect(status().isNoContent());
+		verify(repo).delete(id, null);
 	}
 
 	@Test
 	public void shouldDeleteExistingCustomerAndIgnoreFollowingCalls() throws Exception {
 
-		given(repo.existsById(any(ObjectId.class))).willReturn(true).willReturn(false);
-
 		final ObjectId id = ObjectId.get();
 
 		// Expect HTTP 204 for each call
@@ -7,29 +7,60 @@ import static java.util.Arrays.asList;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
 import static org.springframework.http.HttpStatus.CREATED;
 import static org.springframework.http.HttpStatus.NOT_FOUND;
+import static org.springframework.http.HttpStatus.NOT_MODIFIED;
 import static org.springframework.http.HttpStatus.NO_CONTENT;
 import static org.springframework.http.HttpStatus.OK;
+import static org.springframework.http.HttpStatus.PRECONDITION_FAILED;
 
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import javax.validation.Validation;
+import javax.validation.Validator;
 
 import org.bson.types.ObjectId;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.util.CloseableIterator;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import customerservice.CustomerServiceException;
+import customerservice.cache.CustomerCache;
+import customerservice.cache.CustomerLoader;
+import customerservice.domain.Address;
 import customerservice.domain.Customer;
 import customerservice.domain.enums.CustomerType;
+import customerservice.repository.mongodb.BulkSaveOutcome;
+import customerservice.repository.mongodb.BulkSaveOutcome.Status;
 import customerservice.repository.mongodb.CustomerRepository;
+import customerservice.repository.mongodb.CustomerSearch;
 import customerservice.restapi.CustomerController;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -38,9 +69,30 @@ public class CustomerControllerTest {
 	@Mock
 	private CustomerRepository repo;
 
+	@Mock
+	private ChangeFeed feed;
+
+	@Spy
+	private CustomerCache cache = new CustomerCache(100, 60);
+
+	@Spy
+	private ObjectMapper mapper = new ObjectMapper();
+
+	@Spy
+	private Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+
 	@InjectMocks
 	private CustomerController controller;
 
+	@Before
+	public void configurePaging() {
+		ReflectionTestUtils.setField(controller, "defaultPageSize", 100);
+		ReflectionTestUtils.setField(controller, "maxPageSize", 1000);
+		ReflectionTestUtils.setField(controller, "batchChunkSize", 2);
+		ReflectionTestUtils.setField(controller, "loader", new CustomerLoader(repo, 0, 100));
+		ReflectionTestUtils.setField(controller, "maxChangesWait", 30);
+	}
+
 	@SuppressWarnings("unchecked")
 	@Test
 	public void shouldReturnAllCustomers() {
@@ -49,29 +101,205 @@ public class CustomerControllerTest {
 		final List<Customer> customers = asList(
 				Customer.ofType(PERSON).build(), 
 				Customer.ofType(COMPANY).build());
-		when(repo.findAll()).thenReturn(customers);
+		when(repo.findAllByOrderByIdAsc(any(Pageable.class))).thenReturn(customers);
 
 		// When
-		final ResponseEntity<?> response = controller.allCustomers();
+		final ResponseEntity<?> response = controller.allCustomers(null, null, null);
 
 		// Then
 		assertThat(response.getStatusCode()).isEqualTo(OK);
 		assertThat((Iterable<Customer>) response.getBody()).asList().containsAll(customers);
+		assertThat(response.getHeaders().get("Link")).isNull();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void shouldReturnOnePageAndALinkToTheNextPage() {
+
+		// Given
+		final Customer first = Customer.ofType(PERSON).withId(ObjectId.get()).build();
+		final Customer second = Customer.ofType(COMPANY).withId(ObjectId.get()).build();
+		final Customer third = Customer.ofType(PERSON).withId(ObjectId.get()).build();
+		when(repo.findAllByOrderByIdAsc(PageRequest.of(0, 3))).thenReturn(asList(first, second, third));
+
+		// When
+		final ResponseEntity<?> response = controller.allCustomers(null, null, 2);
+
+		// Then
+		assertThat(response.getStatusCode()).isEqualTo(OK);
+		assertThat((Iterable<Customer>) response.getBody()).asList().containsExactly(first, second);
+		assertThat(response.getHeaders().getFirst("Link"))
+				.isEqualTo(format("</customers?after=%s&size=2>; rel=\"next\"", PageCursor.encode(second.getId())));
+	}
+
+	@Test
+	public void shouldReturnThePageFollowingTheCursor() {
+
+		// Given
+		final ObjectId last = ObjectId.get();
+		final List<Customer> customers = asList(Customer.ofType(PERSON).withId(ObjectId.get()).build());
+		when(repo.findByIdGreaterThanOrderByIdAsc(last, PageRequest.of(0, 101))).thenReturn(customers);
+
+		// When
+		final ResponseEntity<?> response = controller.allCustomers(null, PageCursor.encode(last), null);
+
+		// Then
+		assertThat(response.getStatusCode()).isEqualTo(OK);
+		assertThat(response.getBody()).isEqualTo(customers);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void shouldSearchCustomersWithAProjection() {
+
+		// Given
+		final Address shadalooCity = Address.ofCountry("Shadaloo").withCity("Shadaloo City").build();
+		final Customer first = Customer.ofType(PERSON).withId(ObjectId.get()).withLastName("Masters")
+				.withAddress(shadalooCity).build();
+		final Customer second = Customer.ofType(PERSON).withId(ObjectId.get()).withLastName("Masters")
+				.withAddress(shadalooCity).build();
+		final ArgumentCaptor<CustomerSearch> search = ArgumentCaptor.forClass(CustomerSearch.class);
+		when(repo.search(search.capture(), eq(asList("lastName", "email")), isNull(), eq(2)))
+				.thenReturn(asList(first, second));
+
+		// When
+		final ResponseEntity<?> response = controller.searchCustomers(null, "Masters", PERSON, "Shadaloo",
+				"Shadaloo City", null, null, asList("last_name", "email"), null, 1);
+
+		// Then
+		assertThat(response.getStatusCode()).isEqualTo(OK);
+		assertThat((Iterable<Customer>) response.getBody()).asList().containsExactly(first);
+		assertThat(search.getValue().getCountry()).isEqualTo("Shadaloo");
+		assertThat(search.getValue().getCity()).isEqualTo("Shadaloo City");
+		assertThat(response.getHeaders().getFirst("Link")).isEqualTo(format(
+				"</customers/search?lastName=Masters&customerType=PERSON&address.country=Shadaloo"
+						+ "&address.city=Shadaloo%%20City&fields=last_name,email&after=%s&size=1>; rel=\"next\"",
+				PageCursor.encode(first.getId())));
+	}
+
+	@Test
+	public void shouldReturn400WhenSearchingAnUnknownField() {
+
+		assertThatThrownBy(() -> controller.searchCustomers(null, "Masters", null, null, null, null, null,
+				asList("password"), null, null))
+			.isInstanceOf(CustomerServiceException.class)
+			.hasMessageContaining("Unknown field");
+	}
+
+	@Test
+	public void shouldReturn400WhenProjectingTheVersion() {
+
+		// The version is not a JSON field, it is sent as ETag
+		assertThatThrownBy(() -> controller.oneCustomer(ObjectId.get(), asList("version"), null))
+			.isInstanceOf(CustomerServiceException.class)
+			.hasMessageContaining("Unknown field version");
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void shouldReturnTheNameSearchResultsInTheirOrder() {
+
+		// Given
+		final Customer best = Customer.ofType(PERSON).withId(ObjectId.get()).withLastName("Masters").build();
+		final Customer other = Customer.ofType(COMPANY).withId(ObjectId.get()).withLastName("Masters Inc").build();
+		when(repo.nameSearch("mastres", 100)).thenReturn(asList(best, other));
+
+		// When
+		final ResponseEntity<?> response = controller.nameSearchCustomers(" mastres ", null);
+
+		// Then
+		assertThat(response.getStatusCode()).isEqualTo(OK);
+		assertThat((Iterable<Customer>) response.getBody()).asList().containsExactly(best, other);
+	}
+
+	@Test
+	public void shouldReturn400WhenTheSearchedNameIsBlank() {
+
+		assertThatThrownBy(() -> controller.nameSearchCustomers("  ", null))
+			.isInstanceOf(CustomerServiceException.class)
+			.hasFieldOrPropertyWithValue("httpStatus", BAD_REQUEST);
+	}
+
+	@Test
+	public void shouldReturn400WhenTheSearchedNameIsTooShortToBeSelective() {
+
+		assertThatThrownBy(() -> controller.nameSearchCustomers(" ke ", null))
+			.isInstanceOf(CustomerServiceException.class)
+			.hasFieldOrPropertyWithValue("httpStatus", BAD_REQUEST);
+	}
+
+	@Test
+	public void shouldCapThePageSize() {
+
+		// Given
+		when(repo.findAllByOrderByIdAsc(PageRequest.of(0, 1001))).thenReturn(Collections.emptyList());
+
+		// When
+		final ResponseEntity<?> response = controller.allCustomers(null, null, 5000);
+
+		// Then
+		assertThat(response.getStatusCode()).isEqualTo(NO_CONTENT);
+	}
+
+	@Test
+	public void shouldRejectAnInvalidCursor() {
+
+		// When
+		// Then
+		assertThatThrownBy(() -> controller.allCustomers(null, "not-a-cursor", null))
+			.isInstanceOf(CustomerServiceException.class)
+			.hasMessageContaining("Invalid page cursor")
+			.matches(e -> ((CustomerServiceException) e).getHttpStatus() == BAD_REQUEST);
 	}
 
 	@Test
 	public void shouldReturnEmptyBodyWhenNoCustomers() {
 
 		// Given
-		when(repo.findAll()).thenReturn(Collections.emptyList());
+		when(repo.findAllByOrderByIdAsc(any(Pageable.class))).thenReturn(Collections.emptyList());
 
 		// When
-		final ResponseEntity<?> response = controller.allCustomers();
+		final ResponseEntity<?> response = controller.allCustomers(null, null, null);
 
 		// Then
 		assertThat(response.getStatusCode()).isEqualTo(NO_CONTENT);
 	}
 
+	@Test
+	public void shouldExportOneCustomerPerLine() throws Exception {
+
+		// Given
+		final List<Customer> customers = asList(
+				Customer.ofType(PERSON).withFirstName("Ken").build(),
+				Customer.ofType(COMPANY).withLastName("Shadaloo").build());
+		when(repo.streamAll()).thenReturn(closeable(customers.iterator()));
+		final MockHttpServletResponse response = new MockHttpServletResponse();
+
+		// When
+		controller.exportCustomers(response);
+
+		// Then
+		assertThat(response.getContentType()).isEqualTo(CustomerController.APPLICATION_NDJSON_VALUE);
+		final String[] lines = response.getContentAsString().split("\n");
+		assertThat(lines).hasSize(2);
+		assertThat(lines[0]).startsWith("{").contains("\"firstName\":\"Ken\"");
+		assertThat(lines[1]).startsWith("{").contains("\"lastName\":\"Shadaloo\"");
+	}
+
+	@Test
+	public void shouldExportNothingWhenNoCustomers() throws Exception {
+
+		// Given
+		when(repo.streamAll()).thenReturn(closeable(Collections.<Customer> emptyIterator()));
+		final MockHttpServletResponse response = new MockHttpServletResponse();
+
+		// When
+		controller.exportCustomers(response);
+
+		// Then
+		assertThat(response.getContentAsString()).isEmpty();
+	}
+
 	@Test
 	public void shouldReturnOneCustomerById() {
 
@@ -80,13 +308,215 @@ public class CustomerControllerTest {
 		when(repo.findById(any(ObjectId.class))).thenReturn(Optional.of(customer));
 
 		// When
-		final ResponseEntity<?> response = controller.oneCustomer(ObjectId.get());
+		final ResponseEntity<?> response = controller.oneCustomer(ObjectId.get(), null, null);
 
 		// Then
 		assertThat(response.getStatusCode()).isEqualTo(OK);
 		assertThat((Customer) response.getBody()).isEqualTo(customer);
 	}
 
+	@Test
+	public void shouldReturnACachedCustomer() {
+
+		// Given
+		final ObjectId id = ObjectId.get();
+		final Customer customer = Customer.ofType(PERSON).withId(id).build();
+		when(repo.findById(id)).thenReturn(Optional.of(customer));
+
+		// When
+		controller.oneCustomer(id, null, null);
+		final ResponseEntity<?> response = controller.oneCustomer(id, null, null);
+
+		// Then
+		assertThat(response.getBody()).isSameAs(customer);
+		verify(repo, times(1)).findById(id);
+	}
+
+	@Test
+	public void shouldReturnACachedJsonBodyWithAnETag() throws Exception {
+
+		// Given
+		ReflectionTestUtils.setField(controller, "cacheSerializedBodies", true);
+		final ObjectId id = ObjectId.get();
+		final Customer customer = Customer.ofType(PERSON).withFirstName("Ken").withVersion(2L).build();
+		when(repo.findById(id)).thenReturn(Optional.of(customer));
+
+		// When
+		final ResponseEntity<?> first = controller.oneCustomer(id, null, null);
+		final ResponseEntity<?> second = controller.oneCustomer(id, null, null);
+
+		// Then
+		assertThat(first.getStatusCode()).isEqualTo(OK);
+		assertThat(first.getHeaders().getETag()).isEqualTo("\"2-json\"");
+		assertThat(new String((byte[]) first.getBody(), "UTF-8")).contains("\"firstName\":\"Ken\"");
+		assertThat(second.getBody()).isSameAs(first.getBody());
+		assertThat(second.getHeaders().getETag()).isEqualTo(first.getHeaders().getETag());
+		verify(repo, times(1)).findById(id);
+	}
+
+	@Test
+	public void shouldReturnAPrettyJsonBodyOnRequest() throws Exception {
+
+		// Given
+		ReflectionTestUtils.setField(controller, "cacheSerializedBodies", true);
+		final ObjectId id = ObjectId.get();
+		when(repo.findById(id)).thenReturn(Optional.of(Customer.ofType(PERSON).withFirstName("Ken").build()));
+		final MockHttpServletRequest request = new MockHttpServletRequest();
+		request.setParameter("pretty", "");
+		RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+
+		// When
+		final ResponseEntity<?> pretty;
+		try {
+			pretty = controller.oneCustomer(id, null, null);
+		} finally {
+			RequestContextHolder.resetRequestAttributes();
+		}
+		final ResponseEntity<?> compact = controller.oneCustomer(id, null, null);
+
+		// Then
+		assertThat(new String((byte[]) pretty.getBody(), "UTF-8")).contains("\n");
+		assertThat(new String((byte[]) compact.getBody(), "UTF-8")).doesNotContain("\n");
+	}
+
+	@Test
+	public void shouldNotCacheTheBodyWhenABinaryFormatIsRequested() {
+
+		// Given
+		ReflectionTestUtils.setField(controller, "cacheSerializedBodies", true);
+		final ObjectId id = ObjectId.get();
+		final Customer customer = Customer.ofType(PERSON).withFirstName("Ken").build();
+		when(repo.findById(id)).thenReturn(Optional.of(customer));
+		final MockHttpServletRequest request = new MockHttpServletRequest();
+		request.addHeader("Accept", "application/x-jackson-smile, application/json;q=0.5");
+		RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+
+		// When
+		final ResponseEntity<?> response;
+		try {
+			response = controller.oneCustomer(id, null, null);
+		} finally {
+			RequestContextHolder.resetRequestAttributes();
+		}
+
+		// Then
+		assertThat(response.getStatusCode()).isEqualTo(OK);
+		assertThat(response.getBody()).isSameAs(customer);
+	}
+
+	@Test
+	public void shouldReturnTheVersionAsETag() {
+
+		// Given
+		final ObjectId id = ObjectId.get();
+		when(repo.findById(id)).thenReturn(Optional.of(Customer.ofType(PERSON).withId(id).withVersion(3L).build()));
+
+		// When
+		final ResponseEntity<?> response = controller.oneCustomer(id, null, null);
+
+		// Then
+		assertThat(response.getStatusCode()).isEqualTo(OK);
+		assertThat(response.getHeaders().getETag()).isEqualTo("\"3-json\"");
+	}
+
+	@Test
+	public void shouldReturn304IfTheClientHasTheLastVersion() {
+
+		// Given
+		final ObjectId id = ObjectId.get();
+		when(repo.findById(id)).thenReturn(Optional.of(Customer.ofType(PERSON).withId(id).withVersion(3L).build()));
+
+		// When
+		final ResponseEntity<?> response = controller.oneCustomer(id, null, "\"2-json\", \"3-json\"");
+
+		// Then
+		assertThat(response.getStatusCode()).isEqualTo(NOT_MODIFIED);
+		assertThat(response.getHeaders().getETag()).isEqualTo("\"3-json\"");
+		assertThat(response.getBody()).isNull();
+	}
+
+	@Test
+	public void shouldReturn304IfTheClientHasTheLastVersionCompressed() {
+
+		// Given
+		final ObjectId id = ObjectId.get();
+		when(repo.findById(id)).thenReturn(Optional.of(Customer.ofType(PERSON).withId(id).withVersion(3L).build()));
+
+		// When
+		final ResponseEntity<?> gzip = controller.oneCustomer(id, null, "\"3-json-gzip\"");
+		final ResponseEntity<?> otherVersion = controller.oneCustomer(id, null, "\"2-json-deflate\"");
+
+		// Then
+		assertThat(gzip.getStatusCode()).isEqualTo(NOT_MODIFIED);
+		assertThat(otherVersion.getStatusCode()).isEqualTo(OK);
+	}
+
+	@Test
+	public void shouldTagEachRepresentationOfAVersion() {
+
+		// Given
+		ReflectionTestUtils.setField(controller, "cacheSerializedBodies", true);
+		final ObjectId id = ObjectId.get();
+		when(repo.findById(id)).thenReturn(Optional.of(Customer.ofType(PERSON).withId(id).withVersion(3L).build()));
+		final MockHttpServletRequest prettyRequest = new MockHttpServletRequest();
+		prettyRequest.setParameter("pretty", "");
+		final MockHttpServletRequest smileRequest = new MockHttpServletRequest();
+		smileRequest.addHeader("Accept", "application/x-jackson-smile");
+		final MockHttpServletRequest cborRequest = new MockHttpServletRequest();
+		cborRequest.addHeader("Accept", "application/cbor");
+
+		// When
+		final ResponseEntity<?> compact = controller.oneCustomer(id, null, null);
+		final ResponseEntity<?> pretty = oneCustomer(prettyRequest, id, "\"3-json\"");
+		final ResponseEntity<?> smile = oneCustomer(smileRequest, id, null);
+		final ResponseEntity<?> cbor = oneCustomer(cborRequest, id, null);
+
+		// Then
+		assertThat(compact.getHeaders().getETag()).isEqualTo("\"3-json\"");
+		assertThat(pretty.getStatusCode()).isEqualTo(OK);
+		assertThat(pretty.getHeaders().getETag()).isEqualTo("\"3-json-pretty\"");
+		assertThat(smile.getHeaders().getETag()).isEqualTo("\"3-smile\"");
+		assertThat(cbor.getHeaders().getETag()).isEqualTo("\"3-cbor\"");
+		assertThat(compact.getHeaders().getVary()).containsExactly("Accept");
+		assertThat(smile.getHeaders().getVary()).containsExactly("Accept");
+	}
+
+	@Test
+	public void shouldAcceptTheTagOfAnyRepresentationInIfMatch() {
+
+		// Given
+		final ObjectId id = ObjectId.get();
+		final Customer update = Customer.ofType(CustomerType.PERSON).build();
+		when(repo.replace(id, update, 3L)).thenReturn(Optional.of(4L));
+
+		// When
+		final ResponseEntity<?> response = controller.updateCustomer(id, update, "\"3-smile\"");
+
+		// Then
+		assertThat(response.getStatusCode()).isEqualTo(NO_CONTENT);
+		assertThat(response.getHeaders().getETag()).isEqualTo("\"4-json\"");
+	}
+
+	@Test
+	public void shouldReloadACustomerAfterAnUpdate() {
+
+		// Given
+		final ObjectId id = ObjectId.get();
+		final Customer customer = Customer.ofType(PERSON).withId(id).build();
+		final Customer update = Customer.from(customer).withFirstName("Ken").build();
+		when(repo.findById(id)).thenReturn(Optional.of(customer)).thenReturn(Optional.of(update));
+		when(repo.replace(id, update, null)).thenReturn(Optional.of(1L));
+
+		// When
+		controller.oneCustomer(id, null, null);
+		controller.updateCustomer(id, update, null);
+		final ResponseEntity<?> response = controller.oneCustomer(id, null, null);
+
+		// Then
+		assertThat(response.getBody()).isSameAs(update);
+		verify(repo, times(2)).findById(id);
+	}
+
 	@Test
 	public void shouldReturn404IfCustomerIsNotFound() {
 
@@ -94,13 +524,87 @@ public class CustomerControllerTest {
 		when(repo.findById(any(ObjectId.class))).thenReturn(Optional.empty());
 
 		// When
-		final ResponseEntity<?> response = controller.oneCustomer(ObjectId.get());
+		final ResponseEntity<?> response = controller.oneCustomer(ObjectId.get(), null, null);
 
 		// Then
 		assertThat(response.getStatusCode()).isEqualTo(NOT_FOUND);
 		assertThat(response.getBody()).isNull();
 	}
 
+	@Test
+	public void shouldReturnCustomersByIdsInRequestOrderAndOnlyLoadTheUncachedOnes() {
+
+		// Given
+		final ObjectId cachedId = ObjectId.get();
+		final ObjectId loadedId = ObjectId.get();
+		final ObjectId missingId = ObjectId.get();
+		final Customer cached = Customer.ofType(PERSON).withId(cachedId).build();
+		final Customer loaded = Customer.ofType(COMPANY).withId(loadedId).build();
+		cache.get(cachedId, id -> CompletableFuture.completedFuture(Optional.of(cached)));
+		when(repo.findAllById(asList(loadedId, missingId))).thenReturn(asList(loaded));
+
+		// When
+		final ResponseEntity<?> response = controller
+				.customersByIds(asList(missingId, loadedId, cachedId, loadedId));
+
+		// Then
+		assertThat(response.getStatusCode()).isEqualTo(OK);
+		final CustomersByIds body = (CustomersByIds) response.getBody();
+		assertThat(body.getCustomers()).containsExactly(loaded, cached);
+		assertThat(body.getMissing()).containsExactly(missingId);
+		verify(repo, times(1)).findAllById(asList(loadedId, missingId));
+	}
+
+	@Test
+	public void shouldReturn400WhenRequestingTooManyIds() {
+
+		// Given
+		ReflectionTestUtils.setField(controller, "maxPageSize", 2);
+
+		// Then
+		assertThatThrownBy(() -> controller.customersByIds(asList(ObjectId.get(), ObjectId.get(), ObjectId.get())))
+			.isInstanceOf(CustomerServiceException.class)
+			.hasFieldOrPropertyWithValue("httpStatus", BAD_REQUEST);
+	}
+
+	@Test
+	public void shouldReadOnlyTheRequestedFieldsOfACustomer() {
+
+		// Given
+		final ObjectId id = ObjectId.get();
+		final Customer partial = Customer.ofType(null).withId(id).withLastName("Masters").build();
+		when(repo.findById(id, asList("lastName", "email"))).thenReturn(Optional.of(partial));
+
+		// When
+		final ResponseEntity<?> response = controller.oneCustomer(id, asList("last_name", "email"), "\"3-json\"");
+
+		// Then
+		assertThat(response.getStatusCode()).isEqualTo(OK);
+		assertThat(response.getBody()).isSameAs(partial);
+		assertThat(response.getHeaders().getETag()).isNull();
+		verify(cache, times(0)).get(any(ObjectId.class), any());
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void shouldReturnAPageOfPartialCustomersAndKeepTheFieldsInTheNextLink() {
+
+		// Given
+		final Customer first = Customer.ofType(null).withId(ObjectId.get()).withEmail("kenm@email.com").build();
+		final Customer second = Customer.ofType(null).withId(ObjectId.get()).withEmail("ryuh@email.com").build();
+		when(repo.search(any(CustomerSearch.class), eq(asList("email")), isNull(), eq(2)))
+				.thenReturn(asList(first, second));
+
+		// When
+		final ResponseEntity<?> response = controller.allCustomers(asList("email"), null, 1);
+
+		// Then
+		assertThat(response.getStatusCode()).isEqualTo(OK);
+		assertThat((Iterable<Customer>) response.getBody()).asList().containsExactly(first);
+		assertThat(response.getHeaders().getFirst("Link")).isEqualTo(
+				format("</customers?fields=email&after=%s&size=1>; rel=\"next\"", PageCursor.encode(first.getId())));
+	}
+
 	@Test
 	public void shouldAddANewCustomer() {
 
@@ -110,7 +614,7 @@ public class CustomerControllerTest {
 		final ObjectId id = ObjectId.get();
 		ReflectionTestUtils.setField(newCustomer, "id", id);
 
-		when(repo.save(any(Customer.class))).thenReturn(newCustomer);
+		when(repo.insert(any(Customer.class))).thenReturn(newCustomer);
 
 		// When
 		final ResponseEntity<?> response = controller.addCustomer(newCustomer);
@@ -124,7 +628,7 @@ public class CustomerControllerTest {
 	public void shouldNotAddACustomerIfCustomerAlreadyExists() throws Exception {
 
 		// Given
-		when(repo.existsById(any(ObjectId.class))).thenReturn(true);
+		when(repo.insert(any(Customer.class))).thenThrow(new DuplicateKeyException("E11000 duplicate key"));
 		final ObjectId id = ObjectId.get();
 		final Customer customer = Customer.ofType(PERSON).build();
 		ReflectionTestUtils.setField(customer, "id", id);
@@ -136,35 +640,127 @@ public class CustomerControllerTest {
 			.hasMessageContaining("Customer already exists");
 	}
 
+	@Test
+	public void shouldNotAddACustomerIfEmailIsAlreadyUsed() throws Exception {
+
+		// Given
+		when(repo.insert(any(Customer.class))).thenThrow(new DuplicateKeyException(
+				"E11000 duplicate key error collection: test.customer index: email dup key: { : \"kenm@email.com\" }"));
+		final Customer customer = Customer.ofType(PERSON).withEmail("kenm@email.com").build();
+
+		// When
+		// Then
+		assertThatThrownBy(() -> controller.addCustomer(customer))
+			.isInstanceOf(CustomerServiceException.class)
+			.hasMessageContaining("Email already used");
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void shouldSaveCustomersByChunks() throws Exception {
+
+		// Given
+		final ObjectId existing = ObjectId.get();
+		final ObjectId created1 = ObjectId.get();
+		final ObjectId created2 = ObjectId.get();
+		when(repo.bulkSave(any(List.class)))
+				.thenReturn(asList(new BulkSaveOutcome(created1, Status.CREATED, null),
+						new BulkSaveOutcome(existing, Status.UPDATED, null)))
+				.thenReturn(asList(new BulkSaveOutcome(created2, Status.DUPLICATE, "E11000 duplicate key")));
+
+		final MockHttpServletRequest request = new MockHttpServletRequest();
+		request.setContent(format("[{\"customerType\":\"PERSON\"},{\"id\":\"%s\",\"customerType\":\"COMPANY\"},"
+				+ "{\"firstName\":\"No type\"},{\"customerType\":\"PERSON\"}]", existing).getBytes());
+
+		// When
+		final ResponseEntity<?> response = controller.addOrUpdateCustomers(request);
+
+		// Then
+		assertThat(response.getStatusCode()).isEqualTo(OK);
+		final List<BatchItemResult> results = (List<BatchItemResult>) response.getBody();
+		assertThat(results).extracting(BatchItemResult::getIndex).containsExactly(0, 1, 2, 3);
+		assertThat(results).extracting(BatchItemResult::getStatus).containsExactly(201, 204, 400, 400);
+		assertThat(results.get(0).getId()).isEqualTo(created1);
+		assertThat(results.get(2).getError()).contains("customerType");
+	}
+
 	@Test
 	public void shouldUpdateAnExistingCustomer() {
 
 		// Given
-		when(repo.existsById(any(ObjectId.class))).thenReturn(true);
-		when(repo.save(any(Customer.class))).thenReturn(Customer.ofType(PERSON).build());
 		final ObjectId id = ObjectId.get();
 		final Customer existingCustomer = Customer.ofType(CustomerType.PERSON).build();
 		ReflectionTestUtils.setField(existingCustomer, "id", id);
+		when(repo.replace(id, existingCustomer, null)).thenReturn(Optional.of(1L));
 
 		// When
-		final ResponseEntity<?> response = controller.updateCustomer(existingCustomer.getId(), existingCustomer);
+		final ResponseEntity<?> response = controller.updateCustomer(existingCustomer.getId(), existingCustomer, null);
 
 		// Then
 		assertThat(response.getStatusCode()).isEqualTo(NO_CONTENT);
 	}
 
+	@Test
+	public void shouldUpdateTheCustomerGivenInThePath() {
+
+		// Given
+		final ObjectId id = ObjectId.get();
+		final Customer update = Customer.ofType(CustomerType.PERSON).withId(ObjectId.get()).build();
+		when(repo.replace(id, update, null)).thenReturn(Optional.of(1L));
+
+		// When
+		final ResponseEntity<?> response = controller.updateCustomer(id, update, null);
+
+		// Then
+		assertThat(response.getStatusCode()).isEqualTo(NO_CONTENT);
+		verify(repo).replace(id, update, null);
+	}
+
+	@Test
+	public void shouldUpdateACustomerIfItsVersionMatches() {
+
+		// Given
+		final ObjectId id = ObjectId.get();
+		final Customer update = Customer.ofType(CustomerType.PERSON).build();
+		when(repo.replace(id, update, 3L)).thenReturn(Optional.of(4L));
+
+		// When
+		final ResponseEntity<?> response = controller.updateCustomer(id, update, "\"3-json\"");
+
+		// Then
+		assertThat(response.getStatusCode()).isEqualTo(NO_CONTENT);
+		assertThat(response.getHeaders().getETag()).isEqualTo("\"4-json\"");
+	}
+
+	@Test
+	public void shouldFailUpdatingACustomerModifiedConcurrently() {
+
+		// Given
+		final ObjectId id = ObjectId.get();
+		final Customer update = Customer.ofType(CustomerType.PERSON).build();
+		when(repo.replace(id, update, 3L)).thenReturn(Optional.empty());
+		when(repo.existsById(id)).thenReturn(true);
+
+		// When
+		// Then
+		assertThatThrownBy(() -> controller.updateCustomer(id, update, "\"3\""))
+			.isInstanceOf(CustomerServiceException.class)
+			.hasMessageContaining("Customer has been modified")
+			.matches(e -> ((CustomerServiceException) e).getHttpStatus() == PRECONDITION_FAILED);
+	}
+
 	@Test
 	public void shouldFailUpdatingNonExistingCustomer() {
 
 		// Given
-		when(repo.existsById(any(ObjectId.class))).thenReturn(false);
+		when(repo.replace(any(ObjectId.class), any(Customer.class), isNull())).thenReturn(Optional.empty());
 		final ObjectId id = ObjectId.get();
 		final Customer newCustomer = Customer.ofType(CustomerType.PERSON).build();
 		ReflectionTestUtils.setField(newCustomer, "id", id);
 
 		// When
 		// Then
-		assertThatThrownBy(() -> controller.updateCustomer(newCustomer.getId(), newCustomer))
+		assertThatThrownBy(() -> controller.updateCustomer(newCustomer.getId(), newCustomer, null))
 			.isInstanceOf(CustomerServiceException.class)
 			.hasMessageContaining("Customer does not exist");
 	}
@@ -173,27 +769,57 @@ public class CustomerControllerTest {
 	public void shouldDeleteAnExistingCustomer() {
 
 		// Given
-		when(repo.existsById(any(ObjectId.class))).thenReturn(true);
 		final ObjectId id = ObjectId.get();
+		when(repo.delete(id, null)).thenReturn(true);
 
 		// When
-		final ResponseEntity<?> response = controller.deleteCustomer(id);
+		final ResponseEntity<?> response = controller.deleteCustomer(id, null);
 
 		// Then
 		assertThat(response.getStatusCode()).isEqualTo(NO_CONTENT);
+		verify(repo).delete(id, null);
+		verify(cache).invalidate(id);
+	}
+
+	@Test
+	public void shouldNotInvalidateTheCacheWhenThereIsNoCustomerToDelete() {
+
+		// Given
+		final ObjectId id = ObjectId.get();
+		when(repo.delete(id, null)).thenReturn(false);
+
+		// When
+		final ResponseEntity<?> response = controller.deleteCustomer(id, null);
+
+		// Then
+		assertThat(response.getStatusCode()).isEqualTo(NO_CONTENT);
+		verify(cache, times(0)).invalidate(id);
+	}
+
+	@Test
+	public void shouldNotDeleteACustomerIfItsVersionDoesNotMatch() {
+
+		// Given
+		final ObjectId id = ObjectId.get();
+		when(repo.delete(id, 3L)).thenReturn(false);
+
+		// When
+		// Then
+		assertThatThrownBy(() -> controller.deleteCustomer(id, "\"3\""))
+			.isInstanceOf(CustomerServiceException.class)
+			.matches(e -> ((CustomerServiceException) e).getHttpStatus() == PRECONDITION_FAILED);
 	}
 
 	@Test
 	public void shouldDeleteExistingCustomerAndIgnoreSubsequentCalls() throws Exception {
 
 		// Given
-		when(repo.existsById(any(ObjectId.class))).thenReturn(true).thenReturn(false);
 		final ObjectId id = ObjectId.get();
 
 		// When
-		final ResponseEntity<?> response1 = controller.deleteCustomer(id);
-		final ResponseEntity<?> response2 = controller.deleteCustomer(id);
-		final ResponseEntity<?> response3 = controller.deleteCustomer(id);
+		final ResponseEntity<?> response1 = controller.deleteCustomer(id, null);
+		final ResponseEntity<?> response2 = controller.deleteCustomer(id, null);
+		final ResponseEntity<?> response3 = controller.deleteCustomer(id, null);
 
 		// Then
 		assertThat(response1.getStatusCode()).isEqualTo(NO_CONTENT);
@@ -201,4 +827,73 @@ public class CustomerControllerTest {
 		assertThat(response3.getStatusCode()).isEqualTo(NO_CONTENT);
 	}
 
+	@Test
+	public void shouldReturnTheTokenOfTheLastChange() {
+
+		// Given
+		final long latest = 6_473_920_349_712_187_393L;
+		when(feed.latest()).thenReturn(latest);
+
+		// When
+		final ResponseEntity<?> response = (ResponseEntity<?>) controller.customerChanges(null, null, null)
+				.getResult();
+
+		// Then
+		assertThat(response.getStatusCode()).isEqualTo(OK);
+		assertThat(((CustomerChangesPage) response.getBody()).getChanges()).isEmpty();
+		assertThat(((CustomerChangesPage) response.getBody()).getNext()).isEqualTo(latest);
+	}
+
+	@Test
+	public void shouldWaitForTheChangesNoLongerThanTheMaximum() {
+
+		// Given
+		final long since = 6_473_920_349_712_187_393L;
+
+		// When
+		controller.customerChanges(since, 10, 3600);
+
+		// Then
+		verify(feed).after(since, 10, 30_000L);
+	}
+
+	@Test
+	public void shouldRejectANegativeWait() {
+
+		// When
+		// Then
+		assertThatThrownBy(() -> controller.customerChanges(1L, null, -1))
+			.isInstanceOf(CustomerServiceException.class)
+			.hasMessageContaining("Wait must not be negative");
+	}
+
+	/* Reads a customer with the headers and parameters of the given request */
+	private ResponseEntity<?> oneCustomer(MockHttpServletRequest request, ObjectId id, String ifNoneMatch) {
+		RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+		try {
+			return controller.oneCustomer(id, null, ifNoneMatch);
+		} finally {
+			RequestContextHolder.resetRequestAttributes();
+		}
+	}
+
+	private static <T> CloseableIterator<T> closeable(Iterator<T> iterator) {
+
+		return new CloseableIterator<T>() {
+
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			public T next() {
+				return iterator.next();
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+	}
 }
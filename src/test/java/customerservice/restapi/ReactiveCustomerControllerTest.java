@@ -0,0 +1,391 @@
+package customerservice.restapi;
+
+import static customerservice.domain.enums.CustomerType.COMPANY;
+import static customerservice.domain.enums.CustomerType.PERSON;
+import static java.lang.String.format;
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+import static org.springframework.http.HttpStatus.CREATED;
+import static org.springframework.http.HttpStatus.GONE;
+import static org.springframework.http.HttpStatus.NOT_FOUND;
+import static org.springframework.http.HttpStatus.NOT_MODIFIED;
+import static org.springframework.http.HttpStatus.NO_CONTENT;
+import static org.springframework.http.HttpStatus.OK;
+import static org.springframework.http.HttpStatus.PRECONDITION_FAILED;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+
+import javax.validation.Validation;
+import javax.validation.Validator;
+
+import org.bson.types.ObjectId;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import customerservice.CustomerServiceException;
+import customerservice.domain.Customer;
+import customerservice.domain.CustomerChange;
+import customerservice.domain.CustomerChange.Type;
+import customerservice.repository.mongodb.BulkSaveOutcome;
+import customerservice.repository.mongodb.BulkSaveOutcome.Status;
+import customerservice.repository.mongodb.ReactiveCustomerChanges;
+import customerservice.repository.mongodb.ReactiveCustomerRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ReactiveCustomerControllerTest {
+
+	@Mock
+	private ReactiveCustomerRepository repo;
+
+	@Mock
+	private ReactiveCustomerChanges changes;
+
+	@Spy
+	private Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+
+	@InjectMocks
+	private ReactiveCustomerController controller;
+
+	@Before
+	public void configurePaging() {
+		ReflectionTestUtils.setField(controller, "defaultPageSize", 100);
+		ReflectionTestUtils.setField(controller, "maxPageSize", 1000);
+		ReflectionTestUtils.setField(controller, "batchChunkSize", 2);
+		ReflectionTestUtils.setField(controller, "maxChangesWait", 30);
+		ReflectionTestUtils.setField(controller, "changesPollMillis", 10L);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void shouldReturnOnePageAndALinkToTheNextPage() {
+
+		// Given
+		final Customer first = Customer.ofType(PERSON).withId(ObjectId.get()).build();
+		final Customer second = Customer.ofType(COMPANY).withId(ObjectId.get()).build();
+		final Customer third = Customer.ofType(PERSON).withId(ObjectId.get()).build();
+		when(repo.findAllByOrderByIdAsc(PageRequest.of(0, 3))).thenReturn(Flux.just(first, second, third));
+
+		// When
+		final ResponseEntity<?> response = controller.allCustomers(null, null, 2).block();
+
+		// Then
+		assertThat(response.getStatusCode()).isEqualTo(OK);
+		assertThat((Iterable<Customer>) response.getBody()).asList().containsExactly(first, second);
+		assertThat(response.getHeaders().getFirst("Link"))
+				.isEqualTo(format("</customers?after=%s&size=2>; rel=\"next\"", PageCursor.encode(second.getId())));
+	}
+
+	@Test
+	public void shouldReturn204WhenNoCustomers() {
+
+		// Given
+		when(repo.findAllByOrderByIdAsc(PageRequest.of(0, 101))).thenReturn(Flux.empty());
+
+		// When
+		final ResponseEntity<?> response = controller.allCustomers(null, null, null).block();
+
+		// Then
+		assertThat(response.getStatusCode()).isEqualTo(NO_CONTENT);
+	}
+
+	@Test
+	public void shouldReturnACustomerWithItsVersion() {
+
+		// Given
+		final ObjectId id = ObjectId.get();
+		final Customer customer = Customer.ofType(PERSON).withId(id).withVersion(3L).build();
+		when(repo.findById(id)).thenReturn(Mono.just(customer));
+
+		// When
+		final ResponseEntity<?> response = controller.oneCustomer(id, null, null).block();
+
+		// Then
+		assertThat(response.getStatusCode()).isEqualTo(OK);
+		assertThat(response.getBody()).isEqualTo(customer);
+		assertThat(response.getHeaders().getETag()).isEqualTo("\"3-json\"");
+	}
+
+	@Test
+	public void shouldReturn304WhenTheClientHasTheLastVersion() {
+
+		// Given
+		final ObjectId id = ObjectId.get();
+		when(repo.findById(id)).thenReturn(Mono.just(Customer.ofType(PERSON).withId(id).withVersion(3L).build()));
+
+		// When
+		final ResponseEntity<?> response = controller.oneCustomer(id, null, "\"3-json\"").block();
+
+		// Then
+		assertThat(response.getStatusCode()).isEqualTo(NOT_MODIFIED);
+		assertThat(response.getBody()).isNull();
+	}
+
+	@Test
+	public void shouldReturnAPartialCustomerWithoutETag() {
+
+		// Given
+		final ObjectId id = ObjectId.get();
+		final Customer partial = Customer.ofType(null).withId(id).withLastName("Masters").build();
+		when(repo.findById(id, asList("lastName"))).thenReturn(Mono.just(partial));
+
+		// When
+		final ResponseEntity<?> response = controller.oneCustomer(id, asList("last_name"), "\"3-json\"").block();
+
+		// Then
+		assertThat(response.getStatusCode()).isEqualTo(OK);
+		assertThat(response.getBody()).isEqualTo(partial);
+		assertThat(response.getHeaders().getETag()).isNull();
+	}
+
+	@Test
+	public void shouldReturn404WhenCustomerIsNotFound() {
+
+		// Given
+		final ObjectId id = ObjectId.get();
+		when(repo.findById(id)).thenReturn(Mono.empty());
+
+		// When
+		final ResponseEntity<?> response = controller.oneCustomer(id, null, null).block();
+
+		// Then
+		assertThat(response.getStatusCode()).isEqualTo(NOT_FOUND);
+	}
+
+	@Test
+	public void shouldCreateACustomer() {
+
+		// Given
+		final Customer newCustomer = Customer.ofType(PERSON).build();
+		final ObjectId id = ObjectId.get();
+		when(repo.insert(newCustomer))
+				.thenReturn(Mono.just(Customer.ofType(PERSON).withId(id).withVersion(0L).build()));
+
+		// When
+		final ResponseEntity<?> response = controller.addCustomer(newCustomer).block();
+
+		// Then
+		assertThat(response.getStatusCode()).isEqualTo(CREATED);
+		assertThat(response.getHeaders().getLocation().toString()).isEqualTo(format("/customers/%s", id));
+		assertThat(response.getHeaders().getETag()).isEqualTo("\"0-json\"");
+	}
+
+	@Test
+	public void shouldReturn400WhenCustomerAlreadyExists() {
+
+		// Given
+		final Customer existing = Customer.ofType(PERSON).withId(ObjectId.get()).build();
+		when(repo.insert(existing)).thenReturn(Mono.error(new DuplicateKeyException("Duplicate")));
+
+		// Then
+		assertThatThrownBy(() -> controller.addCustomer(existing).block())
+				.isInstanceOf(CustomerServiceException.class)
+				.hasFieldOrPropertyWithValue("httpStatus", BAD_REQUEST);
+	}
+
+	@Test
+	public void shouldReturn400WhenEmailIsAlreadyUsed() {
+
+		// Given
+		final Customer customer = Customer.ofType(PERSON).withEmail("kenm@email.com").build();
+		when(repo.insert(customer)).thenReturn(Mono.error(new DuplicateKeyException(
+				"E11000 duplicate key error collection: test.customer index: email dup key: { : \"kenm@email.com\" }")));
+
+		// Then
+		assertThatThrownBy(() -> controller.addCustomer(customer).block())
+				.isInstanceOf(CustomerServiceException.class)
+				.hasFieldOrPropertyWithValue("httpStatus", BAD_REQUEST)
+				.hasMessageContaining("Email already used");
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void shouldSaveCustomersByChunks() {
+
+		// Given
+		final ObjectId created1 = ObjectId.get();
+		final ObjectId created2 = ObjectId.get();
+		final ObjectId created3 = ObjectId.get();
+		when(repo.bulkSave(anyList()))
+				.thenReturn(Mono.just(asList(new BulkSaveOutcome(created1, Status.CREATED, null),
+						new BulkSaveOutcome(created2, Status.CREATED, null))))
+				.thenReturn(Mono.just(asList(new BulkSaveOutcome(created3, Status.DUPLICATE, "E11000 duplicate key"))));
+
+		final Flux<Customer> customers = Flux.just(Customer.ofType(PERSON).build(), Customer.ofType(null).build(),
+				Customer.ofType(COMPANY).build(), Customer.ofType(PERSON).build());
+
+		// When
+		final ResponseEntity<?> response = controller.addOrUpdateCustomers(customers).block();
+
+		// Then
+		assertThat(response.getStatusCode()).isEqualTo(OK);
+		final List<BatchItemResult> results = (List<BatchItemResult>) response.getBody();
+		assertThat(results).extracting(BatchItemResult::getIndex).containsExactly(0, 1, 2, 3);
+		assertThat(results).extracting(BatchItemResult::getStatus).containsExactly(201, 400, 201, 400);
+		assertThat(results.get(0).getId()).isEqualTo(created1);
+		assertThat(results.get(1).getError()).contains("customerType");
+		verify(repo, times(2)).bulkSave(anyList());
+	}
+
+	@Test
+	public void shouldUpdateACustomerAndReturnItsNewVersion() {
+
+		// Given
+		final ObjectId id = ObjectId.get();
+		final Customer update = Customer.ofType(PERSON).build();
+		when(repo.replace(id, update, 1L)).thenReturn(Mono.just(2L));
+
+		// When
+		final ResponseEntity<?> response = controller.updateCustomer(id, update, "\"1\"").block();
+
+		// Then
+		assertThat(response.getStatusCode()).isEqualTo(NO_CONTENT);
+		assertThat(response.getHeaders().getETag()).isEqualTo("\"2-json\"");
+	}
+
+	@Test
+	public void shouldReturn412WhenUpdatingAModifiedCustomer() {
+
+		// Given
+		final ObjectId id = ObjectId.get();
+		final Customer update = Customer.ofType(PERSON).build();
+		when(repo.replace(id, update, 1L)).thenReturn(Mono.empty());
+		when(repo.existsById(id)).thenReturn(Mono.just(true));
+
+		// Then
+		assertThatThrownBy(() -> controller.updateCustomer(id, update, "\"1\"").block())
+				.isInstanceOf(CustomerServiceException.class)
+				.hasFieldOrPropertyWithValue("httpStatus", PRECONDITION_FAILED);
+	}
+
+	@Test
+	public void shouldReturn400WhenUpdatingAMissingCustomer() {
+
+		// Given
+		final ObjectId id = ObjectId.get();
+		final Customer update = Customer.ofType(PERSON).build();
+		when(repo.replace(any(ObjectId.class), any(Customer.class), isNull())).thenReturn(Mono.empty());
+
+		// Then
+		assertThatThrownBy(() -> controller.updateCustomer(id, update, null).block())
+				.isInstanceOf(CustomerServiceException.class)
+				.hasFieldOrPropertyWithValue("httpStatus", BAD_REQUEST);
+	}
+
+	@Test
+	public void shouldDeleteACustomer() {
+
+		// Given
+		final ObjectId id = ObjectId.get();
+		when(repo.delete(id, null)).thenReturn(Mono.just(true));
+
+		// When
+		final ResponseEntity<?> response = controller.deleteCustomer(id, null).block();
+
+		// Then
+		assertThat(response.getStatusCode()).isEqualTo(NO_CONTENT);
+	}
+
+	@Test
+	public void shouldReturn412WhenDeletingAModifiedCustomer() {
+
+		// Given
+		final ObjectId id = ObjectId.get();
+		when(repo.delete(id, 1L)).thenReturn(Mono.just(false));
+
+		// Then
+		assertThatThrownBy(() -> controller.deleteCustomer(id, "\"1\"").block())
+				.isInstanceOf(CustomerServiceException.class)
+				.hasFieldOrPropertyWithValue("httpStatus", PRECONDITION_FAILED);
+	}
+
+	@Test
+	public void shouldReturnTheTokenOfTheLastChange() {
+
+		// Given
+		final long latest = 6_473_920_349_712_187_393L;
+		when(changes.latest()).thenReturn(Mono.just(latest));
+
+		// When
+		final ResponseEntity<?> response = controller.customerChanges(null, null, null).block();
+
+		// Then
+		assertThat(response.getStatusCode()).isEqualTo(OK);
+		assertThat(((CustomerChangesPage) response.getBody()).getChanges()).isEmpty();
+		assertThat(((CustomerChangesPage) response.getBody()).getNext()).isEqualTo(latest);
+	}
+
+	@Test
+	public void shouldReturnTheChangesFollowingTheToken() {
+
+		// Given
+		final long since = 6_473_920_349_712_187_393L;
+		final CustomerChange change = CustomerChange.of(since + 1, ObjectId.get(), Type.UPDATED, 2L, Instant.now());
+		when(changes.after(since, 100)).thenReturn(Mono.just(Collections.emptyList()),
+				Mono.just(asList(change)));
+
+		// When
+		final ResponseEntity<?> response = controller.customerChanges(since, null, 5).block();
+
+		// Then
+		assertThat(response.getStatusCode()).isEqualTo(OK);
+		assertThat(((CustomerChangesPage) response.getBody()).getChanges()).containsExactly(change);
+		assertThat(((CustomerChangesPage) response.getBody()).getNext()).isEqualTo(change.getToken());
+	}
+
+	@Test
+	public void shouldReturn204WhenNoChangeFollowsTheTokenWithinTheWait() {
+
+		// Given
+		when(changes.after(1L, 100)).thenReturn(Mono.just(Collections.emptyList()));
+
+		// When
+		final ResponseEntity<?> response = controller.customerChanges(1L, null, 1).block();
+
+		// Then
+		assertThat(response.getStatusCode()).isEqualTo(NO_CONTENT);
+	}
+
+	@Test
+	public void shouldReturn400WhenTheWaitIsNegative() {
+
+		// When
+		// Then
+		assertThatThrownBy(() -> controller.customerChanges(1L, null, -1).block())
+				.isInstanceOf(CustomerServiceException.class)
+				.hasFieldOrPropertyWithValue("httpStatus", BAD_REQUEST);
+	}
+
+	@Test
+	public void shouldReturn410WhenTheChangesAreNoLongerRecorded() {
+
+		// Given
+		when(changes.expired(1L)).thenReturn(true);
+
+		// When
+		// Then
+		assertThatThrownBy(() -> controller.customerChanges(1L, null, 0).block())
+				.isInstanceOf(CustomerServiceException.class)
+				.hasFieldOrPropertyWithValue("httpStatus", GONE);
+	}
+}
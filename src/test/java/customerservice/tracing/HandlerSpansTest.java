@@ -0,0 +1,86 @@
+package customerservice.tracing;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.method.HandlerMethod;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+
+public class HandlerSpansTest {
+
+	private final InMemorySpanExporter spans = InMemorySpanExporter.create();
+
+	private final Tracer tracer = SdkTracerProvider.builder()
+			.addSpanProcessor(SimpleSpanProcessor.create(spans))
+			.build()
+			.get(TracingConfiguration.INSTRUMENTATION);
+
+	private final HandlerSpans handlerSpans = new HandlerSpans(tracer);
+
+	@Test
+	public void shouldCoverAnAsyncHandlerWithOneSpanAcrossBothDispatches() throws Exception {
+
+		// Given
+		final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/customers/changes");
+		final MockHttpServletResponse response = new MockHttpServletResponse();
+		final HandlerMethod handler = new HandlerMethod(new LongPoll(), LongPoll.class.getMethod("changes"));
+
+		// When
+		handlerSpans.preHandle(request, response, handler);
+		handlerSpans.afterConcurrentHandlingStarted(request, response, handler);
+		final boolean currentAfterInitialDispatch = Span.current().getSpanContext().isValid();
+
+		// The async dispatch runs on another thread
+		CompletableFuture.runAsync(() -> {
+			handlerSpans.preHandle(request, response, handler);
+			tracer.spanBuilder("mongodb.find").startSpan().end();
+			handlerSpans.afterCompletion(request, response, handler, null);
+		}).get();
+
+		// Then
+		assertThat(currentAfterInitialDispatch).isFalse();
+		final List<SpanData> finished = spans.getFinishedSpanItems();
+		assertThat(finished).extracting(SpanData::getName)
+				.containsExactly("mongodb.find", "LongPoll.changes");
+		assertThat(finished.get(0).getParentSpanId()).isEqualTo(finished.get(1).getSpanId());
+	}
+
+	@Test
+	public void shouldEndTheSpanOfASynchronousHandlerAfterCompletion() throws Exception {
+
+		// Given
+		final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/customers/changes");
+		final MockHttpServletResponse response = new MockHttpServletResponse();
+		final HandlerMethod handler = new HandlerMethod(new LongPoll(), LongPoll.class.getMethod("changes"));
+
+		// When
+		handlerSpans.preHandle(request, response, handler);
+		final boolean currentDuringHandler = Span.current().getSpanContext().isValid();
+		handlerSpans.afterCompletion(request, response, handler, null);
+
+		// Then
+		assertThat(currentDuringHandler).isTrue();
+		assertThat(Span.current().getSpanContext().isValid()).isFalse();
+		assertThat(spans.getFinishedSpanItems()).extracting(SpanData::getName).containsExactly("LongPoll.changes");
+	}
+
+	/* A handler answered by the async dispatch, like GET /customers/changes */
+	public static final class LongPoll {
+
+		public DeferredResult<String> changes() {
+			return new DeferredResult<>();
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package customerservice.tracing;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import javax.servlet.Filter;
+import javax.servlet.http.HttpServlet;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+
+public class TracingFiltersTest {
+
+	private final InMemorySpanExporter spans = InMemorySpanExporter.create();
+
+	private final Tracer tracer = SdkTracerProvider.builder()
+			.addSpanProcessor(SimpleSpanProcessor.create(spans))
+			.build()
+			.get(TracingConfiguration.INSTRUMENTATION);
+
+	@Test
+	public void shouldEndTheSecuritySpanBeforeTheHandlerRuns() throws Exception {
+
+		// Given
+		final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/customers/1");
+		final Filter security = (req, res, chain) -> chain.doFilter(req, res);
+		final Filter handler = (req, res, chain) -> {
+			// The handler runs in the request span, not in the security span
+			tracer.spanBuilder("handler").startSpan().end();
+			req.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/customers/{id}");
+		};
+		final MockFilterChain chain = new MockFilterChain(new NoServlet(), new SecurityFilterChainSpan(security, tracer),
+				handler);
+
+		// When
+		new RequestSpanFilter(tracer).doFilter(request, new MockHttpServletResponse(), chain);
+
+		// Then
+		final List<SpanData> finished = spans.getFinishedSpanItems();
+		assertThat(finished).extracting(SpanData::getName)
+				.containsExactly("security.filter-chain", "handler", "GET /customers/{id}");
+		final String requestSpanId = finished.get(2).getSpanId();
+		assertThat(finished.get(0).getParentSpanId()).isEqualTo(requestSpanId);
+		assertThat(finished.get(1).getParentSpanId()).isEqualTo(requestSpanId);
+		assertThat(Span.current().getSpanContext().isValid()).isFalse();
+	}
+
+	@Test
+	public void shouldEndTheSecuritySpanWhenTheRequestIsRejected() throws Exception {
+
+		// Given
+		final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/customers/1");
+		final MockHttpServletResponse response = new MockHttpServletResponse();
+		final Filter security = (req, res, chain) -> ((MockHttpServletResponse) res).setStatus(401);
+
+		// When
+		new RequestSpanFilter(tracer).doFilter(request, response,
+				new MockFilterChain(new NoServlet(), new SecurityFilterChainSpan(security, tracer)));
+
+		// Then
+		assertThat(spans.getFinishedSpanItems()).extracting(SpanData::getName)
+				.containsExactly("security.filter-chain", "GET");
+		assertThat(spans.getFinishedSpanItems().get(1).getAttributes().asMap())
+				.containsValue(401L);
+	}
+
+	/* The requests of these tests never reach a servlet */
+	@SuppressWarnings("serial")
+	private static final class NoServlet extends HttpServlet {
+	}
+}
@@ -0,0 +1,17 @@
+package customerservice.undertow;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class CompressionConfigurationTest {
+
+	@Test
+	public void shouldTagACompressedBodyWithItsCoding() {
+
+		// When
+		// Then
+		assertThat(CompressionConfiguration.codedETag("\"3-json\"", "gzip")).isEqualTo("\"3-json-gzip\"");
+		assertThat(CompressionConfiguration.codedETag("W/\"3-json\"", "deflate")).isEqualTo("W/\"3-json-deflate\"");
+	}
+}